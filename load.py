@@ -4,6 +4,7 @@ import sys
 import re
 import time
 import gzip
+from itertools import islice
 from urllib.parse import urljoin
 import requests
 import json
@@ -55,6 +56,28 @@ def send_requests(base, requests):
         yield send(base, req)
 
 
+def send_batch(base, reqs):
+    url = urljoin(base, "/workflows/batch")
+    r = requests.post(url, json=reqs, allow_redirects=False, headers=HEADERS)
+    print(f"Posted batch of {len(reqs)}", file=sys.stderr)
+    if r.status_code != 202:
+        print(f"Unhandled HTTP status code: {r.status_code}  {r.text}", file=sys.stderr)
+        return []
+    location = urljoin(url, r.headers["Location"])
+    batch = r.json()
+    while not batch["finished"]:
+        time.sleep(BATCH_SLEEP)
+        batch = requests.get(location, headers=HEADERS).json()
+    queued = []
+    for entry in batch["entries"]:
+        if entry["status"] == "QUEUED":
+            queued.append(urljoin(url, entry["location"]))
+        elif entry["status"] == "ERROR":
+            print(f"Failed {entry['url']}: {entry.get('message')}", file=sys.stderr)
+    print(f"  queued {len(queued)} of {len(reqs)}", file=sys.stderr)
+    return queued
+
+
 def is_running(location):
     if not location:
         return True
@@ -68,7 +91,7 @@ def is_running(location):
     j = queued.json()
     if j["cwltoolStatus"] == "RUNNING":
         return True
-    elif j["cwltoolStatus"] == "ERROR":
+    elif j["cwltoolStatus"] in ("ERROR", "TIMEOUT"):
         print(f"Failed {location}: {j['message']}", file=sys.stderr)
         return False
     else:
@@ -77,6 +100,8 @@ def is_running(location):
 
 MAX_CONCURRENT = 3  # Maximum number in queue
 SLEEP = 0.5  # wait SLEEP seconds if queue is full
+BATCH_SIZE = 500  # Number of workflows per batch with --batch
+BATCH_SLEEP = 5  # wait BATCH_SLEEP seconds between checks of a batch
 
 
 def trim_queue(queue):
@@ -102,6 +127,16 @@ def main(jsonfile="-", base="http://view.commonwl.org:8082/", *args):
         gitinfos = filter(is_not_commit, gitinfos)
 
     requests = make_requests(gitinfos)
+    if "--batch" in args:
+        # Server fetches each repository once and runs the queue itself
+        queued = []
+        while batch := list(islice(requests, BATCH_SIZE)):
+            queued.extend(send_batch(base, batch))
+        while queued:
+            time.sleep(SLEEP)
+            queued = trim_queue(queued)
+        return
+
     queued = []
     for q in send_requests(base, requests):
         if q:
@@ -116,7 +151,7 @@ def main(jsonfile="-", base="http://view.commonwl.org:8082/", *args):
 
 if __name__ == "__main__":
     if "-h" in sys.argv:
-        print("load.py [jsonfile] [baseurl] [--no-commits]")
+        print("load.py [jsonfile] [baseurl] [--no-commits] [--batch]")
         sys.exit(1)
 
     main(*sys.argv[1:])
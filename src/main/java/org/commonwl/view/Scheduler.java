@@ -2,15 +2,23 @@ package org.commonwl.view;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.AgeFileFilter;
+import org.commonwl.view.cwl.RDFService;
 import org.commonwl.view.workflow.QueuedWorkflowRepository;
+import org.commonwl.view.workflow.WorkflowBatchRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,6 +32,8 @@ public class Scheduler {
 
   private final Logger logger = LoggerFactory.getLogger(this.getClass());
   private final QueuedWorkflowRepository queuedWorkflowRepository;
+  private final WorkflowBatchRepository workflowBatchRepository;
+  private final RDFService rdfService;
 
   @Value("${queuedWorkflowAgeLimitHours}")
   private Integer QUEUED_WORKFLOW_AGE_LIMIT_HOURS;
@@ -40,14 +50,25 @@ public class Scheduler {
   @Value("${gitStorage}")
   private String gitStorage;
 
+  @Value("${rdfStorage}")
+  private String rdfStorage;
+
+  @Value("${rdf.backupLocation}")
+  private String rdfBackupLocation;
+
   @Autowired
-  public Scheduler(QueuedWorkflowRepository queuedWorkflowRepository) {
+  public Scheduler(
+      QueuedWorkflowRepository queuedWorkflowRepository,
+      WorkflowBatchRepository workflowBatchRepository,
+      RDFService rdfService) {
     this.queuedWorkflowRepository = queuedWorkflowRepository;
+    this.workflowBatchRepository = workflowBatchRepository;
+    this.rdfService = rdfService;
   }
 
   /**
-   * A Scheduled function to delete old queued workflow entries from the queue. Age is determined by
-   * QUEUED_WORKFLOW_AGE_LIMIT_HOURS
+   * A Scheduled function to delete old queued workflow entries from the queue, and old batches of
+   * submitted workflows. Age is determined by QUEUED_WORKFLOW_AGE_LIMIT_HOURS
    */
   @Scheduled(cron = "${cron.deleteOldQueuedWorkflows}")
   public void removeOldQueuedWorkflowEntries() {
@@ -71,6 +92,9 @@ public class Scheduler {
     logger.info(
         queuedWorkflowRepository.deleteByTempRepresentation_RetrievedOnLessThanEqual(removeTime)
             + " Old queued workflows removed");
+    logger.info(
+        workflowBatchRepository.deleteByCreatedOnLessThanEqual(removeTime)
+            + " Old workflow batches removed");
   }
 
   /**
@@ -89,12 +113,40 @@ public class Scheduler {
    */
   @Scheduled(cron = "${cron.clearTmpDir}")
   public void clearTmpDir() {
-    // Temporary files used for graphviz, RO, and git may be stored in different
+    // Temporary files used for graphviz, RO, git and RDF may be stored in different
     // locations, so we will collect all of them here.
-    List<String> temporaryDirectories = Stream.of(graphvizStorage, gitStorage).distinct().toList();
+    List<String> temporaryDirectories =
+        Stream.of(graphvizStorage, gitStorage, rdfStorage).distinct().toList();
     temporaryDirectories.forEach(this::clearDirectory);
   }
 
+  /**
+   * Scheduled function to export the embedded RDF store as gzipped N-Quads.
+   *
+   * <p>The export is written to a temporary file first, so an interrupted export never replaces a
+   * complete one. Nothing is done for a remote SPARQL endpoint, which is backed up on its own.
+   */
+  @Scheduled(cron = "${cron.rdfBackup}")
+  public void backupRdfStore() {
+    if (!rdfService.isEmbedded()) {
+      return;
+    }
+    Path backupDir = Paths.get(rdfBackupLocation);
+    Path backup = backupDir.resolve("cwlviewer-" + Instant.now().toEpochMilli() + ".nq.gz");
+    Path partial = backupDir.resolve(backup.getFileName() + ".partial");
+    try {
+      Files.createDirectories(backupDir);
+      try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial))) {
+        rdfService.export(out);
+      }
+      Files.move(partial, backup, StandardCopyOption.ATOMIC_MOVE);
+      logger.info("Exported the RDF store to " + backup);
+    } catch (IOException e) {
+      logger.error("Failed to export the RDF store to " + backup, e);
+      FileUtils.deleteQuietly(partial.toFile());
+    }
+  }
+
   /**
    * For a given temporary directory, scans it (not recursively) for files and directories exceeding
    * the age limit threshold.
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+
+/**
+ * Authors described in the RDF of a workflow, indexed by the file they are attached to.
+ *
+ * <p>Built from a single query over the whole graph, so the authors of each file in a research
+ * object bundle are looked up in memory.
+ */
+public class AuthorIndex {
+
+  // Solutions by lower case file name, with the lower case URI of the file they belong to
+  private final Map<String, List<Map.Entry<String, QuerySolution>>> byFileName = new HashMap<>();
+
+  /**
+   * Build the index from the results of {@link RDFService#getAuthorIndex(String)}
+   *
+   * @param authors Result set with file, email, name and orcid
+   */
+  public AuthorIndex(ResultSet authors) {
+    while (authors.hasNext()) {
+      QuerySolution author = authors.nextSolution();
+      String file = author.get("file").toString().toLowerCase(Locale.ROOT);
+      byFileName
+          .computeIfAbsent(fileName(file), k -> new ArrayList<>())
+          .add(Map.entry(file, author));
+    }
+  }
+
+  /**
+   * Get the authors of a file, matching the end of the file URI case insensitively
+   *
+   * @param path The path of the file
+   * @return Solutions with the email, name and orcid of each author, possibly empty
+   */
+  public List<QuerySolution> getAuthors(String path) {
+    String suffix = path.toLowerCase(Locale.ROOT);
+    List<Map.Entry<String, QuerySolution>> candidates = byFileName.get(fileName(suffix));
+    if (candidates == null) {
+      return Collections.emptyList();
+    }
+    List<QuerySolution> authors = new ArrayList<>();
+    for (Map.Entry<String, QuerySolution> candidate : candidates) {
+      if (candidate.getKey().endsWith(suffix)) {
+        authors.add(candidate.getValue());
+      }
+    }
+    return authors;
+  }
+
+  private static String fileName(String path) {
+    return path.substring(path.lastIndexOf('/') + 1);
+  }
+}
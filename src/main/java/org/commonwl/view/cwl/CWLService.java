@@ -32,21 +32,21 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jena.iri.IRI;
 import org.apache.jena.iri.IRIFactory;
-import org.apache.jena.ontology.OntModelSpec;
 import org.apache.jena.query.QuerySolution;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.apache.jena.riot.RiotException;
 import org.commonwl.view.docker.DockerService;
 import org.commonwl.view.git.GitDetails;
 import org.commonwl.view.git.GitLicenseException;
@@ -72,10 +72,22 @@ public class CWLService {
 
   // Autowired properties/services
   private final RDFService rdfService;
+  private final RDFBulkLoader rdfBulkLoader;
   private final CWLTool cwlTool;
+  private final OntologyLabelCache ontologyLabels;
   private final Map<String, String> licenseVocab;
   private final int singleFileSizeLimit;
 
+  // DOT of recently expanded nested workflows, least recently used evicted first
+  private static final int SUBWORKFLOW_DOT_CACHE_SIZE = 256;
+  private final Map<String, String> subworkflowDots =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+          return size() > SUBWORKFLOW_DOT_CACHE_SIZE;
+        }
+      };
+
   // CWL specific strings
   private final String DOC_GRAPH = "$graph";
   private final String CLASS = "class";
@@ -104,17 +116,23 @@ public class CWLService {
    * Constructor for the Common Workflow Language service
    *
    * @param rdfService A service for handling RDF queries
+   * @param rdfBulkLoader Stores the RDF of parsed workflows
    * @param cwlTool Handles cwltool integration
+   * @param ontologyLabels Resolves the labels of formats
    * @param singleFileSizeLimit The file size limit for single files
    */
   @Autowired
   public CWLService(
       RDFService rdfService,
+      RDFBulkLoader rdfBulkLoader,
       CWLTool cwlTool,
+      OntologyLabelCache ontologyLabels,
       Map<String, String> licenseVocab,
       @Value("${singleFileSizeLimit}") int singleFileSizeLimit) {
     this.rdfService = rdfService;
+    this.rdfBulkLoader = rdfBulkLoader;
     this.cwlTool = cwlTool;
+    this.ontologyLabels = ontologyLabels;
     this.licenseVocab = licenseVocab;
     this.singleFileSizeLimit = singleFileSizeLimit;
   }
@@ -300,6 +318,7 @@ public class CWLService {
     }
 
     // Get RDF representation from cwltool
+    Model model;
     if (!rdfService.graphExists(url)) {
       String rdf = cwlTool.getRDF(localPath);
       // Replace /tmp/123123 with permalink base
@@ -312,17 +331,22 @@ public class CWLService {
       rdf = rdf.replace("<rdfs:>", "<http://www.w3.org/2000/01/rdf-schema#>");
 
       // Create a workflow model from RDF representation
-      Model model = ModelFactory.createDefaultModel();
+      model = ModelFactory.createDefaultModel();
       model.read(new ByteArrayInputStream(rdf.getBytes()), null, "TURTLE");
 
-      // Store the model
-      rdfService.storeModel(url, model);
+      // Store the model, waiting for its batch to be written in bulk mode
+      rdfBulkLoader.store(url, model);
+    } else {
+      model = rdfService.getGraph(url);
     }
 
+    // Answer all the queries below from the model in memory
+    RDFService graph = rdfService.withGraph(url, model);
+
     // Base workflow details
     String label = FilenameUtils.getName(url);
     String doc = null;
-    ResultSet labelAndDoc = rdfService.getLabelAndDoc(url);
+    ResultSet labelAndDoc = graph.getLabelAndDoc(url);
     if (labelAndDoc.hasNext()) {
       QuerySolution labelAndDocSoln = labelAndDoc.nextSolution();
       if (labelAndDocSoln.contains("label")) {
@@ -335,7 +359,7 @@ public class CWLService {
 
     // Inputs
     Map<String, CWLElement> wfInputs = new HashMap<>();
-    ResultSet inputs = rdfService.getInputs(url);
+    ResultSet inputs = graph.getInputs(url);
     while (inputs.hasNext()) {
       QuerySolution input = inputs.nextSolution();
       String inputName = rdfService.stepNameFromURI(gitPath, input.get("name").toString());
@@ -368,7 +392,7 @@ public class CWLService {
 
     // Outputs
     Map<String, CWLElement> wfOutputs = new HashMap<>();
-    ResultSet outputs = rdfService.getOutputs(url);
+    ResultSet outputs = graph.getOutputs(url);
     while (outputs.hasNext()) {
       QuerySolution output = outputs.nextSolution();
       CWLElement wfOutput = new CWLElement();
@@ -405,7 +429,7 @@ public class CWLService {
 
     // Steps
     Map<String, CWLStep> wfSteps = new HashMap<>();
-    ResultSet steps = rdfService.getSteps(url);
+    ResultSet steps = graph.getSteps(url);
     while (steps.hasNext()) {
       QuerySolution step = steps.nextSolution();
       String uri = rdfService.stepNameFromURI(gitPath, step.get("step").toString());
@@ -455,7 +479,7 @@ public class CWLService {
       }
     }
     // Try to determine license
-    ResultSet licenseResult = rdfService.getLicense(url);
+    ResultSet licenseResult = graph.getLicense(url);
     String licenseLink;
     if (licenseResult.hasNext()) {
       licenseLink = normaliseLicenseLink(licenseResult.next().get("license").toString());
@@ -465,7 +489,7 @@ public class CWLService {
     }
 
     // Docker link
-    ResultSet dockerResult = rdfService.getDockerLink(url);
+    ResultSet dockerResult = graph.getDockerLink(url);
     String dockerLink = null;
     if (dockerResult.hasNext()) {
       QuerySolution docker = dockerResult.nextSolution();
@@ -476,13 +500,21 @@ public class CWLService {
       }
     }
 
+    // Docker images used anywhere in the workflow, for the workflow index
+    Set<String> dockerPulls = new TreeSet<>();
+    ResultSet pullResult = graph.getDockerPulls(url);
+    while (pullResult.hasNext()) {
+      dockerPulls.add(pullResult.nextSolution().get("pull").toString());
+    }
+
     // Create workflow model
     Workflow workflowModel =
         new Workflow(label, doc, wfInputs, wfOutputs, wfSteps, dockerLink, licenseLink);
+    workflowModel.setDockerPulls(dockerPulls);
 
     // Generate DOT graph
     StringWriter graphWriter = new StringWriter();
-    RDFDotWriter RDFDotWriter = new RDFDotWriter(graphWriter, rdfService, gitPath);
+    RDFDotWriter RDFDotWriter = new RDFDotWriter(graphWriter, graph, gitPath);
     try {
       RDFDotWriter.writeGraph(url);
       workflowModel.setVisualisationDot(graphWriter.toString());
@@ -493,6 +525,90 @@ public class CWLService {
     return workflowModel;
   }
 
+  /**
+   * Get the DOT graph of a nested workflow, generated from the stored RDF of its parent workflow
+   * only when first requested
+   *
+   * @param workflow The parsed parent workflow
+   * @param stepPath The step running the nested workflow, with steps of deeper nested workflows
+   *     separated by slashes
+   * @param graphUrl The URL of the SVG graph of the parent workflow as requested, which steps
+   *     running deeper nested workflows link to
+   * @return The DOT source of the nested workflow
+   * @throws WorkflowNotFoundException If a step does not exist or does not run a workflow
+   * @throws IOException Any errors in writing the graph
+   */
+  public String getSubworkflowDot(Workflow workflow, String stepPath, String graphUrl)
+      throws WorkflowNotFoundException, IOException {
+    // The links differ between the branch and commit URLs of the same workflow
+    String key = workflow.getIdentifier() + " " + graphUrl + " " + stepPath;
+    synchronized (subworkflowDots) {
+      String dot = subworkflowDots.get(key);
+      if (dot != null) {
+        return dot;
+      }
+    }
+
+    String url = workflow.getIdentifier();
+    if (!rdfService.graphExists(url)) {
+      throw new WorkflowNotFoundException("No RDF stored for " + url);
+    }
+    Model model = rdfService.getGraph(url);
+
+    // Follow each step down to the workflow it runs, which is described in the same model
+    RDFService graph = rdfService.withGraph(url, model);
+    String workflowUri = url;
+    for (String stepName : stepPath.split("/")) {
+      String nestedUri = getSubworkflowUri(graph, workflowUri, stepName);
+      graph.aliasGraph(url, nestedUri);
+      workflowUri = nestedUri;
+    }
+
+    StringWriter graphWriter = new StringWriter();
+    new RDFDotWriter(graphWriter, graph, gitPathFromUri(workflowUri))
+        .writeGraph(workflowUri, stepPath, graphUrl);
+    String dot = graphWriter.toString();
+    synchronized (subworkflowDots) {
+      subworkflowDots.put(key, dot);
+    }
+    return dot;
+  }
+
+  /**
+   * Get the URI of the nested workflow run by a step
+   *
+   * @param graph The RDF of the parent workflow, answering queries for the containing workflow
+   * @param workflowUri The URI of the workflow containing the step
+   * @param stepName The name of the step
+   * @return The URI of the workflow the step runs
+   * @throws WorkflowNotFoundException If the step does not exist or does not run a workflow
+   */
+  private String getSubworkflowUri(RDFService graph, String workflowUri, String stepName)
+      throws WorkflowNotFoundException {
+    String gitPath = gitPathFromUri(workflowUri);
+    ResultSet steps = graph.getSteps(workflowUri);
+    while (steps.hasNext()) {
+      QuerySolution step = steps.nextSolution();
+      if (stepName.equals(rdfService.stepNameFromURI(gitPath, step.get("step").toString()))
+          && rdfService.strToRuntype(step.get("runtype").toString()) == CWLProcess.WORKFLOW
+          && step.get("run").isURIResource()) {
+        return step.get("run").asResource().getURI();
+      }
+    }
+    throw new WorkflowNotFoundException("No nested workflow run by step " + stepName);
+  }
+
+  /**
+   * Get the path of a workflow within its repository from its permanent URI
+   *
+   * @param uri The URI of the form https://w3id.org/cwl/view/git/commit/path
+   * @return The path, including any fragment identifying a packed workflow
+   */
+  private String gitPathFromUri(String uri) {
+    String afterCommit = uri.substring(uri.indexOf("/git/") + "/git/".length());
+    return afterCommit.substring(afterCommit.indexOf('/') + 1);
+  }
+
   /**
    * Get an overview of a workflow
    *
@@ -560,17 +676,11 @@ public class CWLService {
    */
   private void setFormat(CWLElement inputOutput, String format) {
     inputOutput.setFormat(format);
-    try {
-      if (!rdfService.ontPropertyExists(format)) {
-        Model ontModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM);
-        ontModel.read(format, null, "RDF/XML");
-        rdfService.addToOntologies(ontModel);
-      }
-      String formatLabel = rdfService.getOntLabel(format);
-      inputOutput.setType(inputOutput.getType() + " [" + formatLabel + "]");
-    } catch (RiotException ex) {
-      inputOutput.setType(inputOutput.getType() + " [format]");
+    String formatLabel = ontologyLabels.getLabel(format);
+    if (formatLabel == null) {
+      formatLabel = "format";
     }
+    inputOutput.setType(inputOutput.getType() + " [" + formatLabel + "]");
   }
 
   /**
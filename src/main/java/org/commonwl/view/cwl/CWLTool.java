@@ -19,13 +19,22 @@
 
 package org.commonwl.view.cwl;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.commonwl.view.util.StreamGobbler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 /** Interacts with the Python reference implementation of the common workflow language */
@@ -36,6 +45,35 @@ public class CWLTool {
 
   private String cwlToolVersion;
 
+  private final MeterRegistry meterRegistry;
+  private final String executable;
+  private final long timeoutSeconds;
+  private final long maxOutputChars;
+  private final long maxMemoryMegabytes;
+
+  /**
+   * Create the cwltool integration with resource limits
+   *
+   * @param meterRegistry Registry for run duration and kill metrics
+   * @param executable The cwltool executable
+   * @param timeoutSeconds Wall-clock limit for a single cwltool run
+   * @param maxOutputChars Limit on the output collected from a single cwltool run
+   * @param maxMemoryMegabytes Limit on the virtual memory of a single cwltool run, 0 for none
+   */
+  @Autowired
+  public CWLTool(
+      MeterRegistry meterRegistry,
+      @Value("${cwltool.executable}") String executable,
+      @Value("${cwltool.timeoutSeconds}") long timeoutSeconds,
+      @Value("${cwltool.maxOutputChars}") long maxOutputChars,
+      @Value("${cwltool.maxMemoryMegabytes}") long maxMemoryMegabytes) {
+    this.meterRegistry = meterRegistry;
+    this.executable = executable;
+    this.timeoutSeconds = timeoutSeconds;
+    this.maxOutputChars = maxOutputChars;
+    this.maxMemoryMegabytes = maxMemoryMegabytes;
+  }
+
   /**
    * Get the RDF representation of a CWL file
    *
@@ -70,8 +108,7 @@ public class CWLTool {
     Process process = null;
     try {
       // Run cwltool --version
-      String[] command = {"cwltool", "--version"};
-      ProcessBuilder cwlToolProcess = new ProcessBuilder(command);
+      ProcessBuilder cwlToolProcess = new ProcessBuilder(command("--version"));
       process = cwlToolProcess.start();
 
       // Get input stream
@@ -98,48 +135,68 @@ public class CWLTool {
   }
 
   /**
-   * Runs cwltool on a workflow with a given argument
+   * Runs cwltool on a workflow with a given argument, killing the process if it runs for longer
+   * than the configured timeout or produces more output than the configured limit
    *
    * @param argument The argument for cwltool
    * @param workflowUrl The url of the workflow
    * @return The standard output of cwltool
    * @throws CWLValidationException Errors from cwltool
+   * @throws CWLToolTimeoutException If cwltool was killed for exceeding the timeout
    */
   private String runCwltoolOnWorkflow(String argument, String workflowUrl)
       throws CWLValidationException {
     Process process = null;
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = "error";
 
     try {
       // Run command
-      String[] command = {
-        "cwltool",
-        "--disable-color",
-        "--non-strict",
-        "--quiet",
-        "--enable-dev",
-        "--enable-ext",
-        "--skip-schemas",
-        argument,
-        workflowUrl
-      };
+      List<String> command =
+          command(
+              "--disable-color",
+              "--non-strict",
+              "--quiet",
+              "--enable-dev",
+              "--enable-ext",
+              "--skip-schemas",
+              argument,
+              workflowUrl);
       ProcessBuilder cwlToolProcess = new ProcessBuilder(command);
-      process = cwlToolProcess.start();
+      final Process running = cwlToolProcess.start();
+      process = running;
 
-      // Read output from the process using threads
-      StreamGobbler inputGobbler = new StreamGobbler(process.getInputStream());
-      StreamGobbler errorGobbler = new StreamGobbler(process.getErrorStream());
+      // Read output from the process using threads, killing it if output is too large
+      StreamGobbler inputGobbler =
+          new StreamGobbler(running.getInputStream(), maxOutputChars, running::destroyForcibly);
+      StreamGobbler errorGobbler =
+          new StreamGobbler(running.getErrorStream(), maxOutputChars, running::destroyForcibly);
       errorGobbler.start();
       inputGobbler.start();
 
-      // Wait for process to complete
-      int exitCode = process.waitFor();
-      if (exitCode == 0) {
-        inputGobbler.join();
-        process.destroyForcibly();
+      // Wait for process to complete within the time limit
+      if (!running.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+        running.destroyForcibly();
+        outcome = "timeout";
+        recordKill(outcome);
+        logger.warn("Killed cwltool " + argument + " " + workflowUrl + " after timeout");
+        throw new CWLToolTimeoutException(
+            "cwltool did not finish within " + timeoutSeconds + " seconds and was stopped");
+      }
+      inputGobbler.join();
+      errorGobbler.join();
+      if (inputGobbler.isLimitExceeded() || errorGobbler.isLimitExceeded()) {
+        outcome = "output_limit";
+        recordKill(outcome);
+        logger.warn("Killed cwltool " + argument + " " + workflowUrl + " after output limit");
+        throw new CWLValidationException(
+            "cwltool produced more than " + maxOutputChars + " characters of output");
+      }
+
+      if (running.exitValue() == 0) {
+        outcome = "success";
         return inputGobbler.getContent();
       } else {
-        errorGobbler.join();
-        process.destroyForcibly();
         throw new CWLValidationException(errorGobbler.getContent());
       }
     } catch (IOException | InterruptedException e) {
@@ -149,6 +206,45 @@ public class CWLTool {
       if (process != null) {
         process.destroyForcibly();
       }
+      sample.stop(
+          Timer.builder("cwlviewer.cwltool.duration")
+              .description("Wall-clock duration of cwltool runs")
+              .tag("argument", argument)
+              .tag("outcome", outcome)
+              .publishPercentileHistogram()
+              .register(meterRegistry));
+    }
+  }
+
+  /**
+   * Build the command running cwltool, under a shell setting the memory limit if there is one
+   *
+   * @param arguments The arguments for cwltool
+   * @return The command
+   */
+  private List<String> command(String... arguments) {
+    List<String> command = new ArrayList<>();
+    if (maxMemoryMegabytes > 0) {
+      // Inherited by every process cwltool starts, which each fail to allocate above it
+      command.addAll(
+          List.of(
+              "sh", "-c", "ulimit -v " + maxMemoryMegabytes * 1024 + " && exec \"$0\" \"$@\""));
     }
+    command.add(executable);
+    command.addAll(Arrays.asList(arguments));
+    return command;
+  }
+
+  /**
+   * Count a cwltool process which was killed for exceeding a limit
+   *
+   * @param reason The limit which was exceeded
+   */
+  private void recordKill(String reason) {
+    Counter.builder("cwlviewer.cwltool.kills")
+        .description("cwltool processes killed for exceeding a limit")
+        .tag("reason", reason)
+        .register(meterRegistry)
+        .increment();
   }
 }
@@ -22,16 +22,21 @@ package org.commonwl.view.cwl;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Date;
+import java.util.concurrent.CompletableFuture;
 import org.apache.jena.query.QueryException;
 import org.commonwl.view.git.GitDetails;
 import org.commonwl.view.git.GitLicenseException;
 import org.commonwl.view.git.GitSemaphore;
 import org.commonwl.view.git.GitService;
+import org.commonwl.view.graphviz.GraphRenderer;
 import org.commonwl.view.researchobject.ROBundleFactory;
 import org.commonwl.view.util.FileUtils;
+import org.commonwl.view.workflow.QueueEventService;
+import org.commonwl.view.workflow.QueueEventService.Stage;
 import org.commonwl.view.workflow.QueuedWorkflow;
 import org.commonwl.view.workflow.QueuedWorkflowRepository;
 import org.commonwl.view.workflow.Workflow;
+import org.commonwl.view.workflow.WorkflowIndexService;
 import org.commonwl.view.workflow.WorkflowRepository;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.TransportException;
@@ -39,6 +44,7 @@ import org.eclipse.jgit.errors.MissingObjectException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.stereotype.Component;
@@ -57,6 +63,11 @@ public class CWLToolRunner {
   private final String cwlToolVersion;
   private final GitSemaphore gitSemaphore;
   private final GitService gitService;
+  private final QueueEventService queueEventService;
+  private final WorkflowIndexService workflowIndexService;
+  private final GraphRenderer graphRenderer;
+  private final int maxAttempts;
+  private final long retryBackoffSeconds;
 
   @Autowired
   public CWLToolRunner(
@@ -66,7 +77,12 @@ public class CWLToolRunner {
       CWLTool cwlTool,
       ROBundleFactory roBundleFactory,
       GitSemaphore gitSemaphore,
-      GitService gitService) {
+      GitService gitService,
+      QueueEventService queueEventService,
+      WorkflowIndexService workflowIndexService,
+      GraphRenderer graphRenderer,
+      @Value("${queue.maxAttempts}") int maxAttempts,
+      @Value("${queue.retryBackoffSeconds}") long retryBackoffSeconds) {
     this.workflowRepository = workflowRepository;
     this.queuedWorkflowRepository = queuedWorkflowRepository;
     this.cwlService = cwlService;
@@ -74,24 +90,62 @@ public class CWLToolRunner {
     this.roBundleFactory = roBundleFactory;
     this.gitSemaphore = gitSemaphore;
     this.gitService = gitService;
+    this.queueEventService = queueEventService;
+    this.workflowIndexService = workflowIndexService;
+    this.graphRenderer = graphRenderer;
+    this.maxAttempts = maxAttempts;
+    this.retryBackoffSeconds = retryBackoffSeconds;
   }
 
+  /**
+   * Parses a queued workflow with cwltool and saves the result, recording the outcome on the queue.
+   * Transient failures leave the entry running and reschedule it with an exponential backoff until
+   * the maximum number of attempts is reached.
+   *
+   * @param queuedWorkflow The queued workflow, claimed by {@link QueuedWorkflowWorker}
+   * @return A future completing once the queued workflow has been updated
+   */
   @Async
-  public void createWorkflowFromQueued(QueuedWorkflow queuedWorkflow)
+  public CompletableFuture<Void> createWorkflowFromQueued(QueuedWorkflow queuedWorkflow)
       throws IOException, InterruptedException {
 
     Workflow tempWorkflow = queuedWorkflow.getTempRepresentation();
     GitDetails gitInfo = tempWorkflow.getRetrievedFrom();
     final String repoUrl = gitInfo.getRepoUrl();
+
+    // The lease of a previous attempt ran out, most likely because the node running it went away
+    if (queuedWorkflow.getAttempts() > maxAttempts) {
+      logger.error(
+          "Giving up on workflow "
+              + queuedWorkflow.getId()
+              + " from "
+              + gitInfo.toSummary()
+              + " after "
+              + maxAttempts
+              + " attempts");
+      queuedWorkflow.setCwltoolStatus(CWLToolStatus.ERROR);
+      queuedWorkflow.setMessage("Gave up parsing the workflow after " + maxAttempts + " attempts");
+      queuedWorkflow.reschedule(queuedWorkflow.getAvailableAt());
+      queuedWorkflowRepository.save(queuedWorkflow);
+      publish(queuedWorkflow, Stage.FAILED);
+      return CompletableFuture.completedFuture(null);
+    }
+
     // Parse using cwltool and replace in database
     Git repo = null;
     try {
       boolean safeToAccess = gitSemaphore.acquire(repoUrl);
       repo = gitService.getRepository(gitInfo, safeToAccess);
+      publish(queuedWorkflow, Stage.GIT_FETCHED);
       Path localPath = repo.getRepository().getWorkTree().toPath();
       Path workflowFile = localPath.resolve(gitInfo.getPath()).normalize().toAbsolutePath();
       Workflow newWorkflow =
           cwlService.parseWorkflowWithCwltool(tempWorkflow, workflowFile, localPath);
+      // Not saved if another node may have changed the checkout while it was parsed
+      if (safeToAccess) {
+        gitSemaphore.checkHeld(repoUrl);
+      }
+      publish(queuedWorkflow, Stage.CWLTOOL_DONE);
 
       // Success
       newWorkflow.setRetrievedFrom(tempWorkflow.getRetrievedFrom());
@@ -100,17 +154,64 @@ public class CWLToolRunner {
       newWorkflow.setCwltoolVersion(cwlToolVersion);
 
       workflowRepository.save(newWorkflow);
+      workflowIndexService.index(newWorkflow);
+
+      // Render graphs in the background, so the first view of the workflow does not wait on dot
+      final String queueID = queuedWorkflow.getId();
+      CompletableFuture<Void> graphs =
+          graphRenderer
+              .renderGraphs(newWorkflow)
+              .whenComplete(
+                  (result, ex) -> {
+                    if (ex == null) {
+                      queueEventService.publish(
+                          queueID, Stage.GRAPHS_READY, CWLToolStatus.SUCCESS, null);
+                    } else {
+                      logger.error("Error rendering graphs for workflow " + queueID, ex);
+                    }
+                  });
 
-      // Generate RO bundle
-      roBundleFactory.createWorkflowRO(newWorkflow);
+      // Generate RO bundle once the graphs it includes are stored, rather than laying them out
+      // again. Graphs which failed to render are retried by the bundle.
+      graphs
+          .handle((result, ex) -> null)
+          .thenCompose(
+              result -> {
+                try {
+                  return roBundleFactory.createWorkflowRO(newWorkflow);
+                } catch (IOException | InterruptedException ex) {
+                  return CompletableFuture.failedFuture(ex);
+                }
+              })
+          .whenComplete(
+              (result, ex) -> {
+                if (ex == null) {
+                  queueEventService.publish(
+                      queueID, Stage.BUNDLE_READY, CWLToolStatus.SUCCESS, null);
+                } else {
+                  logger.error("Error creating RO Bundle for workflow " + queueID, ex);
+                }
+              });
 
       // Mark success on queue
       queuedWorkflow.setCwltoolStatus(CWLToolStatus.SUCCESS);
+      queuedWorkflow.setMessage(null);
 
     } catch (QueryException ex) {
       logger.error("Jena query exception for workflow " + queuedWorkflow.getId(), ex);
-      queuedWorkflow.setCwltoolStatus(CWLToolStatus.ERROR);
-      queuedWorkflow.setMessage("An error occurred when executing a query on the SPARQL store");
+      retryOrFail(
+          queuedWorkflow, "An error occurred when executing a query on the SPARQL store");
+      FileUtils.deleteGitRepository(repo);
+    } catch (CWLToolTimeoutException ex) {
+      logger.error(
+          "Workflow "
+              + queuedWorkflow.getId()
+              + " from "
+              + gitInfo.toSummary()
+              + " : "
+              + ex.getMessage());
+      queuedWorkflow.setCwltoolStatus(CWLToolStatus.TIMEOUT);
+      queuedWorkflow.setMessage(ex.getMessage());
       FileUtils.deleteGitRepository(repo);
     } catch (CWLValidationException | GitLicenseException ex) {
       String message = ex.getMessage();
@@ -130,14 +231,15 @@ public class CWLToolRunner {
               + " : "
               + message,
           ex);
-      queuedWorkflow.setCwltoolStatus(CWLToolStatus.ERROR);
       if (message.contains(
           "Authentication is required but no CredentialsProvider has been registered")) {
+        // Not going to change by retrying
+        queuedWorkflow.setCwltoolStatus(CWLToolStatus.ERROR);
         queuedWorkflow.setMessage(
             "Unable to retrieve the Git repository: it may be private, misnamed, or removed. "
                 + message);
       } else {
-        queuedWorkflow.setMessage(message);
+        retryOrFail(queuedWorkflow, message);
       }
       FileUtils.deleteGitRepository(repo);
     } catch (MissingObjectException ex) {
@@ -172,7 +274,46 @@ public class CWLToolRunner {
     } finally {
       gitSemaphore.release(repoUrl);
       FileUtils.deleteTemporaryGitRepository(repo);
+      if (queuedWorkflow.getCwltoolStatus() != CWLToolStatus.RUNNING) {
+        queuedWorkflow.reschedule(queuedWorkflow.getAvailableAt());
+      }
       queuedWorkflowRepository.save(queuedWorkflow);
+      publish(
+          queuedWorkflow,
+          switch (queuedWorkflow.getCwltoolStatus()) {
+            case SUCCESS -> Stage.SAVED;
+            case RUNNING -> Stage.QUEUED;
+            default -> Stage.FAILED;
+          });
+    }
+    return CompletableFuture.completedFuture(null);
+  }
+
+  private void publish(QueuedWorkflow queuedWorkflow, Stage stage) {
+    queueEventService.publish(
+        queuedWorkflow.getId(),
+        stage,
+        queuedWorkflow.getCwltoolStatus(),
+        queuedWorkflow.getMessage());
+  }
+
+  /**
+   * Reschedules a queued workflow after a transient failure, or marks it as failed if it has
+   * already used all of its attempts.
+   *
+   * @param queuedWorkflow The queued workflow which failed
+   * @param message The error message to show to the user
+   */
+  private void retryOrFail(QueuedWorkflow queuedWorkflow, String message) {
+    int attempts = queuedWorkflow.getAttempts();
+    if (attempts < maxAttempts) {
+      long delaySeconds = retryBackoffSeconds << Math.min(Math.max(attempts - 1, 0), 16);
+      queuedWorkflow.setMessage(
+          message + "\nRetrying in " + delaySeconds + " seconds (attempt " + attempts + ")");
+      queuedWorkflow.reschedule(new Date(System.currentTimeMillis() + delaySeconds * 1000));
+    } else {
+      queuedWorkflow.setCwltoolStatus(CWLToolStatus.ERROR);
+      queuedWorkflow.setMessage(message);
     }
   }
 }
@@ -5,5 +5,6 @@ public enum CWLToolStatus {
   DOWNLOADING,
   RUNNING,
   ERROR,
+  TIMEOUT,
   SUCCESS
 }
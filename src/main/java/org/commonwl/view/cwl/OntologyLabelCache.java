@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.jena.ontology.OntModelSpec;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.shared.JenaException;
+import org.apache.jena.vocabulary.RDFS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ResourceUtils;
+
+/**
+ * Resolves the labels of <code>format</code> IRIs from an index held in memory.
+ *
+ * <p>The index is preloaded from local ontology files, by default the extract of EDAM bundled on
+ * the classpath, so that ingesting workflows does not wait on ontologies being downloaded. Formats
+ * not found locally fall back to the ontologies graph of the triple store and, if enabled, to
+ * fetching the ontology once. Formats which still have no label are remembered for a while so they
+ * are not looked up again for every input and output.
+ */
+@Component
+public class OntologyLabelCache {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final RDFService rdfService;
+  private final boolean fetchMissing;
+  private final long missTtlMillis;
+  private final Map<String, String> labels = new ConcurrentHashMap<>();
+  private final Map<String, Long> misses = new ConcurrentHashMap<>();
+
+  @Autowired
+  public OntologyLabelCache(
+      RDFService rdfService,
+      @Value("${ontology.preloadLocations}") String[] preloadLocations,
+      @Value("${ontology.fetchMissing}") boolean fetchMissing,
+      @Value("${ontology.missTtlMinutes}") long missTtlMinutes) {
+    this.rdfService = rdfService;
+    this.fetchMissing = fetchMissing;
+    this.missTtlMillis = missTtlMinutes * 60 * 1000;
+    for (String location : preloadLocations) {
+      if (location.isBlank()) {
+        continue;
+      }
+      try {
+        int before = labels.size();
+        index(load(location.trim()));
+        logger.info("Preloaded {} ontology labels from {}", labels.size() - before, location);
+      } catch (IOException | JenaException ex) {
+        logger.warn("Could not preload ontology from {}: {}", location, ex.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Get the label of a format
+   *
+   * @param format The format IRI
+   * @return The label, or null if none could be found
+   */
+  public String getLabel(String format) {
+    String label = labels.get(format);
+    if (label != null) {
+      return label;
+    }
+    Long missExpires = misses.get(format);
+    if (missExpires != null && missExpires > System.currentTimeMillis()) {
+      return null;
+    }
+
+    try {
+      if (rdfService.ontPropertyExists(format)) {
+        label = rdfService.getOntLabel(format);
+      } else if (fetchMissing) {
+        Model ontModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM);
+        ontModel.read(format, null, "RDF/XML");
+        rdfService.addToOntologies(ontModel);
+        index(ontModel);
+        label = labels.get(format);
+      }
+    } catch (JenaException ex) {
+      logger.warn("Could not resolve the label of format {}: {}", format, ex.getMessage());
+    }
+
+    if (label == null) {
+      misses.put(format, System.currentTimeMillis() + missTtlMillis);
+      return null;
+    }
+    labels.put(format, label);
+    misses.remove(format);
+    return label;
+  }
+
+  /**
+   * Load an ontology to preload its labels
+   *
+   * @param location The file path or URL of the ontology, which can start with classpath:
+   * @return The ontology
+   * @throws IOException If the ontology could not be read
+   */
+  private static Model load(String location) throws IOException {
+    Model ontModel = ModelFactory.createDefaultModel();
+    try (InputStream in = ResourceUtils.getURL(location).openStream()) {
+      RDFDataMgr.read(ontModel, in, RDFLanguages.filenameToLang(location, Lang.RDFXML));
+    }
+    return ontModel;
+  }
+
+  /**
+   * Add all the labels of an ontology to the index
+   *
+   * @param ontModel The ontology
+   */
+  private void index(Model ontModel) {
+    StmtIterator statements = ontModel.listStatements(null, RDFS.label, (String) null);
+    while (statements.hasNext()) {
+      Statement statement = statements.next();
+      if (statement.getSubject().isURIResource() && statement.getObject().isLiteral()) {
+        labels.putIfAbsent(
+            statement.getSubject().getURI(), statement.getObject().asLiteral().getLexicalForm());
+      }
+    }
+  }
+}
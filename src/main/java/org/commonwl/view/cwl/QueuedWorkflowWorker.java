@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.commonwl.view.workflow.QueuedWorkflow;
+import org.commonwl.view.workflow.QueuedWorkflowRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drains the queue of workflows waiting for cwltool, which is persisted in the database.
+ *
+ * <p>Each node polls the queue and claims entries with a lease, so work survives restarts and can
+ * be shared between several nodes. Leases of entries still being processed are renewed on every
+ * poll; if a node goes away its leases run out and the entries are claimed again by another node.
+ *
+ * <p>Polling runs on a thread of its own rather than the shared Spring scheduler, so long scheduled
+ * jobs such as RDF backups cannot hold up lease renewal until the leases expire.
+ */
+@Component
+public class QueuedWorkflowWorker {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final QueuedWorkflowRepository queuedWorkflowRepository;
+  private final CWLToolRunner cwlToolRunner;
+  private final int maxConcurrent;
+  private final long leaseSeconds;
+  private final long pollIntervalMillis;
+  private final String nodeId;
+  private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService poller =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "queue-poller");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  @Autowired
+  public QueuedWorkflowWorker(
+      QueuedWorkflowRepository queuedWorkflowRepository,
+      CWLToolRunner cwlToolRunner,
+      @Value("${queue.maxConcurrent}") int maxConcurrent,
+      @Value("${queue.leaseSeconds}") long leaseSeconds,
+      @Value("${queue.pollIntervalMillis}") long pollIntervalMillis) {
+    this.queuedWorkflowRepository = queuedWorkflowRepository;
+    this.cwlToolRunner = cwlToolRunner;
+    this.maxConcurrent = maxConcurrent;
+    this.leaseSeconds = leaseSeconds;
+    this.pollIntervalMillis = pollIntervalMillis;
+    this.nodeId = hostName() + "-" + UUID.randomUUID();
+  }
+
+  /** Starts polling the queue on the thread of this worker */
+  @PostConstruct
+  public void start() {
+    poller.scheduleWithFixedDelay(
+        () -> {
+          try {
+            poll();
+          } catch (RuntimeException e) {
+            // Keep polling, a failed poll must not cancel the schedule
+            logger.error("Could not poll the queue of workflows", e);
+          }
+        },
+        pollIntervalMillis,
+        pollIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops polling the queue, leaving the leases of entries in flight to expire */
+  @PreDestroy
+  public void stop() {
+    poller.shutdownNow();
+  }
+
+  /** Renews the leases held by this node and claims new entries up to the concurrency limit. */
+  public void poll() {
+    Date now = new Date();
+    Date leaseExpiresAt = new Date(now.getTime() + leaseSeconds * 1000);
+
+    queuedWorkflowRepository.renewLeases(nodeId, Set.copyOf(inFlight), leaseExpiresAt);
+
+    int capacity = maxConcurrent - inFlight.size();
+    if (capacity <= 0) {
+      return;
+    }
+
+    List<QueuedWorkflow> claimed =
+        queuedWorkflowRepository.claimAvailable(nodeId, now, leaseExpiresAt, capacity);
+    for (QueuedWorkflow queuedWorkflow : claimed) {
+      String id = queuedWorkflow.getId();
+      inFlight.add(id);
+      try {
+        cwlToolRunner
+            .createWorkflowFromQueued(queuedWorkflow)
+            .whenComplete((result, ex) -> inFlight.remove(id));
+      } catch (Exception e) {
+        // Lease is left to expire so the entry is retried later
+        logger.error("Could not update workflow " + id + " with cwltool.", e);
+        inFlight.remove(id);
+      }
+    }
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      return "unknown";
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.rdf.model.Model;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores the models of parsed workflows in the triple store.
+ *
+ * <p>In bulk mode, models are collected and written in batches, each in a single transaction,
+ * when the batch is full or the flush interval has passed. Storing a model waits until its batch
+ * has been written, so a workflow is only saved once its graph is in the triple store. Batches are
+ * written on a thread of the loader rather than the shared scheduler. Otherwise each model is
+ * stored as soon as it is parsed.
+ *
+ * <p>As every workflow waits for its batch, a batch can hold at most one model per workflow parsed
+ * at the same time, so the batch size may not be larger than the number of concurrent runs.
+ */
+@Component
+public class RDFBulkLoader {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final RDFService rdfService;
+  private final boolean bulk;
+  private final int batchSize;
+  private final long flushIntervalMillis;
+  private final ScheduledExecutorService flusher =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "rdf-bulk-flusher");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private Batch pending = new Batch();
+
+  /** Models waiting to be written together, and the outcome of writing them */
+  private static class Batch {
+    private final Map<String, Model> models = new LinkedHashMap<>();
+    private final Map<String, RuntimeException> failures = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> written = new CompletableFuture<>();
+  }
+
+  /**
+   * Create the loader
+   *
+   * @param rdfService The triple store the models are written to
+   * @param bulk Whether to write the models in batches
+   * @param batchSize Number of models written together in bulk mode
+   * @param flushIntervalMillis Interval at which a batch which is not full is written
+   * @param maxConcurrent Maximum number of workflows parsed at the same time, which the batch size
+   *     may not exceed
+   * @throws IllegalArgumentException if bulk mode is on and a batch could never be filled
+   */
+  @Autowired
+  public RDFBulkLoader(
+      RDFService rdfService,
+      @Value("${rdf.bulk.enabled}") boolean bulk,
+      @Value("${rdf.bulk.batchSize}") int batchSize,
+      @Value("${rdf.bulk.flushIntervalMillis}") long flushIntervalMillis,
+      @Value("${queue.maxConcurrent}") int maxConcurrent) {
+    if (bulk && batchSize > maxConcurrent) {
+      throw new IllegalArgumentException(
+          "rdf.bulk.batchSize ("
+              + batchSize
+              + ") may not be larger than queue.maxConcurrent ("
+              + maxConcurrent
+              + "), as each workflow waits for its batch to be written");
+    }
+    this.rdfService = rdfService;
+    this.bulk = bulk;
+    this.batchSize = batchSize;
+    this.flushIntervalMillis = flushIntervalMillis;
+  }
+
+  /** Starts writing the current batch every flush interval in bulk mode */
+  @PostConstruct
+  public void start() {
+    if (bulk) {
+      flusher.scheduleWithFixedDelay(
+          this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /** Stops the flush thread and writes the models still waiting */
+  @PreDestroy
+  public void stop() {
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(flushIntervalMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  /**
+   * Store a model, or add it to the current batch in bulk mode and wait until the batch is written
+   *
+   * @param graphName The name of the graph to store the model in
+   * @param model The model to be stored
+   */
+  public void store(String graphName, Model model) {
+    if (!bulk) {
+      rdfService.storeModel(graphName, model);
+      return;
+    }
+    Batch batch;
+    boolean full;
+    synchronized (this) {
+      batch = pending;
+      batch.models.put(graphName, model);
+      full = batch.models.size() >= batchSize;
+    }
+    if (full) {
+      flusher.execute(this::flush);
+    }
+
+    try {
+      batch.written.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while storing the graph " + graphName, ex);
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException("Failed to store the graph " + graphName, ex.getCause());
+    }
+    RuntimeException failure = batch.failures.get(graphName);
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /** Write the current batch to the triple store */
+  public void flush() {
+    Batch batch;
+    synchronized (this) {
+      if (pending.models.isEmpty()) {
+        return;
+      }
+      batch = pending;
+      pending = new Batch();
+    }
+    try {
+      rdfService.storeModels(batch.models);
+      logger.info("Stored a batch of " + batch.models.size() + " workflow graphs");
+    } catch (RuntimeException ex) {
+      // Fall back to storing one at a time so one bad graph does not lose the others
+      logger.warn("Failed to store a batch of workflow graphs, storing them one by one", ex);
+      batch.models.forEach(
+          (graphName, model) -> {
+            try {
+              rdfService.storeModel(graphName, model);
+            } catch (RuntimeException e) {
+              logger.error("Failed to store the graph " + graphName, e);
+              batch.failures.put(graphName, e);
+            }
+          });
+    } finally {
+      batch.written.complete(null);
+    }
+  }
+}
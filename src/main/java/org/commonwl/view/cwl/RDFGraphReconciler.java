@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.commonwl.view.workflow.QueuedWorkflowRepository;
+import org.commonwl.view.workflow.WorkflowRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Drops the named graphs of workflows which are no longer in the database.
+ *
+ * <p>Removing a workflow leaves its graph in the triple store, as another workflow added by commit
+ * ID may share the same identifier. This compares the workflow graphs in the store with the
+ * identifiers of the workflows and queued workflows in the database, and drops the graphs of
+ * neither in batches. In dry-run mode the orphans are only reported.
+ */
+@Component
+public class RDFGraphReconciler {
+
+  private static final String WORKFLOW_GRAPH_PREFIX = "https://w3id.org/cwl/view/git/";
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final RDFService rdfService;
+  private final WorkflowRepository workflowRepository;
+  private final QueuedWorkflowRepository queuedWorkflowRepository;
+  private final boolean dryRun;
+  private final int batchSize;
+  private final Counter graphsDropped;
+  private final Counter triplesReclaimed;
+  private final AtomicLong orphans = new AtomicLong();
+
+  @Autowired
+  public RDFGraphReconciler(
+      RDFService rdfService,
+      WorkflowRepository workflowRepository,
+      QueuedWorkflowRepository queuedWorkflowRepository,
+      MeterRegistry meterRegistry,
+      @Value("${rdf.gc.dryRun}") boolean dryRun,
+      @Value("${rdf.gc.batchSize}") int batchSize) {
+    this.rdfService = rdfService;
+    this.workflowRepository = workflowRepository;
+    this.queuedWorkflowRepository = queuedWorkflowRepository;
+    this.dryRun = dryRun;
+    this.batchSize = batchSize;
+    this.graphsDropped =
+        Counter.builder("cwlviewer.rdf.gc.graphs")
+            .description("Orphaned workflow graphs dropped from the RDF store")
+            .register(meterRegistry);
+    this.triplesReclaimed =
+        Counter.builder("cwlviewer.rdf.gc.triples")
+            .description("Triples reclaimed by dropping orphaned workflow graphs")
+            .register(meterRegistry);
+    Gauge.builder("cwlviewer.rdf.gc.orphans", orphans, AtomicLong::get)
+        .description("Orphaned workflow graphs found by the last reconciliation")
+        .register(meterRegistry);
+  }
+
+  /** Scheduled reconciliation, see {@link #reconcile()} */
+  @Scheduled(cron = "${cron.rdfGc}")
+  public void scheduledReconcile() {
+    reconcile();
+  }
+
+  /**
+   * Find the orphaned workflow graphs and, unless in dry-run mode, drop them
+   *
+   * @return The orphaned graphs found
+   */
+  public List<String> reconcile() {
+    // Graphs are listed before the live identifiers, so a workflow saved in between is seen as live
+    List<String> graphs = rdfService.listGraphs();
+    Set<String> live = liveIdentifiers();
+
+    List<String> orphaned = new ArrayList<>();
+    for (String graph : graphs) {
+      if (graph.startsWith(WORKFLOW_GRAPH_PREFIX) && !live.contains(graph)) {
+        orphaned.add(graph);
+      }
+    }
+    orphans.set(orphaned.size());
+    logger.info(
+        "Found "
+            + orphaned.size()
+            + " orphaned workflow graphs out of "
+            + graphs.size()
+            + " graphs"
+            + (dryRun ? " (dry run, nothing dropped)" : ""));
+
+    for (int i = 0; i < orphaned.size(); i += batchSize) {
+      List<String> batch = orphaned.subList(i, Math.min(i + batchSize, orphaned.size()));
+      long triples = 0;
+      for (String graph : batch) {
+        long graphTriples = rdfService.countTriples(graph);
+        triples += graphTriples;
+        if (dryRun) {
+          logger.info("Orphaned graph " + graph + " with " + graphTriples + " triples");
+        }
+      }
+      if (dryRun) {
+        continue;
+      }
+      try {
+        rdfService.dropGraphs(batch);
+        graphsDropped.increment(batch.size());
+        triplesReclaimed.increment(triples);
+        logger.info("Dropped " + batch.size() + " orphaned graphs, " + triples + " triples");
+      } catch (RuntimeException ex) {
+        logger.error("Failed to drop a batch of " + batch.size() + " orphaned graphs", ex);
+      }
+    }
+    return orphaned;
+  }
+
+  /**
+   * Get the identifiers of all the workflows in the database, including those being parsed
+   *
+   * @return The workflow identifiers
+   */
+  private Set<String> liveIdentifiers() {
+    Set<String> live = new HashSet<>(workflowRepository.findAllIdentifiers());
+    live.addAll(queuedWorkflowRepository.findAllIdentifiers());
+    return live;
+  }
+}
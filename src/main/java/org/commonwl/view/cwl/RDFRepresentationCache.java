@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.commonwl.view.workflow.WorkflowNotFoundException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the serialised RDF of workflows on disk, so permalinks can be served as files rather than
+ * fetching and re-serialising the graph from the triple store on every request.
+ *
+ * <p>Graphs are named after commit-pinned workflow identifiers and so do not change once stored.
+ */
+@Service
+public class RDFRepresentationCache {
+
+  private final RDFService rdfService;
+  private final Path rdfStorage;
+
+  @Autowired
+  public RDFRepresentationCache(RDFService rdfService, @Value("${rdfStorage}") String rdfStorage) {
+    this.rdfService = rdfService;
+    this.rdfStorage = Paths.get(rdfStorage);
+  }
+
+  /**
+   * Get the serialised RDF of a workflow, serialising it on the first request
+   *
+   * @param graphName The name of the graph, the workflow identifier
+   * @param format The name of the Jena writer, TURTLE, JSON-LD or RDFXML
+   * @return The file containing the serialised graph
+   * @throws WorkflowNotFoundException If the graph does not exist
+   * @throws IOException If the file could not be written
+   */
+  public File getRepresentation(String graphName, String format)
+      throws WorkflowNotFoundException, IOException {
+    Path file = rdfStorage.resolve(fileName(graphName, format));
+    if (Files.exists(file)) {
+      return file.toFile();
+    }
+    if (!rdfService.graphExists(graphName)) {
+      throw new WorkflowNotFoundException();
+    }
+
+    // Written aside and moved into place, so a partial file is never served
+    Files.createDirectories(rdfStorage);
+    Path partial = Files.createTempFile(rdfStorage, file.getFileName().toString(), ".partial");
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(partial))) {
+        rdfService.writeModel(graphName, format, out);
+      }
+      Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      FileUtils.deleteQuietly(partial.toFile());
+    }
+    return file.toFile();
+  }
+
+  /**
+   * Get a strong entity tag for a file returned by {@link #getRepresentation(String, String)}
+   *
+   * <p>The file is never rewritten in place, so its name and modification time identify its bytes.
+   *
+   * @param representation The serialised graph
+   * @return The quoted entity tag
+   */
+  public String getETag(File representation) {
+    return "\"" + representation.getName() + "-" + representation.lastModified() + "\"";
+  }
+
+  /**
+   * Get the name of the file for a graph in a format
+   *
+   * @param graphName The name of the graph
+   * @param format The name of the Jena writer
+   * @return The file name
+   */
+  private String fileName(String graphName, String format) {
+    String extension;
+    switch (format) {
+      case "JSON-LD":
+        extension = "jsonld";
+        break;
+      case "RDFXML":
+        extension = "rdf";
+        break;
+      default:
+        extension = "ttl";
+    }
+    return "rdf-" + DigestUtils.sha256Hex(graphName) + "." + extension;
+  }
+}
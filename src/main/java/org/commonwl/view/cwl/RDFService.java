@@ -19,11 +19,21 @@
 
 package org.commonwl.view.cwl;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.Dataset;
 import org.apache.jena.query.DatasetAccessor;
 import org.apache.jena.query.DatasetAccessorFactory;
+import org.apache.jena.query.DatasetFactory;
 import org.apache.jena.query.ParameterizedSparqlString;
 import org.apache.jena.query.Query;
 import org.apache.jena.query.QueryExecution;
@@ -32,13 +42,28 @@ import org.apache.jena.query.QueryFactory;
 import org.apache.jena.query.ResultSet;
 import org.apache.jena.query.ResultSetFactory;
 import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.modify.request.QuadDataAcc;
+import org.apache.jena.sparql.modify.request.UpdateDataInsert;
+import org.apache.jena.sparql.modify.request.UpdateDrop;
+import org.apache.jena.system.Txn;
+import org.apache.jena.update.UpdateExecutionFactory;
+import org.apache.jena.update.UpdateRequest;
 import org.apache.jena.web.DatasetGraphAccessorHTTP;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-/** Handles the parsing of CWL RDF files */
+/**
+ * Handles the parsing of CWL RDF files
+ *
+ * <p>The triples are stored either in a remote SPARQL endpoint, or in an embedded dataset when one
+ * is configured, see {@link RDFStoreConfig}. Graph names are the same in both cases.
+ */
 @Service
 public class RDFService {
 
@@ -54,16 +79,41 @@ public class RDFService {
           + "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#>\n"
           + "PREFIX s: <http://schema.org/>";
 
+  private static final int AUTHOR_INDEX_CACHE_SIZE = 256;
+
   private String rdfService;
 
+  // Embedded dataset, or null to use the remote SPARQL endpoint
+  private final Dataset dataset;
+
+  // Author indexes of recently stored or queried graphs, least recently used evicted first
+  private final Map<String, AuthorIndex> authorIndexes =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, AuthorIndex> eldest) {
+          return size() > AUTHOR_INDEX_CACHE_SIZE;
+        }
+      };
+
   /**
    * Create the RDFService with configuration
    *
    * @param rdfService The SPARQL endpoint from configuration
    */
+  public RDFService(String rdfService) {
+    this(rdfService, Optional.empty());
+  }
+
+  /**
+   * Create the RDFService with configuration
+   *
+   * @param rdfService The SPARQL endpoint from configuration, also the base of graph names
+   * @param dataset The embedded dataset, if configured instead of the SPARQL endpoint
+   */
   @Autowired
-  public RDFService(@Value("${sparql.endpoint}") String rdfService) {
+  public RDFService(@Value("${sparql.endpoint}") String rdfService, Optional<Dataset> dataset) {
     this.rdfService = rdfService;
+    this.dataset = dataset.orElse(null);
   }
 
   /**
@@ -72,6 +122,10 @@ public class RDFService {
    * @param model The model to be stored
    */
   public void addToOntologies(Model model) {
+    if (dataset != null) {
+      Txn.executeWrite(dataset, () -> dataset.getNamedModel(rdfService + "ontologies").add(model));
+      return;
+    }
     DatasetAccessor accessor = DatasetAccessorFactory.createHTTP(rdfService);
     accessor.add("ontologies", model);
   }
@@ -84,13 +138,69 @@ public class RDFService {
    * @return A byte array representing the model in the given format
    */
   public byte[] getModel(String graphName, String format) {
-    DatasetAccessor accessor = DatasetAccessorFactory.createHTTP(rdfService);
-    Model model = accessor.getModel(graphName);
     ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-    model.write(outputStream, format);
+    writeModel(graphName, format, outputStream);
     return outputStream.toByteArray();
   }
 
+  /**
+   * Write a model from the triple store in a given format, without buffering the serialisation
+   *
+   * @param graphName The name of the graph for the model
+   * @param format The name of the writer (format to be written)
+   * @param out The stream to write to
+   */
+  public void writeModel(String graphName, String format, OutputStream out) {
+    if (dataset != null) {
+      Txn.executeRead(dataset, () -> dataset.getNamedModel(graphName).write(out, format));
+      return;
+    }
+    DatasetAccessor accessor = DatasetAccessorFactory.createHTTP(rdfService);
+    accessor.getModel(graphName).write(out, format);
+  }
+
+  /**
+   * Fetch a whole graph from the triple store in one request
+   *
+   * @param graphName The name of the graph
+   * @return An in-memory copy of the graph
+   */
+  public Model getGraph(String graphName) {
+    if (dataset != null) {
+      return Txn.calculateRead(
+          dataset,
+          () -> ModelFactory.createDefaultModel().add(dataset.getNamedModel(graphName)));
+    }
+    DatasetAccessor accessor = DatasetAccessorFactory.createHTTP(rdfService);
+    return accessor.getModel(graphName);
+  }
+
+  /**
+   * Get a view of this service which answers the workflow queries from a model held in memory,
+   * rather than a round trip to the triple store for each one. The model is linked into the view
+   * rather than copied.
+   *
+   * @param graphName The name of the graph the model is stored as
+   * @param model The triples of the graph
+   * @return An RDFService querying only the given graph
+   */
+  public RDFService withGraph(String graphName, Model model) {
+    Dataset local = DatasetFactory.createGeneral();
+    Txn.executeWrite(local, () -> local.addNamedModel(graphName, model));
+    return new RDFService(rdfService, Optional.of(local));
+  }
+
+  /**
+   * Make a view created by {@link #withGraph(String, Model)} also answer queries naming another
+   * graph from the same model, such as a workflow nested in the stored one, without copying it
+   *
+   * @param graphName The name of the graph in the view
+   * @param alias The other name to query the graph by
+   */
+  public void aliasGraph(String graphName, String alias) {
+    Txn.executeWrite(dataset, () -> dataset.addNamedModel(alias, dataset.getNamedModel(graphName)));
+  }
+
   /**
    * Store a model with triples in the triple store
    *
@@ -98,12 +208,95 @@ public class RDFService {
    * @param model The model to be stored
    */
   public void storeModel(String graphName, Model model) {
+    indexAuthors(graphName, model);
+    if (dataset != null) {
+      Txn.executeWrite(dataset, () -> dataset.replaceNamedModel(graphName, model));
+      return;
+    }
     DatasetGraphAccessorHTTP accessor = new DatasetGraphAccessorHTTP(rdfService);
     accessor.setOutboundSyntax(RDFFormat.TURTLE);
     Node name = NodeFactory.createURI(graphName);
     accessor.httpPut(name, model.getGraph());
   }
 
+  /**
+   * Store several models in the triple store at once, replacing any existing graphs of the same
+   * names
+   *
+   * <p>The remote endpoint receives a single SPARQL update, which it applies in one transaction,
+   * rather than one HTTP request per graph.
+   *
+   * @param models The models to be stored, by graph name
+   */
+  public void storeModels(Map<String, Model> models) {
+    models.forEach(this::indexAuthors);
+    if (dataset != null) {
+      Txn.executeWrite(dataset, () -> models.forEach(dataset::replaceNamedModel));
+      return;
+    }
+    UpdateRequest request = new UpdateRequest();
+    models.forEach(
+        (graphName, model) -> {
+          Node name = NodeFactory.createURI(graphName);
+          List<Quad> quads =
+              model.getGraph().find().mapWith(triple -> new Quad(name, triple)).toList();
+          request.add(new UpdateDrop(name, true));
+          request.add(new UpdateDataInsert(new QuadDataAcc(quads)));
+        });
+    UpdateExecutionFactory.createRemote(request, rdfService).execute();
+  }
+
+  /**
+   * List the names of all the graphs in the triple store
+   *
+   * @return The graph names
+   */
+  public List<String> listGraphs() {
+    ParameterizedSparqlString graphsQuery = new ParameterizedSparqlString();
+    graphsQuery.setCommandText("SELECT DISTINCT ?graphName WHERE { GRAPH ?graphName { } }");
+    List<String> graphs = new ArrayList<>();
+    ResultSet result = runQuery(graphsQuery);
+    while (result.hasNext()) {
+      graphs.add(result.next().get("graphName").toString());
+    }
+    return graphs;
+  }
+
+  /**
+   * Count the triples in a graph
+   *
+   * @param graphName The name of the graph
+   * @return The number of triples
+   */
+  public long countTriples(String graphName) {
+    ParameterizedSparqlString countQuery = new ParameterizedSparqlString();
+    countQuery.setCommandText(
+        "SELECT (COUNT(*) AS ?triples) WHERE { GRAPH ?graphName { ?s ?p ?o } }");
+    countQuery.setIri("graphName", graphName);
+    ResultSet result = runQuery(countQuery);
+    return result.hasNext() ? result.next().getLiteral("triples").getLong() : 0;
+  }
+
+  /**
+   * Drop several graphs from the triple store in a single update
+   *
+   * @param graphNames The names of the graphs
+   */
+  public void dropGraphs(Collection<String> graphNames) {
+    synchronized (authorIndexes) {
+      authorIndexes.keySet().removeAll(graphNames);
+    }
+    if (dataset != null) {
+      Txn.executeWrite(dataset, () -> graphNames.forEach(dataset::removeNamedModel));
+      return;
+    }
+    UpdateRequest request = new UpdateRequest();
+    for (String graphName : graphNames) {
+      request.add(new UpdateDrop(NodeFactory.createURI(graphName), true));
+    }
+    UpdateExecutionFactory.createRemote(request, rdfService).execute();
+  }
+
   /**
    * Check if a graph exists within the triple store
    *
@@ -114,10 +307,7 @@ public class RDFService {
     ParameterizedSparqlString graphQuery = new ParameterizedSparqlString();
     graphQuery.setCommandText("ASK WHERE { GRAPH ?graphName { ?s ?p ?o } }");
     graphQuery.setIri("graphName", graphName);
-    Query query = QueryFactory.create(graphQuery.toString());
-    try (QueryExecution qexec = QueryExecutionFactory.createServiceRequest(rdfService, query)) {
-      return qexec.execAsk();
-    }
+    return runAsk(graphQuery);
   }
 
   /**
@@ -133,10 +323,7 @@ public class RDFService {
             + "ASK WHERE { GRAPH ?graphName { ?ont rdfs:label ?label } }");
     graphQuery.setIri("ont", ontUri);
     graphQuery.setIri("graphName", rdfService + "ontologies");
-    Query query = QueryFactory.create(graphQuery.toString());
-    try (QueryExecution qexec = QueryExecutionFactory.createServiceRequest(rdfService, query)) {
-      return qexec.execAsk();
-    }
+    return runAsk(graphQuery);
   }
 
   /**
@@ -361,22 +548,58 @@ public class RDFService {
   }
 
   /**
-   * Get authors from schema.org creator fields for a file
+   * Get the authors described anywhere in a workflow graph, indexed by file
    *
-   * @param path The path within the Git repository to the file
-   * @param fileUri URI of the file
-   * @return The result set of step links
+   * <p>The index is built with a single query over the graph, and kept in memory for graphs
+   * recently stored or looked up.
+   *
+   * @param graphName The name of the graph, the workflow identifier
+   * @return The index of authors by file
    */
-  public ResultSet getAuthors(String path, String fileUri) {
-    ParameterizedSparqlString linkQuery = new ParameterizedSparqlString();
-    linkQuery.setCommandText(
+  public AuthorIndex getAuthorIndex(String graphName) {
+    synchronized (authorIndexes) {
+      AuthorIndex index = authorIndexes.get(graphName);
+      if (index != null) {
+        return index;
+      }
+    }
+    AuthorIndex index = new AuthorIndex(runQuery(authorsQuery(graphName)));
+    synchronized (authorIndexes) {
+      authorIndexes.put(graphName, index);
+    }
+    return index;
+  }
+
+  /**
+   * Build the author index of a graph from its model, as it is being stored
+   *
+   * @param graphName The name of the graph
+   * @param model The model of the graph
+   */
+  private void indexAuthors(String graphName, Model model) {
+    AuthorIndex index =
+        new AuthorIndex(withGraph(graphName, model).runQuery(authorsQuery(graphName)));
+    synchronized (authorIndexes) {
+      authorIndexes.put(graphName, index);
+    }
+  }
+
+  /**
+   * Query for the authors of every file in a graph who have an ORCID
+   *
+   * @param graphName The name of the graph
+   * @return The query with file, email, name and orcid
+   */
+  private ParameterizedSparqlString authorsQuery(String graphName) {
+    ParameterizedSparqlString authorsQuery = new ParameterizedSparqlString();
+    authorsQuery.setCommandText(
         queryCtx
-            + "SELECT ?email ?name ?orcid\n"
+            + "SELECT ?file ?email ?name ?orcid\n"
             + "WHERE {\n"
             + "  GRAPH ?graphName {"
             + "    ?file s:author|s:contributor|s:creator ?author .\n"
             + "    {\n"
-            + "      ?creator rdf:type s:Person .\n"
+            + "      ?author rdf:type s:Person .\n"
             + "      OPTIONAL { ?author s:email ?email }\n"
             + "      OPTIONAL { ?author s:name ?name }\n"
             + "      OPTIONAL { ?author s:id|s:sameAs ?orcid }\n"
@@ -388,13 +611,12 @@ public class RDFService {
             + "      OPTIONAL { ?member s:name ?name }\n"
             + "      OPTIONAL { ?member s:id|s:sameAs ?orcid }\n"
             + "    }\n"
-            + "    FILTER(regex(str(?orcid), \"^https?://orcid.org/\" ))\n"
-            + "    FILTER(regex(str(?file), ?wfFilter, \"i\" ))\n"
+            + "    FILTER(STRSTARTS(str(?orcid), \"https://orcid.org/\")\n"
+            + "        || STRSTARTS(str(?orcid), \"http://orcid.org/\"))\n"
             + "  }"
             + "}");
-    linkQuery.setLiteral("wfFilter", path + "$");
-    linkQuery.setIri("graphName", fileUri);
-    return runQuery(linkQuery);
+    authorsQuery.setIri("graphName", graphName);
+    return authorsQuery;
   }
 
   /**
@@ -471,11 +693,84 @@ public class RDFService {
    */
   ResultSet runQuery(ParameterizedSparqlString queryString) {
     Query query = QueryFactory.create(queryString.toString());
+    if (dataset != null) {
+      return Txn.calculateRead(
+          dataset,
+          () -> {
+            try (QueryExecution qexec = QueryExecutionFactory.create(query, dataset)) {
+              return ResultSetFactory.copyResults(qexec.execSelect());
+            }
+          });
+    }
     try (QueryExecution qexec = QueryExecutionFactory.createServiceRequest(rdfService, query)) {
       return ResultSetFactory.copyResults(qexec.execSelect());
     }
   }
 
+  /**
+   * Run a SPARQL ASK query
+   *
+   * @param queryString The query to be run
+   * @return The result of the query
+   */
+  private boolean runAsk(ParameterizedSparqlString queryString) {
+    Query query = QueryFactory.create(queryString.toString());
+    if (dataset != null) {
+      return Txn.calculateRead(
+          dataset,
+          () -> {
+            try (QueryExecution qexec = QueryExecutionFactory.create(query, dataset)) {
+              return qexec.execAsk();
+            }
+          });
+    }
+    try (QueryExecution qexec = QueryExecutionFactory.createServiceRequest(rdfService, query)) {
+      return qexec.execAsk();
+    }
+  }
+
+  /**
+   * Whether the triples are stored in an embedded dataset rather than a remote SPARQL endpoint
+   *
+   * @return True if the store is embedded
+   */
+  public boolean isEmbedded() {
+    return dataset != null;
+  }
+
+  /**
+   * Export all the graphs of the embedded dataset as N-Quads, in a consistent snapshot
+   *
+   * @param out The stream to write to
+   * @throws IOException If the store is remote, which is backed up on its own
+   */
+  public void export(OutputStream out) throws IOException {
+    if (dataset == null) {
+      throw new IOException("Only an embedded RDF store can be exported");
+    }
+    Txn.executeRead(dataset, () -> RDFDataMgr.write(out, dataset, Lang.NQUADS));
+  }
+
+  /**
+   * Get the docker images pulled anywhere in a workflow graph, including by its tools
+   *
+   * @param workflowURI URI of the workflow
+   * @return The result set of docker pulls
+   */
+  public ResultSet getDockerPulls(String workflowURI) {
+    ParameterizedSparqlString dockerQuery = new ParameterizedSparqlString();
+    dockerQuery.setCommandText(
+        queryCtx
+            + "SELECT DISTINCT ?pull\n"
+            + "WHERE {\n"
+            + "  GRAPH ?wf {"
+            + "    ?docker DockerRequirement:dockerPull ?pull\n"
+            + "  }"
+            + "}");
+    dockerQuery.setIri("wf", workflowURI);
+    return runQuery(dockerQuery);
+  }
+
   public ResultSet getLicense(String workflowURI) {
     ParameterizedSparqlString licenseQuery = new ParameterizedSparqlString();
     licenseQuery.setCommandText(
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import org.apache.jena.query.Dataset;
+import org.apache.jena.tdb2.TDB2Factory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configures an embedded TDB2 dataset for {@link RDFService} when <code>rdf.store=tdb2</code>,
+ * instead of the remote SPARQL endpoint.
+ */
+@Configuration
+public class RDFStoreConfig {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(name = "rdf.store", havingValue = "tdb2")
+  public Dataset rdfDataset(@Value("${rdf.tdb2.location}") String location) {
+    logger.info("Using embedded TDB2 RDF store in " + location);
+    return TDB2Factory.connectDataset(location);
+  }
+}
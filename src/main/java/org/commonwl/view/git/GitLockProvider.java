@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.git;
+
+/**
+ * Lock shared between the nodes of a deployment, guarding the checkouts of Git repositories in a
+ * shared {@code gitStorage} directory. Used by {@link GitSemaphore} when more than one node is
+ * deployed.
+ */
+public interface GitLockProvider {
+
+  /**
+   * Tries to take the lock for a repository without waiting for it
+   *
+   * @param repoKey The name of the directory the repository is checked out into
+   * @return Whether the lock was taken
+   */
+  boolean tryLock(String repoKey);
+
+  /**
+   * Releases a lock taken with {@link #tryLock(String)}
+   *
+   * @param repoKey The name of the directory the repository is checked out into
+   */
+  void unlock(String repoKey);
+
+  /**
+   * Checks that a lock taken with {@link #tryLock(String)} is still held, as a lock may be lost
+   * along with the connection to the service holding it
+   *
+   * @param repoKey The name of the directory the repository is checked out into
+   * @return Whether the lock is still held
+   */
+  boolean isHeld(String repoKey);
+}
@@ -19,16 +19,39 @@
 
 package org.commonwl.view.git;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-/** Object to manage concurrent access to Git repositories */
+/**
+ * Object to manage concurrent access to Git repositories
+ *
+ * <p>Threads of a node are counted locally. When a {@link GitLockProvider} is configured, the first
+ * thread of a node using a repository also needs the lock shared with the other nodes.
+ */
 @Component
 public class GitSemaphore {
 
   private static Map<String, Integer> currentRepos = new HashMap<>();
 
+  private final Optional<GitLockProvider> lockProvider;
+  private final Set<String> clusterLocked = new HashSet<>();
+
+  public GitSemaphore() {
+    this(Optional.empty());
+  }
+
+  @Autowired
+  public GitSemaphore(Optional<GitLockProvider> lockProvider) {
+    this.lockProvider = lockProvider;
+  }
+
   /**
    * Note that a thread will be accessing the repository
    *
@@ -41,7 +64,15 @@ public class GitSemaphore {
       return false;
     } else {
       currentRepos.put(repoUrl, 1);
-      return true;
+      if (lockProvider.isEmpty()) {
+        return true;
+      }
+      // Another node may be using the shared checkout
+      if (lockProvider.get().tryLock(repoKey(repoUrl))) {
+        clusterLocked.add(repoUrl);
+        return true;
+      }
+      return false;
     }
   }
 
@@ -57,7 +88,28 @@ public class GitSemaphore {
         currentRepos.put(repoUrl, threadCountUsing - 1);
       } else {
         currentRepos.remove(repoUrl);
+        if (clusterLocked.remove(repoUrl)) {
+          lockProvider.get().unlock(repoKey(repoUrl));
+        }
       }
     }
   }
+
+  /**
+   * Check that a repository the thread is using is still locked against the other nodes, as the
+   * lock is lost along with the connection to the lock provider
+   *
+   * @param repoUrl The url of the repository
+   * @throws IOException if the lock was lost, so another node may have changed the checkout
+   */
+  public synchronized void checkHeld(String repoUrl) throws IOException {
+    if (clusterLocked.contains(repoUrl) && !lockProvider.get().isHeld(repoKey(repoUrl))) {
+      throw new IOException("Lost the Git lock for " + repoUrl + " while using its checkout");
+    }
+  }
+
+  /** The key of the lock, which is the name of the directory the repository is checked out to */
+  private static String repoKey(String repoUrl) {
+    return DigestUtils.sha1Hex(GitDetails.normaliseUrl(repoUrl));
+  }
 }
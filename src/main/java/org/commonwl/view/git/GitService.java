@@ -69,10 +69,25 @@ public class GitService {
    */
   public Git getRepository(GitDetails gitDetails, boolean reuseDir)
       throws GitAPIException, IOException {
+    Git repo = fetchRepository(gitDetails.getRepoUrl(), reuseDir);
+    checkout(repo, gitDetails);
+    return repo;
+  }
+
+  /**
+   * Gets an up to date repository, cloning into a local directory or fetching into the cached one,
+   * without checking out any branch
+   *
+   * @param repoUrl The URL of the Git repository
+   * @param reuseDir Whether the cached repository can be used
+   * @return The git object for the repository
+   */
+  public Git fetchRepository(String repoUrl, boolean reuseDir)
+      throws GitAPIException, IOException {
     Git repo;
     if (reuseDir) {
       // Base dir from configuration, name from hash of repository URL
-      String baseName = DigestUtils.sha1Hex(GitDetails.normaliseUrl(gitDetails.getRepoUrl()));
+      String baseName = DigestUtils.sha1Hex(GitDetails.normaliseUrl(repoUrl));
 
       // Check if folder already exists
       Path repoDir = gitStorage.resolve(baseName);
@@ -81,23 +96,32 @@ public class GitService {
           repo = Git.open(repoDir.toFile());
           repo.fetch().call();
         } catch (RepositoryNotFoundException ex) {
-          repo = cloneRepo(gitDetails.getRepoUrl(), repoDir.toFile());
+          repo = cloneRepo(repoUrl, repoDir.toFile());
         }
       } else {
         // Create a folder and clone repository into it
         Files.createDirectory(repoDir);
         try {
-          repo = cloneRepo(gitDetails.getRepoUrl(), repoDir.toFile());
+          repo = cloneRepo(repoUrl, repoDir.toFile());
         } catch (CheckoutConflictException ex) {
-          repo = cloneRepo(gitDetails.getRepoUrl(), createTempDir());
+          repo = cloneRepo(repoUrl, createTempDir());
         }
       }
     } else {
       // Another thread is already using the existing folder
       // Must create another temporary one
-      repo = cloneRepo(gitDetails.getRepoUrl(), createTempDir());
+      repo = cloneRepo(repoUrl, createTempDir());
     }
+    return repo;
+  }
 
+  /**
+   * Checks out the branch, tag or commit ID of a workflow in an already fetched repository
+   *
+   * @param repo The git object for the repository
+   * @param gitDetails The details of the Git repository
+   */
+  public void checkout(Git repo, GitDetails gitDetails) throws GitAPIException {
     // Checkout the specific branch or commit ID
     if (repo != null) {
       // Create a new local branch if it does not exist and not a commit ID
@@ -123,8 +147,6 @@ public class GitService {
         }
       }
     }
-
-    return repo;
   }
 
   /**
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.git;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+import javax.sql.DataSource;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Git lock provider using Postgres session level advisory locks.
+ *
+ * <p>All the locks of a node are held by one dedicated connection, so they are released by the
+ * database if the node goes away. Reentrancy is not an issue, as {@link GitSemaphore} only asks for
+ * the lock of a repository once per node.
+ *
+ * <p>The locks are also released silently if the connection drops, so it is validated before every
+ * lock, unlock and check. Once it is found lost, the locks it held are reported as no longer held
+ * until they are unlocked, so the Git operations relying on them fail.
+ */
+@Component
+@ConditionalOnProperty(name = "gitLock.provider", havingValue = "postgres")
+public class PostgresGitLockProvider implements GitLockProvider, DisposableBean {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final DataSource dataSource;
+  private Connection connection;
+
+  // Locks taken on the current connection, and locks lost with a previous one not yet unlocked
+  private final Set<String> held = new HashSet<>();
+  private final Set<String> lost = new HashSet<>();
+
+  @Autowired
+  public PostgresGitLockProvider(DataSource dataSource) {
+    this.dataSource = dataSource;
+  }
+
+  @Override
+  public synchronized boolean tryLock(String repoKey) {
+    try {
+      checkConnection();
+      if (queryLock("SELECT pg_try_advisory_lock(?)", repoKey)) {
+        held.add(repoKey);
+        return true;
+      }
+      return false;
+    } catch (SQLException e) {
+      // Not safe to share the checkout, the caller falls back to a temporary one
+      logger.error("Could not take the Git lock for " + repoKey, e);
+      return false;
+    }
+  }
+
+  @Override
+  public synchronized void unlock(String repoKey) {
+    try {
+      checkConnection();
+      if (lost.remove(repoKey)) {
+        // Already released by the database
+        return;
+      }
+      held.remove(repoKey);
+      if (!queryLock("SELECT pg_advisory_unlock(?)", repoKey)) {
+        logger.warn("Git lock for " + repoKey + " was not held when releasing it");
+      }
+    } catch (SQLException e) {
+      lost.remove(repoKey);
+      logger.error("Could not release the Git lock for " + repoKey, e);
+    }
+  }
+
+  @Override
+  public synchronized boolean isHeld(String repoKey) {
+    try {
+      checkConnection();
+    } catch (SQLException e) {
+      logger.error("Could not check the Git lock for " + repoKey, e);
+    }
+    return held.contains(repoKey);
+  }
+
+  @Override
+  public synchronized void destroy() throws SQLException {
+    if (connection != null) {
+      connection.close();
+    }
+  }
+
+  /**
+   * Validate the connection holding the locks, reconnecting if it was lost
+   *
+   * @throws SQLException if no new connection could be made
+   */
+  private void checkConnection() throws SQLException {
+    if (connection != null && connection.isValid(1)) {
+      return;
+    }
+    if (connection != null) {
+      // Locks held by a broken connection have been released by the database
+      logger.error("Lost the connection holding the Git locks of " + held.size() + " repositories");
+      lost.addAll(held);
+      held.clear();
+      Connection broken = connection;
+      connection = null;
+      try {
+        broken.close();
+      } catch (SQLException e) {
+        logger.debug("Could not close the lost connection", e);
+      }
+    }
+    connection = dataSource.getConnection();
+    connection.setAutoCommit(true);
+  }
+
+  private boolean queryLock(String sql, String repoKey) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+      statement.setLong(1, lockId(repoKey));
+      try (ResultSet result = statement.executeQuery()) {
+        return result.next() && result.getBoolean(1);
+      }
+    }
+  }
+
+  /**
+   * Advisory locks are identified by a 64 bit integer, taken from the start of the repository
+   * directory name, which is a SHA-1 hash
+   */
+  static long lockId(String repoKey) {
+    try {
+      return ByteBuffer.wrap(Hex.decodeHex(repoKey.substring(0, 16))).getLong();
+    } catch (DecoderException | IndexOutOfBoundsException e) {
+      return repoKey.hashCode();
+    }
+  }
+}
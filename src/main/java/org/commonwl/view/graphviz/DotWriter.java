@@ -21,6 +21,7 @@ package org.commonwl.view.graphviz;
 
 import java.io.IOException;
 import java.io.Writer;
+import org.apache.commons.codec.digest.DigestUtils;
 
 /** Takes an object and creates a DOT graph of it */
 public abstract class DotWriter {
@@ -77,6 +78,19 @@ public abstract class DotWriter {
     writeLine("  ];");
   }
 
+  /**
+   * Get a stable hash of DOT source, for caches of anything derived from it
+   *
+   * <p>Line endings are normalised, so the hash does not depend on the platform the DOT source was
+   * written on.
+   *
+   * @param dot The DOT source
+   * @return The hex encoded SHA-256 hash
+   */
+  public static String hash(String dot) {
+    return DigestUtils.sha256Hex(dot.replace("\r\n", "\n"));
+  }
+
   /**
    * Write a single line using the Writer
    *
@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.graphviz;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Positions of the nodes and edges of a graph laid out by dot, for drawing the graph in the
+ * browser
+ *
+ * <p>Coordinates are in points from the top left corner of the graph.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GraphLayout {
+
+  // Graphviz plain output is in inches
+  private static final double POINTS_PER_INCH = 72;
+
+  private double width;
+  private double height;
+  private final List<Node> nodes = new ArrayList<>();
+  private final List<Edge> edges = new ArrayList<>();
+
+  public double getWidth() {
+    return width;
+  }
+
+  public double getHeight() {
+    return height;
+  }
+
+  public List<Node> getNodes() {
+    return nodes;
+  }
+
+  public List<Edge> getEdges() {
+    return edges;
+  }
+
+  /**
+   * Read a layout from the plain output format of dot
+   *
+   * @param plain The output of dot -Tplain
+   * @return The layout of the graph
+   * @throws IOException if the output is not in the plain format
+   */
+  public static GraphLayout fromPlain(String plain) throws IOException {
+    GraphLayout layout = new GraphLayout();
+    double scale = POINTS_PER_INCH;
+    for (List<String> statement : tokenize(plain)) {
+      try {
+        switch (statement.get(0)) {
+          case "graph" -> {
+            scale *= Double.parseDouble(statement.get(1));
+            layout.width = round(Double.parseDouble(statement.get(2)) * scale);
+            layout.height = round(Double.parseDouble(statement.get(3)) * scale);
+          }
+          case "node" -> layout.nodes.add(layout.readNode(statement, scale));
+          case "edge" -> {
+            Edge edge = layout.readEdge(statement, scale);
+            if (!"invis".equals(edge.style)) {
+              layout.edges.add(edge);
+            }
+          }
+          case "stop" -> {
+            return layout;
+          }
+          default -> throw new IOException("Unknown statement in layout: " + statement.get(0));
+        }
+      } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+        throw new IOException("Malformed statement in layout: " + statement, ex);
+      }
+    }
+    throw new IOException("Layout ended without a stop statement");
+  }
+
+  /** Read a statement of the form: node name x y width height label style shape color fillcolor */
+  private Node readNode(List<String> statement, double scale) {
+    Node node = new Node();
+    node.id = statement.get(1);
+    node.width = round(Double.parseDouble(statement.get(4)) * scale);
+    node.height = round(Double.parseDouble(statement.get(5)) * scale);
+    node.x = round(Double.parseDouble(statement.get(2)) * scale - node.width / 2);
+    node.y = round(height - Double.parseDouble(statement.get(3)) * scale - node.height / 2);
+    node.label = statement.get(6);
+    node.fillcolor = statement.get(10);
+    return node;
+  }
+
+  /**
+   * Read a statement of the form: edge tail head n x1 y1 .. xn yn [label xl yl] style color
+   *
+   * <p>The points are the control points of the cubic B-spline of the edge.
+   */
+  private Edge readEdge(List<String> statement, double scale) {
+    Edge edge = new Edge();
+    edge.tail = statement.get(1);
+    edge.head = statement.get(2);
+    int n = Integer.parseInt(statement.get(3));
+    edge.points = new double[n * 2];
+    for (int i = 0; i < n; i++) {
+      edge.points[i * 2] = round(Double.parseDouble(statement.get(4 + i * 2)) * scale);
+      edge.points[i * 2 + 1] =
+          round(height - Double.parseDouble(statement.get(5 + i * 2)) * scale);
+    }
+    int next = 4 + n * 2;
+    if (statement.size() - next > 2) {
+      edge.label = statement.get(next);
+      edge.labelX = round(Double.parseDouble(statement.get(next + 1)) * scale);
+      edge.labelY = round(height - Double.parseDouble(statement.get(next + 2)) * scale);
+      next += 3;
+    }
+    // Left out for the usual solid edges
+    String style = statement.get(next);
+    edge.style = style.equals("solid") ? null : style;
+    return edge;
+  }
+
+  /**
+   * Split plain output into statements of whitespace separated words, unquoting strings
+   *
+   * @param plain The output of dot -Tplain
+   * @return The words of each statement
+   */
+  private static List<List<String>> tokenize(String plain) {
+    List<List<String>> statements = new ArrayList<>();
+    List<String> statement = new ArrayList<>();
+    StringBuilder word = null;
+    int i = 0;
+    while (i < plain.length()) {
+      char c = plain.charAt(i++);
+      if (c == '"') {
+        // Quoted string, where dot escapes quotes and breaks long lines with a backslash
+        word = new StringBuilder();
+        while (i < plain.length() && plain.charAt(i) != '"') {
+          char q = plain.charAt(i++);
+          if (q == '\\' && i < plain.length()) {
+            char escaped = plain.charAt(i++);
+            if (escaped == '"') {
+              word.append('"');
+            } else if (escaped != '\n') {
+              word.append(q).append(escaped);
+            }
+          } else {
+            word.append(q);
+          }
+        }
+        i++;
+      } else if (c == '<' && word == null) {
+        // HTML-like label, ending at the matching angle bracket
+        word = new StringBuilder();
+        int depth = 1;
+        while (i < plain.length() && depth > 0) {
+          char h = plain.charAt(i++);
+          depth += h == '<' ? 1 : h == '>' ? -1 : 0;
+          if (depth > 0) {
+            word.append(h);
+          }
+        }
+      } else if (Character.isWhitespace(c)) {
+        if (word != null) {
+          statement.add(word.toString());
+          word = null;
+        }
+        if (c == '\n' && !statement.isEmpty()) {
+          statements.add(statement);
+          statement = new ArrayList<>();
+        }
+      } else {
+        if (word == null) {
+          word = new StringBuilder();
+        }
+        word.append(c);
+      }
+    }
+    if (word != null) {
+      statement.add(word.toString());
+    }
+    if (!statement.isEmpty()) {
+      statements.add(statement);
+    }
+    return statements;
+  }
+
+  /** Round a coordinate to a tenth of a point to keep the layout compact */
+  private static double round(double value) {
+    return Math.round(value * 10) / 10.0;
+  }
+
+  /** A node, positioned by the top left corner of its box */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public static class Node {
+
+    private String id;
+    private String label;
+    private double x;
+    private double y;
+    private double width;
+    private double height;
+    private String fillcolor;
+
+    public String getId() {
+      return id;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+
+    public double getX() {
+      return x;
+    }
+
+    public double getY() {
+      return y;
+    }
+
+    public double getWidth() {
+      return width;
+    }
+
+    public double getHeight() {
+      return height;
+    }
+
+    public String getFillcolor() {
+      return fillcolor;
+    }
+  }
+
+  /** An edge, drawn as a cubic B-spline through its control points */
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public static class Edge {
+
+    private String tail;
+    private String head;
+    private double[] points;
+    private String label;
+    private Double labelX;
+    private Double labelY;
+    private String style;
+
+    public String getTail() {
+      return tail;
+    }
+
+    public String getHead() {
+      return head;
+    }
+
+    /**
+     * Get the control points of the edge
+     *
+     * @return The x and y of each control point in turn
+     */
+    public double[] getPoints() {
+      return points;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+
+    public Double getLabelX() {
+      return labelX;
+    }
+
+    public Double getLabelY() {
+      return labelY;
+    }
+
+    public String getStyle() {
+      return style;
+    }
+  }
+}
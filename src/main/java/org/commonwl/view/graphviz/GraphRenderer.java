@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.graphviz;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import org.commonwl.view.workflow.Workflow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.stereotype.Component;
+
+/**
+ * Renders the graphs of newly parsed workflows in the background, so that viewing a workflow only
+ * streams the stored files
+ *
+ * <p>Kept apart from where it is called so the Spring proxy runs it asynchronously
+ */
+@Component
+@EnableAsync
+public class GraphRenderer {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final GraphVizService graphVizService;
+
+  @Autowired
+  public GraphRenderer(GraphVizService graphVizService) {
+    this.graphVizService = graphVizService;
+  }
+
+  /**
+   * Renders the graph of a workflow in every served format
+   *
+   * @param workflow The saved workflow
+   * @return A future completing once the graphs are stored
+   * @throws IOException If the graph could not be rendered or stored
+   */
+  @Async
+  public CompletableFuture<Void> renderGraphs(Workflow workflow) throws IOException {
+    graphVizService.getGraphPaths(workflow.getVisualisationDot(), GraphVizService.GRAPH_FORMATS);
+    logger.debug("Rendered graphs for workflow " + workflow.getID());
+    return CompletableFuture.completedFuture(null);
+  }
+}
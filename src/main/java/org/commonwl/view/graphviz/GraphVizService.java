@@ -19,15 +19,46 @@
 
 package org.commonwl.view.graphviz;
 
-import com.github.jabbalaci.graphviz.GraphViz;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import java.io.ByteArrayInputStream;
-import java.io.File;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.FileAlreadyExistsException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.commonwl.view.util.StreamGobbler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -36,70 +67,636 @@ import org.springframework.stereotype.Service;
 @Service
 public class GraphVizService {
 
-  private final String graphvizStorage;
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+  // Resolution of rendered graphs, lower for svg to match the size of the png
+  private static final int DEFAULT_DPI = 96;
+  private static final int SVG_DPI = 70;
+
+  // Background of graphs written by DotWriter, either as written or after layout by dot
+  private static final Pattern BGCOLOR = Pattern.compile("bgcolor\\s*=\\s*\"#eeeeee\"");
+
+  // Limit on the characters of error output kept from a single dot run
+  private static final long MAX_ERROR_CHARS = 65536;
+
+  /** Formats of the graph files served for a workflow, plain being served as a JSON layout */
+  public static final List<String> GRAPH_FORMATS = List.of("svg", "png", "xdot", "plain");
+
+  // Text formats which are also stored gzip compressed, to be served without compressing on
+  // every request. Not plain, which is only read to be converted to JSON.
+  private static final List<String> COMPRESSED_FORMATS = List.of("svg", "xdot");
+
+  // Cheaper dot layout for graphs which took too long to lay out: fewer network simplex and
+  // crossing minimisation iterations, and straight edges instead of routed splines
+  private static final String[] SIMPLIFIED_LAYOUT = {
+    "-Kdot", "-Gnslimit=2", "-Gnslimit1=2", "-Gmclimit=0.1", "-Gremincross=false", "-Gsplines=line"
+  };
+
+  // Drawn instead of graphs which took too long to lay out even with the simplified layout
+  private static final String PLACEHOLDER_DOT =
+      "digraph placeholder {\n"
+          + "  bgcolor = \"#eeeeee\";\n"
+          + "  node [shape = \"plaintext\", fontname = \"Helvetica\", fontsize = \"14\"];\n"
+          + "  \"placeholder\" [label = \"This workflow graph is too large to draw\"];\n"
+          + "}\n";
+
+  // Graphs used more recently than this are never evicted, as they may be about to be served
+  private static final Duration EVICTION_GRACE = Duration.ofMinutes(1);
+
+  // Graphs marked as expensive longer ago than this are laid out in full again, so a render which
+  // ran over the budget while the server was busy does not leave the graph simplified for good
+  private static final Duration EXPENSIVE_TTL = Duration.ofDays(1);
+
+  private final Path graphvizStorage;
+  private final MeterRegistry meterRegistry;
+  private final String executable;
+  private final Semaphore renderers;
+  private final long cacheQuotaBytes;
+  private final long timeoutSeconds;
+
+  // Renders in progress by the hash of their DOT source, so concurrent requests for the same graph
+  // wait for a single render rather than each running dot
+  private final Map<String, CompletableFuture<Void>> pendingRenders = new ConcurrentHashMap<>();
+
+  /**
+   * Create the Graphviz service
+   *
+   * @param graphvizStorage Directory in which rendered graphs are stored
+   * @param meterRegistry Registry for queueing and render duration metrics
+   * @param executable The Graphviz dot executable
+   * @param maxConcurrent Maximum number of dot processes running at the same time, further renders
+   *     wait in a first-come first-served queue
+   * @param cacheQuotaBytes Size of the stored graphs above which the least recently used are
+   *     deleted
+   * @param timeoutSeconds Time budget of laying out and drawing a graph, including waiting for
+   *     free dot processes, after which dot is killed and a cheaper layout is used for the graph
+   */
   @Autowired
-  public GraphVizService(@Value("${graphvizStorage}") String graphvizStorage) {
-    this.graphvizStorage = graphvizStorage;
+  public GraphVizService(
+      @Value("${graphvizStorage}") String graphvizStorage,
+      MeterRegistry meterRegistry,
+      @Value("${graphviz.executable}") String executable,
+      @Value("${graphviz.maxConcurrent}") int maxConcurrent,
+      @Value("${graphviz.cacheQuotaBytes}") long cacheQuotaBytes,
+      @Value("${graphviz.timeoutSeconds}") long timeoutSeconds) {
+    this.graphvizStorage = Paths.get(graphvizStorage);
+    this.meterRegistry = meterRegistry;
+    this.executable = executable;
+    this.renderers = new Semaphore(maxConcurrent, true);
+    this.cacheQuotaBytes = cacheQuotaBytes;
+    this.timeoutSeconds = timeoutSeconds;
+    Gauge.builder("cwlviewer.graphviz.queued", renderers, Semaphore::getQueueLength)
+        .description("Graph renders waiting for a free dot process")
+        .register(meterRegistry);
   }
 
   /**
    * Generate a graph in a specified format using GraphViz
    *
+   * <p>Used for graphs which are not stored, so a graph running over the time budget is not
+   * marked as expensive.
+   *
    * @param dot The DOT source
    * @param format The format for the graph to be generated in, e.g. "svg", "png", "dot"
    * @return An InputStream containing the graph in desired image format.
+   * @throws IOException if dot could not be run or failed to render the graph
    */
-  public InputStream getGraphStream(String dot, String format) {
-    // Generate graphviz image if it does not already exist
-    GraphViz gv = new GraphViz();
+  public InputStream getGraphStream(String dot, String format) throws IOException {
+    return new ByteArrayInputStream(renderAll(dot, List.of(format), false).get(format));
+  }
 
-    // Different DPI and transparency for svg files
-    if (format.equals("svg")) {
-      gv.decreaseDpi();
-      gv.decreaseDpi();
-      gv.decreaseDpi();
-      dot = dot.replace("bgcolor = \"#eeeeee\"", "bgcolor = \"transparent\"");
+  /**
+   * Generate a graph in several formats from a single layout of the DOT source
+   *
+   * <p>Layout is the expensive part of rendering, so when more than one format is requested the
+   * graph is laid out once by dot and every format is drawn from the resulting positions.
+   *
+   * <p>If dot runs over its time budget the graph is marked as expensive and drawn with a
+   * simplified layout instead, or a placeholder if that also runs over. Graphs marked as expensive
+   * go straight to the simplified layout, so a pathological graph does not hold a dot process for
+   * the whole budget on every render, until the mark expires a day later.
+   *
+   * @param dot The DOT source
+   * @param formats The formats for the graph to be generated in, e.g. "svg", "png", "xdot"
+   * @return The graph in each format, in the order requested
+   * @throws IOException if dot could not be run or failed to render the graph
+   */
+  public Map<String, byte[]> renderAll(String dot, Collection<String> formats)
+      throws IOException {
+    return renderAll(dot, formats, true);
+  }
+
+  /**
+   * Generate a graph in several formats from a single layout of the DOT source
+   *
+   * @param dot The DOT source
+   * @param formats The formats for the graph to be generated in
+   * @param remember Whether to mark the graph as expensive if it runs over the time budget
+   * @return The graph in each format, in the order requested
+   * @throws IOException if dot could not be run or failed to render the graph
+   */
+  private Map<String, byte[]> renderAll(String dot, Collection<String> formats, boolean remember)
+      throws IOException {
+    Path expensive = expensiveMarker(DotWriter.hash(dot));
+    if (isMarked(expensive)) {
+      recordBudget("skipped");
+    } else {
+      try {
+        return layoutAndRender(dot, formats, "-Kdot");
+      } catch (GraphVizTimeoutException timeout) {
+        recordBudget("exceeded");
+        logger.warn("Graph " + expensive.getFileName() + " exceeded the render time budget");
+        if (remember) {
+          Files.createDirectories(graphvizStorage);
+          Files.write(expensive, new byte[0]);
+        }
+      }
     }
 
-    byte[] dotBytes = gv.getGraph(dot, format, "dot");
-    return new ByteArrayInputStream(dotBytes);
+    try {
+      return layoutAndRender(dot, formats, SIMPLIFIED_LAYOUT);
+    } catch (GraphVizTimeoutException timeout) {
+      recordBudget("simplified_exceeded");
+      logger.warn("Graph " + expensive.getFileName() + " exceeded the simplified time budget");
+      return layoutAndRender(PLACEHOLDER_DOT, formats, "-Kdot");
+    }
   }
 
   /**
-   * Generate a graph in a specified format using GraphViz
+   * Generate a graph in several formats from a single layout of the DOT source
+   *
+   * <p>The layout and the drawing of every format share a single time budget.
    *
-   * @param fileName The relative name of the file to be generated in the graphvizStorage directory
    * @param dot The DOT source
-   * @param format The format for the graph to be generated in, e.g. "svg", "png", "dot"
+   * @param formats The formats for the graph to be generated in
+   * @param layout The dot options selecting the layout
+   * @return The graph in each format, in the order requested
+   * @throws GraphVizTimeoutException if dot ran over its time budget
+   * @throws IOException if dot could not be run or failed to render the graph
+   */
+  private Map<String, byte[]> layoutAndRender(
+      String dot, Collection<String> formats, String... layout) throws IOException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+    Map<String, byte[]> graphs = new LinkedHashMap<>();
+    if (formats.size() == 1) {
+      String format = formats.iterator().next();
+      graphs.put(format, render(dot, format, deadline, layout));
+      return graphs;
+    }
+    String positioned = new String(render(dot, "dot", deadline, layout), StandardCharsets.UTF_8);
+    for (String format : formats) {
+      // neato -n2 keeps the node positions and edge splines computed by dot
+      graphs.put(format, render(positioned, format, deadline, "-Kneato", "-n2"));
+    }
+    return graphs;
+  }
+
+  /**
+   * Whether a graph is drawn with a fallback, a simplified layout or a placeholder, because it ran
+   * over the render time budget
+   *
+   * <p>The fallback is stored under the same files as the full graph would be, but is drawn in full
+   * again once the graph is no longer marked as expensive, so it should not be cached for long.
+   *
+   * @param dot The DOT source
+   * @return True if the graph is marked as expensive and the mark has not expired
+   * @throws IOException if the mark could not be read
+   */
+  public boolean isFallback(String dot) throws IOException {
+    return isMarked(expensiveMarker(DotWriter.hash(dot)));
+  }
+
+  private Path expensiveMarker(String hash) {
+    return graphvizStorage.resolve("graph-" + hash + ".expensive");
+  }
+
+  /**
+   * Whether a graph is marked as expensive
+   *
+   * <p>The mark is never refreshed on use, so it expires a fixed time after the render which ran
+   * over the budget.
+   *
+   * @param expensive The marker file of the graph
+   * @return True if the marker exists and has not expired
+   * @throws IOException if the marker could not be read
+   */
+  private static boolean isMarked(Path expensive) throws IOException {
+    try {
+      Instant marked = Files.getLastModifiedTime(expensive).toInstant();
+      return marked.isAfter(Instant.now().minus(EXPENSIVE_TTL));
+    } catch (NoSuchFileException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * Delete the fallback of a graph whose expensive mark has expired, to lay it out in full again
+   *
+   * @param hash The hash of the DOT source
+   * @throws IOException if the stored graph could not be deleted
+   */
+  private void expireFallback(String hash) throws IOException {
+    Path expensive = expensiveMarker(hash);
+    if (!Files.exists(expensive) || isMarked(expensive)) {
+      return;
+    }
+    for (String format : GRAPH_FORMATS) {
+      Path out = graphvizStorage.resolve(fileName(hash, format));
+      Files.deleteIfExists(getCompressedPath(out));
+      Files.deleteIfExists(out);
+    }
+    // Last, so the fallback is never served as the full graph
+    Files.deleteIfExists(expensive);
+  }
+
+  /**
+   * Count a graph which ran over, or was not given, the full render time budget
+   *
+   * @param result "exceeded" or "simplified_exceeded" when dot was killed, or "skipped" when a
+   *     graph already known to be expensive went straight to the simplified layout
+   */
+  private void recordBudget(String result) {
+    Counter.builder("cwlviewer.graphviz.budget")
+        .description("Graphs drawn with a cheaper layout because of the render time budget")
+        .tag("result", result)
+        .register(meterRegistry)
+        .increment();
+  }
+
+  /**
+   * Generate the file of a graph in a specified format using GraphViz
+   *
+   * <p>Files are named by a hash of the DOT source, so identical graphs of different workflows,
+   * branches or queued workflows share a file.
+   *
+   * @param dot The DOT source
+   * @param format The format for the graph to be generated in, e.g. "svg", "png", "xdot"
    * @return The file containing the graph
    * @throws IOException if the writing failed (e.g. out of disk space)
    */
-  public Path getGraphPath(String fileName, String dot, String format) throws IOException {
-    // Generate graphviz image if it does not already exist
-    Path out = Paths.get(graphvizStorage).resolve(fileName);
+  public Path getGraphPath(String dot, String format) throws IOException {
+    return getGraphPaths(dot, List.of(format)).get(format);
+  }
+
+  /**
+   * Generate the files of a graph in several formats, laying out the graph once for all the
+   * formats which are not already stored
+   *
+   * <p>If the same graph is already being rendered by another request, that render is waited for
+   * and only the formats it did not store are rendered again. A fallback stored for a graph whose
+   * expensive mark has expired is deleted and the graph rendered again with the full layout.
+   *
+   * @param dot The DOT source
+   * @param formats The formats for the graph to be generated in, e.g. "svg", "png", "xdot"
+   * @return The file containing the graph in each format
+   * @throws IOException if the writing failed (e.g. out of disk space)
+   */
+  public Map<String, Path> getGraphPaths(String dot, Collection<String> formats)
+      throws IOException {
+    String hash = DotWriter.hash(dot);
+    CompletableFuture<Void> pending = pendingRenders.get(hash);
+    if (pending != null) {
+      awaitRender(pending);
+    }
+    expireFallback(hash);
+
+    Map<String, Path> paths = new LinkedHashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String format : formats) {
+      Path out = graphvizStorage.resolve(fileName(hash, format));
+      paths.put(format, out);
+      try {
+        // Mark as recently used for eviction
+        Files.setLastModifiedTime(out, FileTime.from(Instant.now()));
+        recordCache("hit");
+      } catch (NoSuchFileException ex) {
+        missing.add(format);
+        recordCache("miss");
+        continue;
+      }
+      if (COMPRESSED_FORMATS.contains(format)) {
+        try {
+          Files.setLastModifiedTime(getCompressedPath(out), FileTime.from(Instant.now()));
+        } catch (NoSuchFileException ex) {
+          // Evicted on its own, or stored before compressed copies were kept
+          store(getCompressedPath(out), gzip(Files.readAllBytes(out)));
+        }
+      }
+    }
+    if (missing.isEmpty()) {
+      return paths;
+    }
+
+    CompletableFuture<Void> rendering = new CompletableFuture<>();
+    pending = pendingRenders.putIfAbsent(hash, rendering);
+    if (pending != null) {
+      // Started by another request since the lookup
+      awaitRender(pending);
+      return getGraphPaths(dot, formats);
+    }
     try {
-      if (!Files.exists(out)) {
-        Files.copy(getGraphStream(dot, format), out);
+      Files.createDirectories(graphvizStorage);
+      for (Map.Entry<String, byte[]> graph : renderAll(dot, missing).entrySet()) {
+        Path out = paths.get(graph.getKey());
+        // Compressed copy first, so it is in place whenever the graph is
+        if (COMPRESSED_FORMATS.contains(graph.getKey())) {
+          store(getCompressedPath(out), gzip(graph.getValue()));
+        }
+        store(out, graph.getValue());
       }
-    } catch (FileAlreadyExistsException ex) {
-      return out;
+      rendering.complete(null);
+    } catch (IOException | RuntimeException ex) {
+      rendering.completeExceptionally(ex);
+      throw ex;
+    } finally {
+      pendingRenders.remove(hash, rendering);
+    }
+    evict();
+    return paths;
+  }
+
+  /**
+   * Wait for a render of the same graph by another request
+   *
+   * @param pending The render in progress
+   * @throws IOException if the render failed, or waiting was interrupted
+   */
+  private static void awaitRender(CompletableFuture<Void> pending) throws IOException {
+    try {
+      pending.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for graph to be rendered", ex);
+    } catch (ExecutionException ex) {
+      throw new IOException("Error rendering graph", ex.getCause());
+    }
+  }
+
+  /**
+   * Get the name of the file a graph is stored in, which only depends on its DOT source and format
+   *
+   * @param dot The DOT source
+   * @param format The format of the graph
+   * @return The file name
+   */
+  public static String getFileName(String dot, String format) {
+    return fileName(DotWriter.hash(dot), format);
+  }
+
+  private static String fileName(String hash, String format) {
+    return "graph-" + hash + "." + getExtension(format);
+  }
+
+  /**
+   * Whether a gzip compressed copy is kept next to the stored graphs of a format
+   *
+   * @param format The format of the graph
+   * @return True for text formats which are compressed
+   */
+  public static boolean isCompressed(String format) {
+    return COMPRESSED_FORMATS.contains(format);
+  }
+
+  /**
+   * Get the gzip compressed copy kept next to a stored graph in a text format
+   *
+   * @param graph The stored graph
+   * @return The compressed copy, which may not exist
+   */
+  public static Path getCompressedPath(Path graph) {
+    return graph.resolveSibling(graph.getFileName() + ".gz");
+  }
+
+  /**
+   * Write a file aside and move it into place, so a partial file is never served
+   *
+   * @param out The file to write
+   * @param content The content of the file
+   * @throws IOException if the writing failed (e.g. out of disk space)
+   */
+  private void store(Path out, byte[] content) throws IOException {
+    Path partial = Files.createTempFile(graphvizStorage, out.getFileName().toString(), ".partial");
+    try {
+      Files.write(partial, content);
+      Files.move(partial, out, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      FileUtils.deleteQuietly(partial.toFile());
     }
-    return out;
   }
 
   /**
-   * Delete the cache of workflow images for a workflow TODO: Make this more dynamic in some way,
-   * either store in workflow object or clear folder
+   * Compress a graph with gzip at the highest level, as it is compressed once and served many
+   * times
    *
-   * @param workflowID The ID of the workflow used for assuming file locations
+   * @param graph The graph
+   * @return The compressed graph
+   * @throws IOException if compression failed
    */
-  public void deleteCache(String workflowID) {
-    File graphvizSvg = new File(graphvizStorage + "/" + workflowID + ".svg");
-    graphvizSvg.delete();
-    File graphvizPng = new File(graphvizStorage + "/" + workflowID + ".png");
-    graphvizPng.delete();
-    File graphvizXdot = new File(graphvizStorage + "/" + workflowID + ".dot");
-    graphvizXdot.delete();
+  private static byte[] gzip(byte[] graph) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(graph.length / 4);
+    try (GZIPOutputStream out =
+        new GZIPOutputStream(compressed) {
+          {
+            def.setLevel(Deflater.BEST_COMPRESSION);
+          }
+        }) {
+      out.write(graph);
+    }
+    return compressed.toByteArray();
+  }
+
+  /**
+   * Delete the least recently used graphs until the stored graphs fit in the quota
+   *
+   * @throws IOException if the stored graphs could not be listed
+   */
+  private synchronized void evict() throws IOException {
+    List<Path> graphs;
+    try (Stream<Path> files = Files.list(graphvizStorage)) {
+      graphs =
+          files
+              .filter(file -> file.getFileName().toString().startsWith("graph-"))
+              .filter(file -> !file.getFileName().toString().endsWith(".partial"))
+              // Kept until they expire, as they tell fallback graphs apart from full ones
+              .filter(file -> !file.getFileName().toString().endsWith(".expensive"))
+              .toList();
+    }
+    Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+    long total = 0;
+    for (Path graph : graphs) {
+      try {
+        BasicFileAttributes attr = Files.readAttributes(graph, BasicFileAttributes.class);
+        attributes.put(graph, attr);
+        total += attr.size();
+      } catch (NoSuchFileException ex) {
+        // Evicted or cleared meanwhile
+      }
+    }
+    if (total <= cacheQuotaBytes) {
+      return;
+    }
+
+    Instant cutoff = Instant.now().minus(EVICTION_GRACE);
+    List<Map.Entry<Path, BasicFileAttributes>> leastRecent = new ArrayList<>(attributes.entrySet());
+    leastRecent.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+    for (Map.Entry<Path, BasicFileAttributes> graph : leastRecent) {
+      if (total <= cacheQuotaBytes
+          || graph.getValue().lastModifiedTime().toInstant().isAfter(cutoff)) {
+        break;
+      }
+      if (Files.deleteIfExists(graph.getKey())) {
+        Counter.builder("cwlviewer.graphviz.cache.evictions")
+            .description("Stored graphs deleted to fit in the cache quota")
+            .register(meterRegistry)
+            .increment();
+      }
+      total -= graph.getValue().size();
+    }
+  }
+
+  /**
+   * Count a lookup of a stored graph
+   *
+   * @param result Whether the graph was stored, "hit" or "miss"
+   */
+  private void recordCache(String result) {
+    Counter.builder("cwlviewer.graphviz.cache")
+        .description("Lookups of stored graphs")
+        .tag("result", result)
+        .register(meterRegistry)
+        .increment();
+  }
+
+  /**
+   * Get the extension of the stored file for a graph format
+   *
+   * @param format The Graphviz output format
+   * @return The file extension
+   */
+  public static String getExtension(String format) {
+    return format.equals("xdot") ? "dot" : format;
+  }
+
+  /**
+   * Render DOT source by piping it through a dot process, waiting for a free slot if the maximum
+   * number of processes are already running
+   *
+   * @param dot The DOT source
+   * @param format The Graphviz output format
+   * @param deadline The {@link System#nanoTime()} by which the graph must be rendered
+   * @param options Further dot options selecting the layout
+   * @return The rendered graph
+   * @throws GraphVizTimeoutException if dot ran over its time budget and was killed
+   * @throws IOException if no dot process was free in time, or dot could not be run or failed to
+   *     render the graph
+   */
+  private byte[] render(String dot, String format, long deadline, String... options)
+      throws IOException {
+    // Different DPI and transparency for svg files
+    int dpi = DEFAULT_DPI;
+    if (format.equals("svg")) {
+      dpi = SVG_DPI;
+      dot = BGCOLOR.matcher(dot).replaceAll("bgcolor = \"transparent\"");
+    }
+    List<String> command = new ArrayList<>(List.of(executable, "-T" + format));
+    if (!format.equals("dot")) {
+      // Left out of layouts, which would otherwise fix the resolution of every later format
+      command.add("-Gdpi=" + dpi);
+    }
+    command.addAll(List.of(options));
+
+    Timer.Sample queued = Timer.start(meterRegistry);
+    boolean acquired;
+    try {
+      acquired = renderers.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting to render graph", ex);
+    }
+    queued.stop(
+        Timer.builder("cwlviewer.graphviz.queue")
+            .description("Time graph renders waited for a free dot process")
+            .register(meterRegistry));
+    if (!acquired) {
+      // Busy rather than expensive, so not reported as a timeout which would mark the graph
+      throw new IOException("No dot process was free within " + timeoutSeconds + " seconds");
+    }
+
+    Process process = null;
+    CompletableFuture<Void> watchdog = null;
+    AtomicBoolean timedOut = new AtomicBoolean();
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = "error";
+    try {
+      final Process running = new ProcessBuilder(command).start();
+      process = running;
+
+      // Kill dot once it runs over the time budget, which ends its output early
+      watchdog =
+          CompletableFuture.runAsync(
+              () -> {
+                timedOut.set(true);
+                running.destroyForcibly();
+              },
+              CompletableFuture.delayedExecutor(
+                  Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+
+      // Collect warnings in the background so dot never blocks on a full error pipe
+      StreamGobbler errorGobbler =
+          new StreamGobbler(running.getErrorStream(), MAX_ERROR_CHARS, null);
+      errorGobbler.start();
+
+      // dot reads the whole graph before writing anything, so the input can be written fully
+      // before reading the output
+      try (OutputStream stdin = running.getOutputStream()) {
+        stdin.write(dot.getBytes(StandardCharsets.UTF_8));
+      } catch (IOException ex) {
+        // Broken pipe if dot was killed before reading all the input, reported below
+        if (!timedOut.get()) {
+          throw ex;
+        }
+      }
+      byte[] graph;
+      try (InputStream stdout = running.getInputStream()) {
+        graph = stdout.readAllBytes();
+      }
+      int exitValue = running.waitFor();
+      errorGobbler.join();
+
+      if (exitValue != 0 && timedOut.get()) {
+        outcome = "timeout";
+        logger.warn("Killed dot rendering " + format + " graph after timeout");
+        throw new GraphVizTimeoutException(
+            "dot did not finish within " + timeoutSeconds + " seconds and was stopped");
+      }
+      if (exitValue != 0 || graph.length == 0) {
+        throw new IOException(
+            "dot exited with status " + exitValue + ": " + errorGobbler.getContent());
+      }
+      outcome = "success";
+      return graph;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while rendering graph", ex);
+    } catch (IOException ex) {
+      if (!outcome.equals("timeout")) {
+        logger.error("Error rendering " + format + " graph with " + executable, ex);
+      }
+      throw ex;
+    } finally {
+      if (watchdog != null) {
+        watchdog.cancel(false);
+      }
+      if (process != null) {
+        process.destroyForcibly();
+      }
+      renderers.release();
+      sample.stop(
+          Timer.builder("cwlviewer.graphviz.render")
+              .description("Duration of rendering graphs with dot")
+              .tag("format", format)
+              .tag("outcome", outcome)
+              .register(meterRegistry));
+    }
   }
 }
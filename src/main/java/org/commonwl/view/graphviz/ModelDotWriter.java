@@ -24,11 +24,18 @@ import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import org.commonwl.view.cwl.CWLElement;
 import org.commonwl.view.cwl.CWLStep;
 import org.commonwl.view.workflow.Workflow;
 
-/** Writes GraphViz DOT files from a workflow model */
+/**
+ * Writes GraphViz DOT files from a workflow model
+ *
+ * <p>Inputs, outputs, steps and step inputs are written sorted by their IDs, so the same workflow
+ * always produces the same DOT source.
+ */
 public class ModelDotWriter extends DotWriter {
 
   public ModelDotWriter(Writer writer) {
@@ -63,7 +70,7 @@ public class ModelDotWriter extends DotWriter {
     writeLine("    label = \"Workflow Inputs\";");
 
     // Write each of the inputs as a node
-    for (Map.Entry<String, CWLElement> input : workflow.getInputs().entrySet()) {
+    for (Map.Entry<String, CWLElement> input : new TreeMap<>(workflow.getInputs()).entrySet()) {
       writeInputOutput(input);
     }
 
@@ -85,7 +92,7 @@ public class ModelDotWriter extends DotWriter {
     writeLine("    label = \"Workflow Outputs\";");
 
     // Write each of the outputs as a node
-    for (Map.Entry<String, CWLElement> output : workflow.getOutputs().entrySet()) {
+    for (Map.Entry<String, CWLElement> output : new TreeMap<>(workflow.getOutputs()).entrySet()) {
       writeInputOutput(output);
     }
 
@@ -100,8 +107,11 @@ public class ModelDotWriter extends DotWriter {
    * @throws IOException Any errors in writing which may have occurred
    */
   private void writeSteps(Workflow workflow) throws IOException {
+    SortedMap<String, CWLStep> steps = new TreeMap<>(workflow.getSteps());
+    SortedMap<String, CWLElement> outputs = new TreeMap<>(workflow.getOutputs());
+
     // Write each of the steps as a node
-    for (Map.Entry<String, CWLStep> step : workflow.getSteps().entrySet()) {
+    for (Map.Entry<String, CWLStep> step : steps.entrySet()) {
       String label = step.getValue().getLabel();
       if (label == null) {
         writeLine("  \"" + step.getKey() + "\";");
@@ -112,7 +122,7 @@ public class ModelDotWriter extends DotWriter {
 
     // Write the links between nodes
     // Write links between outputs and penultimate steps
-    for (Map.Entry<String, CWLElement> output : workflow.getOutputs().entrySet()) {
+    for (Map.Entry<String, CWLElement> output : outputs.entrySet()) {
       for (String sourceID : output.getValue().getSourceIDs()) {
         writeLine("  \"" + sourceID + "\" -> \"" + output.getKey() + "\";");
       }
@@ -120,9 +130,10 @@ public class ModelDotWriter extends DotWriter {
 
     // Write links between the remaining steps
     int defaultCount = 0;
-    for (Map.Entry<String, CWLStep> step : workflow.getSteps().entrySet()) {
+    for (Map.Entry<String, CWLStep> step : steps.entrySet()) {
       if (step.getValue().getSources() != null) {
-        for (Map.Entry<String, CWLElement> input : step.getValue().getSources().entrySet()) {
+        SortedMap<String, CWLElement> sources = new TreeMap<>(step.getValue().getSources());
+        for (Map.Entry<String, CWLElement> input : sources.entrySet()) {
           List<String> sourceIDs = input.getValue().getSourceIDs();
 
           // Draw the default value on the graph if there are no step inputs (it is a constant)
@@ -150,14 +161,9 @@ public class ModelDotWriter extends DotWriter {
     // Workaround to force outputs to lowest ranking, see #104
     writeLine("");
     writeLine("  // Invisible links to force outputs to be at lowest rank");
-    if (workflow.getOutputs().size() > 0) {
-      for (Map.Entry<String, CWLStep> step : workflow.getSteps().entrySet()) {
-        writeLine(
-            "  \""
-                + step.getKey()
-                + "\" -> \""
-                + workflow.getOutputs().keySet().iterator().next()
-                + "\" [style=invis];");
+    if (outputs.size() > 0) {
+      for (Map.Entry<String, CWLStep> step : steps.entrySet()) {
+        writeLine("  \"" + step.getKey() + "\" -> \"" + outputs.firstKey() + "\" [style=invis];");
       }
     }
   }
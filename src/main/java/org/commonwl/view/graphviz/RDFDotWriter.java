@@ -21,10 +21,14 @@ package org.commonwl.view.graphviz;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import org.apache.jena.iri.IRI;
 import org.apache.jena.iri.IRIFactory;
 import org.apache.jena.query.QuerySolution;
@@ -32,13 +36,21 @@ import org.apache.jena.query.ResultSet;
 import org.commonwl.view.cwl.CWLProcess;
 import org.commonwl.view.cwl.RDFService;
 
-/** Writes GraphViz DOT files from a workflow RDF model */
+/**
+ * Writes GraphViz DOT files from a workflow RDF model
+ *
+ * <p>SPARQL results come in no particular order, so nodes and links are sorted before being
+ * written and default values are numbered in that order. The same workflow therefore always
+ * produces the same DOT source.
+ */
 public class RDFDotWriter extends DotWriter {
 
   private final IRIFactory iriFactory = IRIFactory.iriImplementation();
 
   private RDFService rdfService;
   private String gitPath;
+  private String stepPath;
+  private String graphUrl;
 
   public RDFDotWriter(Writer writer, RDFService rdfService, String gitPath) {
     super(writer);
@@ -53,10 +65,26 @@ public class RDFDotWriter extends DotWriter {
    * @throws IOException Any errors in writing which may have occurred
    */
   public void writeGraph(String workflowUri) throws IOException {
+    writeGraph(workflowUri, null, null);
+  }
+
+  /**
+   * Write a graph representing a workflow to the Writer, where the workflow may be nested
+   *
+   * @param workflowUri The URI of the workflow in the model
+   * @param stepPath The path of steps running this workflow if it is nested, otherwise null
+   * @param graphUrl The path of the SVG graph of the top level workflow, including the context
+   *     path, which nested workflows link to with the step to expand, or null if the workflow is
+   *     not nested
+   * @throws IOException Any errors in writing which may have occurred
+   */
+  public void writeGraph(String workflowUri, String stepPath, String graphUrl) throws IOException {
+    this.stepPath = stepPath;
+    this.graphUrl = graphUrl;
     writePreamble();
     writeInputs(workflowUri);
     writeOutputs(workflowUri);
-    writeSteps(workflowUri, false);
+    writeSteps(workflowUri, stepPath != null);
     writeStepLinks(workflowUri);
     writeLine("}");
   }
@@ -77,10 +105,12 @@ public class RDFDotWriter extends DotWriter {
 
     // Write each of the inputs as a node
     ResultSet inputs = rdfService.getInputs(workflowUri);
+    List<String> nodes = new ArrayList<>();
     while (inputs.hasNext()) {
       QuerySolution input = inputs.nextSolution();
-      writeInputOutput(input);
+      nodes.add(inputOutputNode(input));
     }
+    writeSorted(nodes);
 
     // End subgraph
     writeLine("  }");
@@ -102,10 +132,12 @@ public class RDFDotWriter extends DotWriter {
 
     // Write each of the outputs as a node
     ResultSet outputs = rdfService.getOutputs(workflowUri);
+    List<String> nodes = new ArrayList<>();
     while (outputs.hasNext()) {
       QuerySolution output = outputs.nextSolution();
-      writeInputOutput(output);
+      nodes.add(inputOutputNode(output));
     }
+    writeSorted(nodes);
 
     // End subgraph
     writeLine("  }");
@@ -121,29 +153,48 @@ public class RDFDotWriter extends DotWriter {
   private void writeSteps(String workflowUri, boolean subworkflow) throws IOException {
 
     ResultSet steps = rdfService.getSteps(workflowUri);
-    Set<String> addedSteps = new HashSet<>();
+    SortedMap<String, String> stepNodes = new TreeMap<>();
     while (steps.hasNext()) {
       QuerySolution step = steps.nextSolution();
       String stepName = rdfService.stepNameFromURI(gitPath, step.get("step").toString());
 
-      // Only write each step once
-      if (!addedSteps.contains(stepName)) {
-        String label;
-        if (step.contains("label")) {
-          label = step.get("label").toString();
-        } else {
-          label = rdfService.labelFromName(stepName);
-        }
+      String label;
+      if (step.contains("label")) {
+        label = step.get("label").toString();
+      } else {
+        label = rdfService.labelFromName(stepName);
+      }
 
-        // Distinguish nested workflows
-        CWLProcess runType = rdfService.strToRuntype(step.get("runtype").toString());
-        if (runType == CWLProcess.WORKFLOW) {
-          writeLine("  \"" + stepName + "\" [label=\"" + label + "\", fillcolor=\"#F3CEA1\"];");
-        } else {
-          writeLine("  \"" + stepName + "\" [label=\"" + label + "\"];");
-        }
-        addedSteps.add(stepName);
+      // Distinguish nested workflows
+      String node;
+      CWLProcess runType = rdfService.strToRuntype(step.get("runtype").toString());
+      if (runType == CWLProcess.WORKFLOW && subworkflow) {
+        // Link to the graph of the deeper nested workflow so it can be expanded in turn. The link
+        // is rooted at the server, including any context path, as relative links would resolve
+        // against wherever the graph is shown.
+        String expand = URLEncoder.encode(stepPath + "/" + stepName, StandardCharsets.UTF_8);
+        node =
+            "  \""
+                + stepName
+                + "\" [label=\""
+                + label
+                + "\", fillcolor=\"#F3CEA1\", URL=\""
+                + graphUrl
+                + "?step="
+                + expand
+                + "\"];";
+      } else if (runType == CWLProcess.WORKFLOW) {
+        node = "  \"" + stepName + "\" [label=\"" + label + "\", fillcolor=\"#F3CEA1\"];";
+      } else {
+        node = "  \"" + stepName + "\" [label=\"" + label + "\"];";
       }
+
+      // Only write each step once, choosing between differing results regardless of their order
+      stepNodes.merge(
+          stepName, node, (first, second) -> first.compareTo(second) <= 0 ? first : second);
+    }
+    for (String node : stepNodes.values()) {
+      writeLine(node);
     }
   }
 
@@ -156,7 +207,8 @@ public class RDFDotWriter extends DotWriter {
   private void writeStepLinks(String workflowUri) throws IOException {
     // Write links between steps
     ResultSet stepLinks = rdfService.getStepLinks(workflowUri);
-    int defaultCount = 1;
+    List<String> links = new ArrayList<>();
+    List<DefaultValue> defaults = new ArrayList<>();
     while (stepLinks.hasNext()) {
       QuerySolution stepLink = stepLinks.nextSolution();
       if (stepLink.contains("src")) {
@@ -165,7 +217,7 @@ public class RDFDotWriter extends DotWriter {
         String dest = stepLink.get("dest").toString();
         String destID = nodeIDFromUri(dest);
         String destInput = dest.substring(dest.replaceAll("#", "/").lastIndexOf("/") + 1);
-        writeLine("  \"" + sourceID + "\" -> \"" + destID + "\" [label=\"" + destInput + "\"];");
+        links.add("  \"" + sourceID + "\" -> \"" + destID + "\" [label=\"" + destInput + "\"];");
       } else if (stepLink.contains("default")) {
         // Collect default values
         String destID = rdfService.stepNameFromURI(gitPath, stepLink.get("dest").toString());
@@ -180,31 +232,57 @@ public class RDFDotWriter extends DotWriter {
           label = "[Complex Object]";
         }
 
-        // Write default
         String dest = stepLink.get("dest").toString();
         String inputName = dest.substring(dest.lastIndexOf("/") + 1);
-        writeLine(
-            "  \"default"
-                + defaultCount
-                + "\" -> \""
-                + destID
-                + "\" "
-                + "[label=\""
-                + inputName
-                + "\"];");
-        writeLine(
-            "  \"default" + defaultCount + "\" [label=\"" + label + "\", fillcolor=\"#D5AEFC\"];");
-        defaultCount++;
+        defaults.add(new DefaultValue(destID, inputName, label));
       }
     }
+    writeSorted(links);
+
+    // Write defaults, numbered in the order of the inputs they are used for
+    Collections.sort(defaults);
+    int defaultCount = 1;
+    for (DefaultValue defaultValue : defaults) {
+      writeLine(
+          "  \"default"
+              + defaultCount
+              + "\" -> \""
+              + defaultValue.destID
+              + "\" "
+              + "[label=\""
+              + defaultValue.inputName
+              + "\"];");
+      writeLine(
+          "  \"default"
+              + defaultCount
+              + "\" [label=\""
+              + defaultValue.label
+              + "\", fillcolor=\"#D5AEFC\"];");
+      defaultCount++;
+    }
 
     // Write links between steps and outputs
     ResultSet outputLinks = rdfService.getOutputLinks(workflowUri);
+    List<String> outputLinkLines = new ArrayList<>();
     while (outputLinks.hasNext()) {
       QuerySolution outputLink = outputLinks.nextSolution();
       String sourceID = nodeIDFromUri(outputLink.get("src").toString());
       String destID = nodeIDFromUri(outputLink.get("dest").toString());
-      writeLine("  \"" + sourceID + "\" -> \"" + destID + "\";");
+      outputLinkLines.add("  \"" + sourceID + "\" -> \"" + destID + "\";");
+    }
+    writeSorted(outputLinkLines);
+  }
+
+  /**
+   * Write lines sorted, so their order does not depend on the order of query results
+   *
+   * @param lines The lines to be written
+   * @throws IOException Any errors in writing which may have occurred
+   */
+  private void writeSorted(List<String> lines) throws IOException {
+    Collections.sort(lines);
+    for (String line : lines) {
+      writeLine(line);
     }
   }
 
@@ -219,12 +297,12 @@ public class RDFDotWriter extends DotWriter {
   }
 
   /**
-   * Writes a single input or output to the Writer
+   * Gets the line for a single input or output node
    *
    * @param inputOutput The input or output
-   * @throws IOException Any errors in writing which may have occurred
+   * @return The line declaring the node
    */
-  private void writeInputOutput(QuerySolution inputOutput) throws IOException {
+  private String inputOutputNode(QuerySolution inputOutput) {
     // List of options for this node
     List<String> nodeOptions = new ArrayList<>();
     nodeOptions.add("fillcolor=\"#94DDF4\"");
@@ -241,6 +319,30 @@ public class RDFDotWriter extends DotWriter {
     // Write the line for the node
     String inputOutputName =
         rdfService.stepNameFromURI(gitPath, inputOutput.get("name").toString());
-    writeLine("    \"" + inputOutputName + "\" [" + String.join(",", nodeOptions) + "];");
+    return "    \"" + inputOutputName + "\" [" + String.join(",", nodeOptions) + "];";
+  }
+
+  /** A default value of a step input, drawn as its own node */
+  private static class DefaultValue implements Comparable<DefaultValue> {
+
+    private static final Comparator<DefaultValue> ORDER =
+        Comparator.<DefaultValue, String>comparing(value -> value.destID)
+            .thenComparing(value -> value.inputName)
+            .thenComparing(value -> value.label);
+
+    private final String destID;
+    private final String inputName;
+    private final String label;
+
+    DefaultValue(String destID, String inputName, String label) {
+      this.destID = destID;
+      this.inputName = inputName;
+      this.label = label;
+    }
+
+    @Override
+    public int compareTo(DefaultValue other) {
+      return ORDER.compare(this, other);
+    }
   }
 }
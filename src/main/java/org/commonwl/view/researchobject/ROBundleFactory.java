@@ -21,6 +21,7 @@ package org.commonwl.view.researchobject;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.taverna.robundle.Bundle;
 import org.commonwl.view.git.GitDetails;
@@ -59,10 +60,12 @@ public class ROBundleFactory {
    * Creates a new Workflow Research Object Bundle from Git details and saves it to a file
    *
    * @param workflow The workflow to generate a RO bundle for
+   * @return A future completing once the bundle has been saved
    * @throws IOException Any API errors which may have occurred
    */
   @Async
-  public void createWorkflowRO(Workflow workflow) throws IOException, InterruptedException {
+  public CompletableFuture<Void> createWorkflowRO(Workflow workflow)
+      throws IOException, InterruptedException {
     logger.info("Creating Research Object Bundle for workflow " + workflow.getID());
 
     // Get the whole containing folder, not just the workflow itself
@@ -92,5 +95,6 @@ public class ROBundleFactory {
     workflow.setRoBundlePath(bundleLocation.toString());
     workflowRepository.save(workflow);
     logger.info("Finished saving Research Object Bundle for workflow " + workflow.getID());
+    return CompletableFuture.completedFuture(null);
   }
 }
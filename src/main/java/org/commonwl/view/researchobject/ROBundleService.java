@@ -23,7 +23,6 @@ import static org.apache.commons.io.FileUtils.readFileToString;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
@@ -34,13 +33,13 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.jena.query.QuerySolution;
-import org.apache.jena.query.ResultSet;
 import org.apache.taverna.robundle.Bundle;
 import org.apache.taverna.robundle.Bundles;
 import org.apache.taverna.robundle.manifest.Agent;
@@ -159,6 +158,10 @@ public class ROBundleService {
         Path relativePath = Paths.get(FilenameUtils.getPath(gitInfo.getPath()));
         Path gitPath = gitRepo.getRepository().getWorkTree().toPath().resolve(relativePath);
         addFilesToBundle(gitInfo, bundle, bundlePath, gitRepo, gitPath, authors, workflow);
+        // Files read from a checkout another node may have changed are not bundled
+        if (safeToAccess) {
+          gitSemaphore.checkHeld(gitInfo.getRepoUrl());
+        }
       } catch (GitAPIException | IOException e) {
         org.commonwl.view.util.FileUtils.deleteBundleTemporaryDirectory(bundle);
         org.commonwl.view.util.FileUtils.deleteBundleParentDirectory(bundle);
@@ -171,19 +174,16 @@ public class ROBundleService {
       // Add combined authors
       manifest.setAuthoredBy(new ArrayList<>(authors));
 
-      // Add visualisation images
-      try (InputStream png =
-          graphVizService.getGraphStream(workflow.getVisualisationDot(), "png")) {
-        Files.copy(png, bundleRoot.resolve("visualisation.png"));
-      }
+      // Add visualisation images, shared with the graphs served for the workflow
+      Map<String, Path> graphs =
+          graphVizService.getGraphPaths(
+              workflow.getVisualisationDot(), GraphVizService.GRAPH_FORMATS);
+      Files.copy(graphs.get("png"), bundleRoot.resolve("visualisation.png"));
       PathMetadata pngAggr =
           bundle.getManifest().getAggregation(bundleRoot.resolve("visualisation.png"));
       pngAggr.setRetrievedFrom(new URI(workflow.getPermalink(Format.png)));
 
-      try (InputStream svg =
-          graphVizService.getGraphStream(workflow.getVisualisationDot(), "svg")) {
-        Files.copy(svg, bundleRoot.resolve("visualisation.svg"));
-      }
+      Files.copy(graphs.get("svg"), bundleRoot.resolve("visualisation.svg"));
 
       PathMetadata svgAggr =
           bundle.getManifest().getAggregation(bundleRoot.resolve("visualisation.svg"));
@@ -367,12 +367,12 @@ public class ROBundleService {
 
                 if (cwl) {
                   // Attempt to get authors from cwl description - takes priority
-                  ResultSet descAuthors =
-                      rdfService.getAuthors(
-                          bundlePath.resolve(file.getName()).toString().substring(10),
-                          workflow.getIdentifier());
-                  if (descAuthors.hasNext()) {
-                    QuerySolution authorSolution = descAuthors.nextSolution();
+                  List<QuerySolution> descAuthors =
+                      rdfService
+                          .getAuthorIndex(workflow.getIdentifier())
+                          .getAuthors(bundlePath.resolve(file.getName()).toString().substring(10));
+                  if (!descAuthors.isEmpty()) {
+                    QuerySolution authorSolution = descAuthors.get(0);
                     HashableAgent newAuthor = new HashableAgent();
                     if (authorSolution.contains("name")) {
                       newAuthor.setName(authorSolution.get("name").toString());
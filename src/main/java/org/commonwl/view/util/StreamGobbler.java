@@ -28,11 +28,27 @@ import java.io.InputStreamReader;
 public class StreamGobbler extends Thread {
   private final String lineSeparator = System.getProperty("line.separator");
 
-  private InputStream is;
-  private String content = "";
+  private final InputStream is;
+  private final long maxChars;
+  private final Runnable onLimitExceeded;
+  private final StringBuilder content = new StringBuilder();
+  private volatile boolean limitExceeded = false;
 
   public StreamGobbler(InputStream is) {
+    this(is, Long.MAX_VALUE, null);
+  }
+
+  /**
+   * Consume a stream, collecting at most a given amount of content
+   *
+   * @param is The stream to consume
+   * @param maxChars The maximum number of characters to collect
+   * @param onLimitExceeded Called once when the limit is exceeded, may be null
+   */
+  public StreamGobbler(InputStream is, long maxChars, Runnable onLimitExceeded) {
     this.is = is;
+    this.maxChars = maxChars;
+    this.onLimitExceeded = onLimitExceeded;
   }
 
   public void run() {
@@ -41,7 +57,18 @@ public class StreamGobbler extends Thread {
       BufferedReader br = new BufferedReader(isr);
       String line;
       while ((line = br.readLine()) != null) {
-        content += line + lineSeparator;
+        if (limitExceeded) {
+          // Keep draining so the process is never blocked on a full pipe
+          continue;
+        }
+        if (content.length() + line.length() + lineSeparator.length() > maxChars) {
+          limitExceeded = true;
+          if (onLimitExceeded != null) {
+            onLimitExceeded.run();
+          }
+        } else {
+          content.append(line).append(lineSeparator);
+        }
       }
     } catch (IOException ex) {
       ex.printStackTrace();
@@ -49,6 +76,15 @@ public class StreamGobbler extends Thread {
   }
 
   public String getContent() {
-    return content;
+    return content.toString();
+  }
+
+  /**
+   * Whether more content was available than the configured limit
+   *
+   * @return True if content was discarded
+   */
+  public boolean isLimitExceeded() {
+    return limitExceeded;
   }
 }
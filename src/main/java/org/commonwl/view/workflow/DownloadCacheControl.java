@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.commonwl.view.graphviz.GraphVizService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Caching headers, conditional requests and content encoding for graph and Research Object Bundle
+ * downloads
+ *
+ * <p>Graphs pinned to a commit never change, so they may be cached for a long time without
+ * revalidation. Graphs following a branch, and bundles, get a short lifetime, after which clients
+ * revalidate with the entity tag. So do fallback graphs drawn when the full graph was too expensive
+ * to lay out, as the full graph is drawn again later under the same file.
+ */
+@Component
+public class DownloadCacheControl {
+
+  private static final Pattern COMMIT_ID = Pattern.compile("[0-9a-f]{40}");
+  private static final Pattern ZERO_QUALITY = Pattern.compile("q=0(\\.0{0,3})?");
+
+  private final long commitMaxAgeSeconds;
+  private final long branchMaxAgeSeconds;
+
+  @Autowired
+  public DownloadCacheControl(
+      @Value("${cache.commitMaxAgeSeconds}") long commitMaxAgeSeconds,
+      @Value("${cache.branchMaxAgeSeconds}") long branchMaxAgeSeconds) {
+    this.commitMaxAgeSeconds = commitMaxAgeSeconds;
+    this.branchMaxAgeSeconds = branchMaxAgeSeconds;
+  }
+
+  /**
+   * Set the caching headers for a graph and check whether the client copy is still valid, before
+   * the graph is rendered
+   *
+   * <p>Graph files are named by a hash of their DOT source and format, so the file name the graph
+   * is stored under is a strong entity tag, known without running dot. Text formats are sent gzip
+   * compressed to clients accepting it, which is a different file with its own entity tag. The
+   * modification time of graphs is refreshed on use, so it is not sent.
+   *
+   * @param dot The DOT source of the graph
+   * @param format The format of the graph
+   * @param pinned Whether the download is pinned to a commit
+   * @param fallback Whether the graph is drawn with a fallback, which is never cached as immutable
+   * @param response The response to set the headers on
+   * @param webRequest The request, answered with 304 Not Modified if the client copy is valid
+   * @return True if the client copy is valid and no body should be sent
+   */
+  public boolean checkGraphNotModified(
+      String dot,
+      String format,
+      boolean pinned,
+      boolean fallback,
+      HttpServletResponse response,
+      WebRequest webRequest) {
+    setCacheControl(pinned && !fallback, response);
+    String fileName = GraphVizService.getFileName(dot, format);
+    if (GraphVizService.isCompressed(format)) {
+      response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+      if (acceptsGzip(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+        fileName = GraphVizService.getCompressedPath(Path.of(fileName)).toString();
+      }
+    }
+    return webRequest.checkNotModified(entityTag(fileName, fallback));
+  }
+
+  /**
+   * Set the caching headers for the layout of a graph and check whether the client copy is still
+   * valid, before the graph is laid out
+   *
+   * @param dot The DOT source of the graph
+   * @param pinned Whether the download is pinned to a commit
+   * @param fallback Whether the graph is drawn with a fallback, which is never cached as immutable
+   * @param response The response to set the headers on
+   * @param webRequest The request, answered with 304 Not Modified if the client copy is valid
+   * @return True if the client copy is valid and no body should be sent
+   */
+  public boolean checkLayoutNotModified(
+      String dot,
+      boolean pinned,
+      boolean fallback,
+      HttpServletResponse response,
+      WebRequest webRequest) {
+    setCacheControl(pinned && !fallback, response);
+    return webRequest.checkNotModified(
+        entityTag(GraphVizService.getFileName(dot, "plain"), fallback));
+  }
+
+  /**
+   * Set the caching headers for a graph, or its layout, which turned out to be drawn with a
+   * fallback when it was rendered
+   *
+   * <p>The fallback gets the short lifetime, and an entity tag different from the full graph
+   * stored later under the same file, so clients do not keep it once the full graph is drawn.
+   *
+   * @param graph The stored graph being sent
+   * @param response The response to set the headers on
+   */
+  public void setFallback(Path graph, HttpServletResponse response) {
+    setCacheControl(false, response);
+    response.setHeader(HttpHeaders.ETAG, entityTag(graph.getFileName().toString(), true));
+  }
+
+  /**
+   * Choose the stored copy of a graph to send, using the gzip compressed copy if one is stored
+   * and the client accepts it
+   *
+   * <p>The compressed copy has its own file name, so it also gets its own entity tag. If it was
+   * evicted meanwhile the graph is sent as stored, and the entity tag is changed to match.
+   *
+   * @param graph The stored graph
+   * @param response The response to set the encoding headers on
+   * @param webRequest The request giving the encodings accepted by the client
+   * @return The file to send
+   */
+  public Path selectGraphEncoding(Path graph, HttpServletResponse response, WebRequest webRequest) {
+    Path compressed = GraphVizService.getCompressedPath(graph);
+    boolean gzip = acceptsGzip(webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    if (!Files.exists(compressed)) {
+      if (gzip && response.containsHeader(HttpHeaders.VARY)) {
+        response.setHeader(HttpHeaders.ETAG, "\"" + graph.getFileName() + "\"");
+      }
+      return graph;
+    }
+    response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    if (!gzip) {
+      return graph;
+    }
+    response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+    return compressed;
+  }
+
+  /**
+   * Whether an Accept-Encoding header allows gzip
+   *
+   * @param acceptEncoding The header value, or null if not sent
+   * @return True if gzip, or any encoding, is listed without a quality of zero
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    boolean wildcard = false;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] params = coding.trim().split("\\s*;\\s*");
+      boolean allowed = true;
+      for (int i = 1; i < params.length; i++) {
+        allowed &= !ZERO_QUALITY.matcher(params[i]).matches();
+      }
+      if (params[0].equalsIgnoreCase("gzip")) {
+        return allowed;
+      } else if (params[0].equals("*")) {
+        wildcard = allowed;
+      }
+    }
+    return wildcard;
+  }
+
+  /**
+   * Set the caching headers for a Research Object Bundle and check whether the client copy is
+   * still valid
+   *
+   * <p>Bundles are built again when a workflow is parsed again, even for the same commit, so they
+   * are never cached as immutable. They get the short lifetime, after which clients revalidate with
+   * an entity tag including their modification time.
+   *
+   * @param bundle The bundle file
+   * @param response The response to set the headers on
+   * @param webRequest The request, answered with 304 Not Modified if the client copy is valid
+   * @return True if the client copy is valid and no body should be sent
+   */
+  public boolean checkBundleNotModified(
+      File bundle, HttpServletResponse response, WebRequest webRequest) {
+    setCacheControl(false, response);
+    String etag = "\"" + bundle.getName() + "-" + bundle.lastModified() + "\"";
+    return webRequest.checkNotModified(etag, bundle.lastModified());
+  }
+
+  /**
+   * Whether a branch name given in a URL is actually a full commit ID
+   *
+   * @param branch The branch, tag or commit ID
+   * @return True if it identifies a single commit
+   */
+  public static boolean isCommitId(String branch) {
+    return branch != null && COMMIT_ID.matcher(branch).matches();
+  }
+
+  private static String entityTag(String fileName, boolean fallback) {
+    return "\"" + fileName + (fallback ? "-fallback" : "") + "\"";
+  }
+
+  private void setCacheControl(boolean pinned, HttpServletResponse response) {
+    CacheControl cacheControl;
+    if (pinned) {
+      cacheControl =
+          CacheControl.maxAge(commitMaxAgeSeconds, TimeUnit.SECONDS).cachePublic().immutable();
+    } else {
+      cacheControl = CacheControl.maxAge(branchMaxAgeSeconds, TimeUnit.SECONDS).cachePublic();
+    }
+    response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+  }
+}
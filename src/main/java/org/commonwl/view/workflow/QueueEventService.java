@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import org.commonwl.view.cwl.CWLToolStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes the progress of queued workflows to clients as server-sent events.
+ *
+ * <p>Progress is published by the node processing the queued workflow. Clients connected to other
+ * nodes are kept up to date by periodically checking the status of all the queued workflows being
+ * watched on this node in a single query.
+ */
+@Service
+public class QueueEventService {
+
+  /** Stages of the processing of a queued workflow */
+  public enum Stage {
+    QUEUED,
+    GIT_FETCHED,
+    CWLTOOL_DONE,
+    SAVED,
+    GRAPHS_READY,
+    BUNDLE_READY,
+    FAILED
+  }
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final QueuedWorkflowRepository queuedWorkflowRepository;
+  private final long timeoutMillis;
+  private final Map<String, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+  private final Map<String, CWLToolStatus> lastStatus = new ConcurrentHashMap<>();
+
+  @Autowired
+  public QueueEventService(
+      QueuedWorkflowRepository queuedWorkflowRepository,
+      @Value("${queue.eventsTimeoutMillis}") long timeoutMillis) {
+    this.queuedWorkflowRepository = queuedWorkflowRepository;
+    this.timeoutMillis = timeoutMillis;
+  }
+
+  /**
+   * Subscribes to the progress of a queued workflow, starting with its current status
+   *
+   * @param queuedWorkflow The queued workflow
+   * @return The emitter sending the events
+   */
+  public SseEmitter subscribe(QueuedWorkflow queuedWorkflow) {
+    String queueID = queuedWorkflow.getId();
+    CWLToolStatus status = queuedWorkflow.getCwltoolStatus();
+    SseEmitter emitter = new SseEmitter(timeoutMillis);
+    emitter.onCompletion(() -> unsubscribe(queueID, emitter));
+    emitter.onTimeout(() -> unsubscribe(queueID, emitter));
+    emitter.onError(ex -> unsubscribe(queueID, emitter));
+
+    Stage stage =
+        switch (status) {
+          case SUCCESS -> Stage.SAVED;
+          case ERROR, TIMEOUT -> Stage.FAILED;
+          default -> Stage.QUEUED;
+        };
+    if (!send(emitter, stage, status, queuedWorkflow.getMessage())
+        || status != CWLToolStatus.RUNNING) {
+      emitter.complete();
+      return emitter;
+    }
+
+    emitters.computeIfAbsent(queueID, id -> new CopyOnWriteArraySet<>()).add(emitter);
+    lastStatus.putIfAbsent(queueID, status);
+    return emitter;
+  }
+
+  /**
+   * Publishes the progress of a queued workflow to the clients subscribed on this node. Clients
+   * are disconnected once the workflow failed or its research object bundle is ready.
+   *
+   * @param queueID The ID of the queued workflow
+   * @param stage The stage which was reached
+   * @param status The cwltool status of the queued workflow
+   * @param message The message of the queued workflow, if any
+   */
+  public void publish(String queueID, Stage stage, CWLToolStatus status, String message) {
+    Set<SseEmitter> subscribed = emitters.get(queueID);
+    if (subscribed == null) {
+      return;
+    }
+    lastStatus.replace(queueID, status);
+    boolean last = stage == Stage.FAILED || stage == Stage.BUNDLE_READY;
+    for (SseEmitter emitter : subscribed) {
+      if (!send(emitter, stage, status, message) || last) {
+        emitter.complete();
+      }
+    }
+  }
+
+  /** Checks for queued workflows processed by other nodes, or removed from the queue. */
+  @Scheduled(fixedDelayString = "${queue.eventsCheckMillis}")
+  public void checkStatuses() {
+    if (emitters.isEmpty()) {
+      return;
+    }
+    Map<String, Object[]> rows = new HashMap<>();
+    for (Object[] row : queuedWorkflowRepository.findCwltoolStatusByIdIn(emitters.keySet())) {
+      rows.put((String) row[0], row);
+    }
+    for (String queueID : List.copyOf(emitters.keySet())) {
+      Object[] row = rows.get(queueID);
+      if (row == null) {
+        emitters.getOrDefault(queueID, Set.of()).forEach(SseEmitter::complete);
+        continue;
+      }
+      CWLToolStatus status = CWLToolStatus.valueOf((String) row[1]);
+      String message = (String) row[2];
+      if (status != lastStatus.get(queueID)) {
+        switch (status) {
+          case SUCCESS -> {
+            publish(queueID, Stage.SAVED, status, message);
+            emitters.getOrDefault(queueID, Set.of()).forEach(SseEmitter::complete);
+          }
+          case ERROR, TIMEOUT -> publish(queueID, Stage.FAILED, status, message);
+          default -> lastStatus.replace(queueID, status);
+        }
+      }
+    }
+  }
+
+  private void unsubscribe(String queueID, SseEmitter emitter) {
+    emitters.computeIfPresent(
+        queueID,
+        (id, subscribed) -> {
+          subscribed.remove(emitter);
+          if (subscribed.isEmpty()) {
+            lastStatus.remove(queueID);
+            return null;
+          }
+          return subscribed;
+        });
+  }
+
+  private boolean send(SseEmitter emitter, Stage stage, CWLToolStatus status, String message) {
+    Map<String, Object> data = new HashMap<>();
+    data.put("stage", stage);
+    data.put("cwltoolStatus", status);
+    if (message != null) {
+      data.put("message", message);
+    }
+    try {
+      emitter.send(SseEmitter.event().name("progress").data(data, MediaType.APPLICATION_JSON));
+      return true;
+    } catch (IOException | IllegalStateException e) {
+      logger.debug("Could not send progress event: " + e.getMessage());
+      return false;
+    }
+  }
+}
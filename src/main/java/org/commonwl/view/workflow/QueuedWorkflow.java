@@ -11,6 +11,7 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
 import java.io.Serializable;
+import java.util.Date;
 import java.util.List;
 import java.util.Objects;
 import org.commonwl.view.cwl.CWLToolStatus;
@@ -19,7 +20,17 @@ import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.Type;
 
 /** A workflow pending completion of cwltool */
-@JsonIgnoreProperties(value = {"id", "tempRepresentation", "workflowList"})
+@JsonIgnoreProperties(
+    value = {
+      "id",
+      "tempRepresentation",
+      "workflowList",
+      "attempts",
+      "availableAt",
+      "leaseOwner",
+      "leaseExpiresAt",
+      "canonicalKey"
+    })
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 @Entity
 @Table(name = "queued_workflow")
@@ -57,6 +68,23 @@ public class QueuedWorkflow extends BaseEntity implements Serializable {
   @Column(columnDefinition = "TEXT")
   private String message;
 
+  // Number of times a worker has claimed this entry from the queue
+  @Column(nullable = false)
+  private int attempts = 0;
+
+  // Earliest time at which a worker may claim this entry, used for retry backoff
+  private Date availableAt = new Date();
+
+  // Node currently holding the lease on this entry, and when the lease runs out
+  @Column(columnDefinition = "TEXT")
+  private String leaseOwner;
+
+  private Date leaseExpiresAt;
+
+  // Hash of the repository, commit, path and packed ID, unique among running entries
+  @Column(columnDefinition = "TEXT")
+  private String canonicalKey;
+
   public String getId() {
     return id;
   }
@@ -101,6 +129,53 @@ public class QueuedWorkflow extends BaseEntity implements Serializable {
     this.workflowList = workflowList;
   }
 
+  public int getAttempts() {
+    return attempts;
+  }
+
+  public void setAttempts(int attempts) {
+    this.attempts = attempts;
+  }
+
+  public Date getAvailableAt() {
+    return availableAt;
+  }
+
+  public void setAvailableAt(Date availableAt) {
+    this.availableAt = availableAt;
+  }
+
+  public String getLeaseOwner() {
+    return leaseOwner;
+  }
+
+  public void setLeaseOwner(String leaseOwner) {
+    this.leaseOwner = leaseOwner;
+  }
+
+  public Date getLeaseExpiresAt() {
+    return leaseExpiresAt;
+  }
+
+  public void setLeaseExpiresAt(Date leaseExpiresAt) {
+    this.leaseExpiresAt = leaseExpiresAt;
+  }
+
+  public String getCanonicalKey() {
+    return canonicalKey;
+  }
+
+  public void setCanonicalKey(String canonicalKey) {
+    this.canonicalKey = canonicalKey;
+  }
+
+  /** Releases the lease and makes the entry claimable again once the given time is reached */
+  public void reschedule(Date availableAt) {
+    this.availableAt = availableAt;
+    this.leaseOwner = null;
+    this.leaseExpiresAt = null;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
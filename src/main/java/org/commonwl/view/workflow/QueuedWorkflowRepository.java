@@ -1,5 +1,6 @@
 package org.commonwl.view.workflow;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -43,4 +44,49 @@ public interface QueuedWorkflowRepository
           "SELECT q.* FROM queued_workflow q WHERE q.temp_representation ->> 'retrievedOn' <= ?1",
       nativeQuery = true)
   List<QueuedWorkflow> findByTempRepresentation_RetrievedOnLessThanEqual(Date retrievedOn);
+
+  /**
+   * Finds the cwltool status and message of queued workflows, without loading their
+   * representation.
+   *
+   * @param ids The IDs of the queued workflows
+   * @return The queued workflow ID, cwltool status name and message, for the IDs which exist
+   */
+  @Query(
+      value =
+          "SELECT q.id, q.cwltool_status #>> '{}', q.message FROM queued_workflow q"
+              + " WHERE q.id IN (?1)",
+      nativeQuery = true)
+  List<Object[]> findCwltoolStatusByIdIn(Collection<String> ids);
+
+  /**
+   * Finds the identifiers of the workflows being parsed, as built by {@link
+   * Workflow#getIdentifier()} for their temporary representation, without loading the queued
+   * workflows themselves
+   *
+   * @return The workflow identifiers
+   */
+  @Query(
+      value =
+          "SELECT 'https://w3id.org/cwl/view/git/' || (q.temp_representation ->> 'lastCommit')"
+              + " || '/' || (q.temp_representation -> 'retrievedFrom' ->> 'path')"
+              + " || COALESCE('#' || (q.temp_representation -> 'retrievedFrom' ->> 'packedId'), '')"
+              + " FROM queued_workflow q"
+              + " WHERE q.temp_representation ->> 'lastCommit' IS NOT NULL"
+              + " AND q.temp_representation -> 'retrievedFrom' IS NOT NULL",
+      nativeQuery = true)
+  List<String> findAllIdentifiers();
+
+  /**
+   * Finds the running queued workflow for a canonical workflow key.
+   *
+   * @param canonicalKey Hash of the repository, commit, path and packed ID of the workflow
+   * @return The queued workflow, or null if none is running
+   */
+  @Query(
+      value =
+          "SELECT q.* FROM queued_workflow q WHERE q.canonical_key = ?1"
+              + " AND q.cwltool_status #>> '{}' = 'RUNNING'",
+      nativeQuery = true)
+  QueuedWorkflow findRunningByCanonicalKey(String canonicalKey);
 }
@@ -18,6 +18,9 @@
  */
 package org.commonwl.view.workflow;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import org.commonwl.view.git.GitDetails;
 import org.springframework.data.repository.query.Param;
 
@@ -36,4 +39,27 @@ public interface QueuedWorkflowRepositoryCustom {
    * @param retrievedFrom Details of where the queued workflow is from
    */
   void deleteByTempRepresentation_RetrievedFrom(GitDetails retrievedFrom);
+
+  /**
+   * Claims up to <code>limit</code> running queued workflows which are available and not leased by
+   * another node, taking a lease on each of them. Rows locked by concurrent claimers are skipped
+   * rather than waited on, so several nodes can drain the same queue.
+   *
+   * @param leaseOwner Identifier of the node taking the lease
+   * @param now The current time
+   * @param leaseExpiresAt When the lease runs out if it is not renewed
+   * @param limit The maximum number of queued workflows to claim
+   * @return The claimed queued workflows, with their attempt counter incremented
+   */
+  List<QueuedWorkflow> claimAvailable(String leaseOwner, Date now, Date leaseExpiresAt, int limit);
+
+  /**
+   * Extends the leases held by a node on the given queued workflows.
+   *
+   * @param leaseOwner Identifier of the node holding the leases
+   * @param ids The IDs of the queued workflows
+   * @param leaseExpiresAt The new expiry time of the leases
+   * @return The number of leases renewed
+   */
+  int renewLeases(String leaseOwner, Collection<String> ids, Date leaseExpiresAt);
 }
@@ -4,6 +4,9 @@ import io.hypersistence.utils.hibernate.type.json.JsonType;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.PersistenceContextType;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import org.commonwl.view.git.GitDetails;
 import org.hibernate.query.Query;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,6 +19,18 @@ public class QueuedWorkflowRepositoryImpl implements QueuedWorkflowRepositoryCus
   private static final String QUERY_DELETE_BY_RETRIEVED_FROM =
       "DELETE FROM queued_workflow q WHERE q.temp_representation -> 'retrievedFrom' = :retrievedFrom";
 
+  private static final String QUERY_CLAIM_AVAILABLE =
+      "UPDATE queued_workflow SET lease_owner = :leaseOwner, lease_expires_at = :leaseExpiresAt,"
+          + " attempts = attempts + 1 WHERE id IN (SELECT q.id FROM queued_workflow q"
+          + " WHERE q.cwltool_status #>> '{}' = 'RUNNING'"
+          + " AND (q.available_at IS NULL OR q.available_at <= :now)"
+          + " AND (q.lease_expires_at IS NULL OR q.lease_expires_at < :now)"
+          + " ORDER BY q.available_at LIMIT :limit FOR UPDATE SKIP LOCKED) RETURNING *";
+
+  private static final String QUERY_RENEW_LEASES =
+      "UPDATE queued_workflow SET lease_expires_at = :leaseExpiresAt"
+          + " WHERE lease_owner = :leaseOwner AND id IN (:ids)";
+
   @PersistenceContext(type = PersistenceContextType.EXTENDED)
   EntityManager entityManager;
 
@@ -55,4 +70,38 @@ public class QueuedWorkflowRepositoryImpl implements QueuedWorkflowRepositoryCus
       query.executeUpdate();
     }
   }
+
+  @Transactional
+  @Override
+  @SuppressWarnings("unchecked")
+  public List<QueuedWorkflow> claimAvailable(
+      String leaseOwner, Date now, Date leaseExpiresAt, int limit) {
+    // A single statement, so the row locks taken by the sub-select are held until the leases
+    // have been written, and are released when the transaction commits
+    List<QueuedWorkflow> claimed =
+        entityManager
+            .createNativeQuery(QUERY_CLAIM_AVAILABLE, QueuedWorkflow.class)
+            .setParameter("leaseOwner", leaseOwner)
+            .setParameter("leaseExpiresAt", leaseExpiresAt)
+            .setParameter("now", now)
+            .setParameter("limit", limit)
+            .getResultList();
+    // Make sure the managed instances reflect the values written by the update
+    claimed.forEach(entityManager::refresh);
+    return claimed;
+  }
+
+  @Transactional
+  @Override
+  public int renewLeases(String leaseOwner, Collection<String> ids, Date leaseExpiresAt) {
+    if (ids.isEmpty()) {
+      return 0;
+    }
+    return entityManager
+        .createNativeQuery(QUERY_RENEW_LEASES)
+        .setParameter("leaseOwner", leaseOwner)
+        .setParameter("ids", ids)
+        .setParameter("leaseExpiresAt", leaseExpiresAt)
+        .executeUpdate();
+  }
 }
@@ -32,10 +32,12 @@ import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import org.commonwl.view.WebConfig;
 import org.commonwl.view.WebConfig.Format;
 import org.commonwl.view.cwl.CWLElement;
@@ -50,7 +52,7 @@ import org.springframework.format.annotation.DateTimeFormat;
 /** Representation of a workflow */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(
-    value = {"id", "roBundlePath", "roBundleLink"},
+    value = {"id", "roBundlePath", "roBundleLink", "dockerPulls"},
     ignoreUnknown = true)
 @Entity
 @Table(
@@ -125,6 +127,9 @@ public class Workflow extends BaseEntity implements Serializable {
   @Column(columnDefinition = "TEXT")
   private String licenseLink;
 
+  // Docker images pulled anywhere in the workflow, only known just after parsing with cwltool
+  @Transient private Set<String> dockerPulls;
+
   public Workflow(
       String label,
       String doc,
@@ -274,6 +279,10 @@ public class Workflow extends BaseEntity implements Serializable {
     return retrievedFrom.getInternalUrl().replaceFirst("/workflows", "/graph/svg");
   }
 
+  public String getVisualisationJson() {
+    return retrievedFrom.getInternalUrl().replaceFirst("/workflows", "/graph/json");
+  }
+
   public String getRoBundle() {
     if (roBundlePath != null) {
       return getRoBundleLink();
@@ -355,6 +364,14 @@ public class Workflow extends BaseEntity implements Serializable {
     this.licenseLink = licenseLink;
   }
 
+  public Set<String> getDockerPulls() {
+    return dockerPulls;
+  }
+
+  public void setDockerPulls(Set<String> dockerPulls) {
+    this.dockerPulls = dockerPulls;
+  }
+
   public String getLicenseName() {
     if (licenseLink == null) {
       return null;
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import io.hypersistence.utils.hibernate.type.json.JsonType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Convert;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import org.commonwl.view.util.BaseEntity;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Type;
+
+/** A list of workflows submitted together, processed one repository at a time */
+@JsonIgnoreProperties(value = {"id"})
+@Entity
+@Table(name = "workflow_batch")
+public class WorkflowBatch extends BaseEntity implements Serializable {
+
+  // ID for database
+  @Id
+  @GenericGenerator(name = "uuid2", strategy = "uuid2")
+  @GeneratedValue(strategy = GenerationType.IDENTITY, generator = "uuid2")
+  @Column(length = 36, nullable = false, updatable = false)
+  public String id;
+
+  private Date createdOn = new Date();
+
+  @Column(nullable = false)
+  private boolean finished = false;
+
+  @Column(columnDefinition = "jsonb")
+  @Type(value = JsonType.class)
+  @Convert(disableConversion = true)
+  private List<WorkflowBatchEntry> entries = new ArrayList<>();
+
+  public String getId() {
+    return id;
+  }
+
+  public Date getCreatedOn() {
+    return createdOn;
+  }
+
+  public void setCreatedOn(Date createdOn) {
+    this.createdOn = createdOn;
+  }
+
+  public boolean isFinished() {
+    return finished;
+  }
+
+  public void setFinished(boolean finished) {
+    this.finished = finished;
+  }
+
+  public List<WorkflowBatchEntry> getEntries() {
+    return entries;
+  }
+
+  public void setEntries(List<WorkflowBatchEntry> entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * Counts the entries with the given status
+   *
+   * @param status The status of the entries
+   * @return The number of entries
+   */
+  public long count(WorkflowBatchEntry.Status status) {
+    return entries.stream().filter(entry -> entry.getStatus() == status).count();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    WorkflowBatch that = (WorkflowBatch) o;
+    return finished == that.finished
+        && Objects.equals(id, that.id)
+        && Objects.equals(createdOn, that.createdOn)
+        && Objects.equals(entries, that.entries);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(id, createdOn, finished, entries);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.commonwl.view.git.GitDetails;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+/** JSON API Controller for submitting many workflows at once */
+@RestController
+public class WorkflowBatchController {
+
+  private final WorkflowFormValidator workflowFormValidator;
+  private final WorkflowBatchRepository workflowBatchRepository;
+  private final WorkflowBatchProcessor workflowBatchProcessor;
+  private final int maxEntries;
+
+  /**
+   * Autowired constructor to initialise objects used by the controller
+   *
+   * @param workflowFormValidator Validator to validate the submitted workflows
+   * @param workflowBatchRepository Stores the batches
+   * @param workflowBatchProcessor Queues the workflows of a batch in the background
+   * @param maxEntries The maximum number of workflows in a batch
+   */
+  @Autowired
+  public WorkflowBatchController(
+      WorkflowFormValidator workflowFormValidator,
+      WorkflowBatchRepository workflowBatchRepository,
+      WorkflowBatchProcessor workflowBatchProcessor,
+      @Value("${batch.maxEntries}") int maxEntries) {
+    this.workflowFormValidator = workflowFormValidator;
+    this.workflowBatchRepository = workflowBatchRepository;
+    this.workflowBatchProcessor = workflowBatchProcessor;
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Submit a list of workflows to be queued, grouped by repository so each one is fetched once
+   *
+   * @param workflowForms The workflows, with the same fields as for adding a single workflow
+   * @return 202 accepted with the batch status resource in the location header
+   */
+  @PostMapping(
+      value = "/workflows/batch",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE)
+  public ResponseEntity<?> newWorkflowBatchJson(
+      @RequestBody List<WorkflowForm> workflowForms, HttpServletResponse response) {
+    if (workflowForms.isEmpty() || workflowForms.size() > maxEntries) {
+      Map<String, String> message =
+          Collections.singletonMap(
+              "message", "Error: A batch must contain between 1 and " + maxEntries + " workflows");
+      return new ResponseEntity<Map<String, String>>(message, HttpStatus.BAD_REQUEST);
+    }
+
+    // Invalid entries are reported straight away
+    WorkflowBatch batch = new WorkflowBatch();
+    for (WorkflowForm workflowForm : workflowForms) {
+      WorkflowBatchEntry entry = new WorkflowBatchEntry(workflowForm);
+      BeanPropertyBindingResult errors = new BeanPropertyBindingResult(workflowForm, "errors");
+      GitDetails gitInfo = workflowFormValidator.validateAndParse(workflowForm, errors);
+      if (errors.hasErrors()) {
+        entry.failed("Error: " + errors.getAllErrors().get(0).getDefaultMessage());
+      } else if (gitInfo == null) {
+        entry.failed("Error: Could not parse workflow details from URL");
+      } else {
+        entry.setRetrievedFrom(gitInfo);
+      }
+      batch.getEntries().add(entry);
+    }
+    batch = workflowBatchRepository.save(batch);
+    workflowBatchProcessor.process(batch.getId());
+
+    response.setHeader("Location", "/batch/" + batch.getId());
+    return new ResponseEntity<WorkflowBatch>(batch, HttpStatus.ACCEPTED);
+  }
+
+  /**
+   * Query progress of a batch of workflows
+   *
+   * @param batchId The batch ID from the location header of the submission
+   * @return The status of each entry of the batch
+   */
+  @GetMapping(value = "/batch/{batchId}", produces = MediaType.APPLICATION_JSON_VALUE)
+  public WorkflowBatch checkBatchJson(@PathVariable("batchId") String batchId) {
+    return workflowBatchRepository.findById(batchId).orElseThrow(WorkflowNotFoundException::new);
+  }
+}
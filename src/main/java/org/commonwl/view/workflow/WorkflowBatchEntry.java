@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.io.Serializable;
+import java.util.Objects;
+import org.commonwl.view.git.GitDetails;
+
+/** A single workflow submitted as part of a {@link WorkflowBatch} */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WorkflowBatchEntry implements Serializable {
+
+  /** Outcome of the submission of a batch entry */
+  public enum Status {
+    PENDING,
+    QUEUED,
+    EXISTS,
+    ERROR
+  }
+
+  // Submitted details
+  private String url;
+  private String branch;
+  private String path;
+  private String packedId;
+
+  // Details parsed from the submission, null if invalid
+  private GitDetails retrievedFrom;
+
+  private Status status = Status.PENDING;
+
+  // Queue resource or workflow location, depending on the status
+  private String location;
+
+  private String message;
+
+  public WorkflowBatchEntry() {}
+
+  public WorkflowBatchEntry(WorkflowForm workflowForm) {
+    this.url = workflowForm.getUrl();
+    this.branch = workflowForm.getBranch();
+    this.path = workflowForm.getPath();
+    this.packedId = workflowForm.getPackedId();
+  }
+
+  /**
+   * Records that a queued workflow exists for this entry
+   *
+   * @param queuedWorkflow The queued workflow
+   */
+  public void queued(QueuedWorkflow queuedWorkflow) {
+    this.status = Status.QUEUED;
+    this.location = "/queue/" + queuedWorkflow.getId();
+  }
+
+  /**
+   * Records that the workflow for this entry has already been parsed
+   *
+   * @param workflow The existing workflow
+   */
+  public void exists(Workflow workflow) {
+    this.status = Status.EXISTS;
+    this.location = workflow.getRetrievedFrom().getInternalUrl();
+  }
+
+  /**
+   * Records that this entry could not be queued
+   *
+   * @param message The reason shown to the user
+   */
+  public void failed(String message) {
+    this.status = Status.ERROR;
+    this.message = message;
+  }
+
+  /**
+   * Records the same outcome as another entry for the same workflow
+   *
+   * @param other The other entry
+   */
+  public void sameAs(WorkflowBatchEntry other) {
+    this.status = other.status;
+    this.location = other.location;
+    this.message = other.message;
+  }
+
+  public String getUrl() {
+    return url;
+  }
+
+  public void setUrl(String url) {
+    this.url = url;
+  }
+
+  public String getBranch() {
+    return branch;
+  }
+
+  public void setBranch(String branch) {
+    this.branch = branch;
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public void setPath(String path) {
+    this.path = path;
+  }
+
+  public String getPackedId() {
+    return packedId;
+  }
+
+  public void setPackedId(String packedId) {
+    this.packedId = packedId;
+  }
+
+  public GitDetails getRetrievedFrom() {
+    return retrievedFrom;
+  }
+
+  public void setRetrievedFrom(GitDetails retrievedFrom) {
+    this.retrievedFrom = retrievedFrom;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public void setStatus(Status status) {
+    this.status = status;
+  }
+
+  public String getLocation() {
+    return location;
+  }
+
+  public void setLocation(String location) {
+    this.location = location;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public void setMessage(String message) {
+    this.message = message;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    WorkflowBatchEntry that = (WorkflowBatchEntry) o;
+    return Objects.equals(url, that.url)
+        && Objects.equals(branch, that.branch)
+        && Objects.equals(path, that.path)
+        && Objects.equals(packedId, that.packedId)
+        && Objects.equals(retrievedFrom, that.retrievedFrom)
+        && status == that.status
+        && Objects.equals(location, that.location)
+        && Objects.equals(message, that.message);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(url, branch, path, packedId, retrievedFrom, status, location, message);
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.commonwl.view.git.GitDetails;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.stereotype.Component;
+
+/**
+ * Queues the workflows of a batch in the background, fetching each repository only once.
+ *
+ * <p>A node processes a batch under a lease, renewed on a thread of its own while the batch is in
+ * progress, so with several nodes each batch is only processed by one of them. Batches whose lease
+ * ran out, because the node processing them stopped, are resumed by the next node to start.
+ *
+ * <p>In a different class to where it is called so the Spring proxy can run it asynchronously.
+ */
+@Component
+@EnableAsync
+public class WorkflowBatchProcessor {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final WorkflowService workflowService;
+  private final WorkflowBatchRepository workflowBatchRepository;
+  private final long leaseSeconds;
+  private final String nodeId;
+  private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService renewer =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "batch-lease-renewer");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  @Autowired
+  public WorkflowBatchProcessor(
+      WorkflowService workflowService,
+      WorkflowBatchRepository workflowBatchRepository,
+      @Value("${queue.leaseSeconds}") long leaseSeconds) {
+    this.workflowService = workflowService;
+    this.workflowBatchRepository = workflowBatchRepository;
+    this.leaseSeconds = leaseSeconds;
+    this.nodeId = hostName() + "-" + UUID.randomUUID();
+  }
+
+  /** Starts renewing the leases of the batches in progress on the thread of this processor */
+  @PostConstruct
+  public void start() {
+    long intervalMillis = leaseSeconds * 1000 / 3;
+    renewer.scheduleWithFixedDelay(
+        () -> {
+          try {
+            renewLeases();
+          } catch (RuntimeException e) {
+            // Keep renewing, a failed renewal must not cancel the schedule
+            logger.error("Could not renew the leases of workflow batches", e);
+          }
+        },
+        intervalMillis,
+        intervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /** Stops renewing leases, leaving the batches in progress to be resumed by another node */
+  @PreDestroy
+  public void stop() {
+    renewer.shutdownNow();
+  }
+
+  /** Extends the leases of the batches this node is processing */
+  public void renewLeases() {
+    if (!inFlight.isEmpty()) {
+      workflowBatchRepository.renewLeases(nodeId, Set.copyOf(inFlight), leaseExpiry(new Date()));
+    }
+  }
+
+  /**
+   * Resumes the batches left unfinished by nodes which stopped, as their pending entries are only
+   * processed in memory. Batches still leased by a live node are left to it.
+   */
+  @Async
+  @EventListener(ApplicationReadyEvent.class)
+  public void resumeUnfinished() {
+    Date now = new Date();
+    for (String batchId : workflowBatchRepository.claimExpired(nodeId, now, leaseExpiry(now))) {
+      logger.info("Resuming unfinished batch " + batchId);
+      process(batchId);
+    }
+  }
+
+  /**
+   * Processes the pending entries of a batch, saving the progress after each repository
+   *
+   * @param batchId The ID of the batch
+   */
+  @Async
+  public void process(String batchId) {
+    Date now = new Date();
+    if (workflowBatchRepository.claim(batchId, nodeId, now, leaseExpiry(now)) == 0) {
+      logger.info("Batch " + batchId + " is finished or being processed by another node");
+      return;
+    }
+    inFlight.add(batchId);
+    try {
+      processClaimed(batchId);
+    } finally {
+      inFlight.remove(batchId);
+    }
+  }
+
+  /**
+   * Processes the pending entries of a batch this node holds the lease on
+   *
+   * @param batchId The ID of the batch
+   */
+  private void processClaimed(String batchId) {
+    WorkflowBatch batch = workflowBatchRepository.findById(batchId).orElse(null);
+    if (batch == null) {
+      return;
+    }
+
+    // Skip entries which were already parsed or queued, and group the rest by repository
+    Map<String, List<WorkflowBatchEntry>> byRepository = new LinkedHashMap<>();
+    Map<GitDetails, WorkflowBatchEntry> firstEntries = new HashMap<>();
+    List<WorkflowBatchEntry> duplicates = new ArrayList<>();
+    for (WorkflowBatchEntry entry : batch.getEntries()) {
+      if (entry.getStatus() != WorkflowBatchEntry.Status.PENDING) {
+        continue;
+      }
+      GitDetails gitInfo = entry.getRetrievedFrom();
+      if (firstEntries.putIfAbsent(gitInfo, entry) != null) {
+        duplicates.add(entry);
+        continue;
+      }
+      Workflow workflow = workflowService.getWorkflow(gitInfo);
+      if (workflow != null) {
+        entry.exists(workflow);
+        continue;
+      }
+      QueuedWorkflow queued = workflowService.getQueuedWorkflow(gitInfo);
+      if (queued != null) {
+        entry.queued(queued);
+        continue;
+      }
+      byRepository.computeIfAbsent(repositoryKey(gitInfo), key -> new ArrayList<>()).add(entry);
+    }
+    workflowBatchRepository.save(batch);
+
+    for (List<WorkflowBatchEntry> entries : byRepository.values()) {
+      // Fetched once using the URL of the first entry, as the others point to the same repository
+      String repoUrl = entries.get(0).getRetrievedFrom().getRepoUrl();
+      logger.info(
+          "Queuing " + entries.size() + " workflows from " + repoUrl + " for batch " + batchId);
+      workflowService.createQueuedWorkflows(repoUrl, entries);
+      workflowBatchRepository.save(batch);
+    }
+
+    for (WorkflowBatchEntry duplicate : duplicates) {
+      duplicate.sameAs(firstEntries.get(duplicate.getRetrievedFrom()));
+    }
+    batch.setFinished(true);
+    workflowBatchRepository.save(batch);
+  }
+
+  private Date leaseExpiry(Date now) {
+    return new Date(now.getTime() + leaseSeconds * 1000);
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      return "unknown";
+    }
+  }
+
+  /**
+   * Gets the key the repository of an entry is grouped by, which is the normalised URL used by the
+   * Git service without any trailing slash or .git suffix
+   *
+   * @param gitInfo The Git details of the entry
+   * @return The key of the repository
+   */
+  static String repositoryKey(GitDetails gitInfo) {
+    String key = GitDetails.normaliseUrl(gitInfo.getRepoUrl());
+    while (key.endsWith("/")) {
+      key = key.substring(0, key.length() - 1);
+    }
+    if (key.endsWith(".git")) {
+      key = key.substring(0, key.length() - 4);
+    }
+    return key;
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/** Stores batches of submitted workflows */
+@Repository
+public interface WorkflowBatchRepository extends JpaRepository<WorkflowBatch, String> {
+
+  /**
+   * Deletes all batches created on or before the Date argument passed.
+   *
+   * @param createdOn Date of when the batch was submitted
+   * @return The number of batches deleted
+   */
+  @Transactional
+  long deleteByCreatedOnLessThanEqual(Date createdOn);
+
+  /**
+   * Takes the lease on an unfinished batch, unless another node holds a lease on it which has not
+   * expired
+   *
+   * @param id The ID of the batch
+   * @param leaseOwner Identifier of the node taking the lease
+   * @param now The current time
+   * @param leaseExpiresAt When the lease runs out if it is not renewed
+   * @return 1 if the lease was taken, otherwise 0
+   */
+  @Transactional
+  @Modifying
+  @Query(
+      value =
+          "UPDATE workflow_batch SET lease_owner = ?2, lease_expires_at = ?4"
+              + " WHERE id = ?1 AND NOT finished"
+              + " AND (lease_owner = ?2 OR lease_expires_at IS NULL OR lease_expires_at < ?3)",
+      nativeQuery = true)
+  int claim(String id, String leaseOwner, Date now, Date leaseExpiresAt);
+
+  /**
+   * Takes the lease on the unfinished batches which are not leased by a live node, such as those
+   * left by a node which stopped. Rows locked by concurrent claimers are skipped rather than waited
+   * on.
+   *
+   * @param leaseOwner Identifier of the node taking the leases
+   * @param now The current time
+   * @param leaseExpiresAt When the leases run out if they are not renewed
+   * @return The IDs of the claimed batches
+   */
+  @Transactional
+  @Query(
+      value =
+          "UPDATE workflow_batch SET lease_owner = ?1, lease_expires_at = ?3"
+              + " WHERE id IN (SELECT b.id FROM workflow_batch b WHERE NOT b.finished"
+              + " AND (b.lease_expires_at IS NULL OR b.lease_expires_at < ?2)"
+              + " FOR UPDATE SKIP LOCKED) RETURNING id",
+      nativeQuery = true)
+  List<String> claimExpired(String leaseOwner, Date now, Date leaseExpiresAt);
+
+  /**
+   * Extends the leases held by a node on the given batches
+   *
+   * @param leaseOwner Identifier of the node holding the leases
+   * @param ids The IDs of the batches, which may not be empty
+   * @param leaseExpiresAt The new expiry time of the leases
+   * @return The number of leases renewed
+   */
+  @Transactional
+  @Modifying
+  @Query(
+      value =
+          "UPDATE workflow_batch SET lease_expires_at = ?3 WHERE lease_owner = ?1 AND id IN (?2)",
+      nativeQuery = true)
+  int renewLeases(String leaseOwner, Collection<String> ids, Date leaseExpiresAt);
+}
@@ -25,6 +25,7 @@ import jakarta.validation.Valid;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
@@ -35,6 +36,7 @@ import org.commonwl.view.cwl.CWLService;
 import org.commonwl.view.cwl.CWLToolStatus;
 import org.commonwl.view.cwl.CWLValidationException;
 import org.commonwl.view.git.GitDetails;
+import org.commonwl.view.graphviz.GraphLayout;
 import org.commonwl.view.graphviz.GraphVizService;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.TransportException;
@@ -53,6 +55,7 @@ import org.springframework.ui.Model;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
@@ -62,10 +65,14 @@ public class WorkflowController {
 
   private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
+  // Number of steps above which the graph on the workflow page is drawn from its JSON layout
+  private static final int CLIENT_GRAPH_STEPS = 100;
+
   private final WorkflowFormValidator workflowFormValidator;
   private final WorkflowService workflowService;
   private final CWLService cwlService;
   private final GraphVizService graphVizService;
+  private final DownloadCacheControl downloadCacheControl;
 
   /**
    * Autowired constructor to initialise objects used by the controller.
@@ -73,17 +80,21 @@ public class WorkflowController {
    * @param workflowFormValidator Validator to validate the workflow form
    * @param workflowService Builds new Workflow objects
    * @param graphVizService Generates and stores images
+   * @param cwlService Parses workflows posted to the graph endpoints
+   * @param downloadCacheControl Sets caching headers on graph and bundle downloads
    */
   @Autowired
   public WorkflowController(
       WorkflowFormValidator workflowFormValidator,
       WorkflowService workflowService,
       GraphVizService graphVizService,
-      CWLService cwlService) {
+      CWLService cwlService,
+      DownloadCacheControl downloadCacheControl) {
     this.workflowFormValidator = workflowFormValidator;
     this.workflowService = workflowService;
     this.graphVizService = graphVizService;
     this.cwlService = cwlService;
+    this.downloadCacheControl = downloadCacheControl;
   }
 
   /**
@@ -253,14 +264,13 @@ public class WorkflowController {
       @PathVariable("repoName") String repoName,
       @PathVariable("branch") String branch,
       HttpServletRequest request,
-      HttpServletResponse response) {
+      HttpServletResponse response,
+      WebRequest webRequest) {
     String path =
         (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
     path = extractPath(path, 7);
     GitDetails gitDetails = getGitDetails(domain, owner, repoName, branch, path);
-    File bundleDownload = workflowService.getROBundle(gitDetails);
-    response.setHeader("Content-Disposition", "attachment; filename=bundle.zip;");
-    return new FileSystemResource(bundleDownload);
+    return getBundle(gitDetails, response, webRequest);
   }
 
   /**
@@ -275,13 +285,12 @@ public class WorkflowController {
   public Resource getROBundleGeneric(
       @PathVariable("branch") String branch,
       HttpServletRequest request,
-      HttpServletResponse response) {
+      HttpServletResponse response,
+      WebRequest webRequest) {
     String path =
         (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
     GitDetails gitDetails = getGitDetails(10, path, branch);
-    File bundleDownload = workflowService.getROBundle(gitDetails);
-    response.setHeader("Content-Disposition", "attachment; filename=bundle.zip;");
-    return new FileSystemResource(bundleDownload);
+    return getBundle(gitDetails, response, webRequest);
   }
 
   /**
@@ -291,6 +300,7 @@ public class WorkflowController {
    * @param owner The owner of the repository
    * @param repoName The name of the repository
    * @param branch The branch of repository
+   * @param step The step running a nested workflow to graph instead, if any
    */
   @GetMapping(
       value = {
@@ -304,34 +314,39 @@ public class WorkflowController {
       @PathVariable("owner") String owner,
       @PathVariable("repoName") String repoName,
       @PathVariable("branch") String branch,
+      @RequestParam(value = "step", required = false) String step,
       HttpServletRequest request,
-      HttpServletResponse response)
+      HttpServletResponse response,
+      WebRequest webRequest)
       throws IOException {
     String path =
         (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
     path = extractPath(path, 8);
     GitDetails gitDetails = getGitDetails(domain, owner, repoName, branch, path);
     response.setHeader("Content-Disposition", "inline; filename=\"graph.svg\"");
-    return workflowService.getWorkflowGraph("svg", gitDetails);
+    return getGraph("svg", gitDetails, step, response, webRequest);
   }
 
   /**
    * Download a generated graph for a workflow in SVG format
    *
    * @param branch The branch of repository
+   * @param step The step running a nested workflow to graph instead, if any
    */
   @GetMapping(value = "/graph/svg/*/*/*.git/{branch}/**", produces = "image/svg+xml")
   @ResponseBody
   public Resource downloadGraphSvgGeneric(
       @PathVariable("branch") String branch,
+      @RequestParam(value = "step", required = false) String step,
       HttpServletRequest request,
-      HttpServletResponse response)
+      HttpServletResponse response,
+      WebRequest webRequest)
       throws IOException {
     String path =
         (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
     GitDetails gitDetails = getGitDetails(11, path, branch);
     response.setHeader("Content-Disposition", "inline; filename=\"graph.svg\"");
-    return workflowService.getWorkflowGraph("svg", gitDetails);
+    return getGraph("svg", gitDetails, step, response, webRequest);
   }
 
   /**
@@ -341,6 +356,7 @@ public class WorkflowController {
    * @param owner The owner of the repository
    * @param repoName The name of the repository
    * @param branch The branch of repository
+   * @param step The step running a nested workflow to graph instead, if any
    */
   @GetMapping(
       value = {
@@ -354,34 +370,39 @@ public class WorkflowController {
       @PathVariable("owner") String owner,
       @PathVariable("repoName") String repoName,
       @PathVariable("branch") String branch,
+      @RequestParam(value = "step", required = false) String step,
       HttpServletRequest request,
-      HttpServletResponse response)
+      HttpServletResponse response,
+      WebRequest webRequest)
       throws IOException {
     String path =
         (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
     path = extractPath(path, 8);
     GitDetails gitDetails = getGitDetails(domain, owner, repoName, branch, path);
     response.setHeader("Content-Disposition", "inline; filename=\"graph.png\"");
-    return workflowService.getWorkflowGraph("png", gitDetails);
+    return getGraph("png", gitDetails, step, response, webRequest);
   }
 
   /**
    * Download a generated graph for a workflow in PNG format
    *
    * @param branch The branch of repository
+   * @param step The step running a nested workflow to graph instead, if any
    */
   @GetMapping(value = "/graph/png/*/*/*.git/{branch}/**", produces = "image/png")
   @ResponseBody
   public Resource downloadGraphPngGeneric(
       @PathVariable("branch") String branch,
+      @RequestParam(value = "step", required = false) String step,
       HttpServletRequest request,
-      HttpServletResponse response)
+      HttpServletResponse response,
+      WebRequest webRequest)
       throws IOException {
     String path =
         (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
     GitDetails gitDetails = getGitDetails(11, path, branch);
     response.setHeader("Content-Disposition", "inline; filename=\"graph.png\"");
-    return workflowService.getWorkflowGraph("png", gitDetails);
+    return getGraph("png", gitDetails, step, response, webRequest);
   }
 
   /**
@@ -391,6 +412,7 @@ public class WorkflowController {
    * @param owner The owner of the repository
    * @param repoName The name of the repository
    * @param branch The branch of repository
+   * @param step The step running a nested workflow to graph instead, if any
    */
   @GetMapping(
       value = {
@@ -404,34 +426,93 @@ public class WorkflowController {
       @PathVariable("owner") String owner,
       @PathVariable("repoName") String repoName,
       @PathVariable("branch") String branch,
+      @RequestParam(value = "step", required = false) String step,
       HttpServletRequest request,
-      HttpServletResponse response)
+      HttpServletResponse response,
+      WebRequest webRequest)
       throws IOException {
     String path =
         (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
     path = extractPath(path, 8);
     GitDetails gitDetails = getGitDetails(domain, owner, repoName, branch, path);
     response.setHeader("Content-Disposition", "inline; filename=\"graph.dot\"");
-    return workflowService.getWorkflowGraph("xdot", gitDetails);
+    return getGraph("xdot", gitDetails, step, response, webRequest);
   }
 
   /**
    * Download a generated graph for a workflow in XDOT format
    *
    * @param branch The branch of repository
+   * @param step The step running a nested workflow to graph instead, if any
    */
   @GetMapping(value = "/graph/xdot/*/*/*.git/{branch}/**", produces = "text/vnd.graphviz")
   @ResponseBody
   public Resource downloadGraphDotGeneric(
       @PathVariable("branch") String branch,
+      @RequestParam(value = "step", required = false) String step,
       HttpServletRequest request,
-      HttpServletResponse response)
+      HttpServletResponse response,
+      WebRequest webRequest)
       throws IOException {
     String path =
         (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
     GitDetails gitDetails = getGitDetails(12, path, branch);
     response.setHeader("Content-Disposition", "inline; filename=\"graph.dot\"");
-    return workflowService.getWorkflowGraph("xdot", gitDetails);
+    return getGraph("xdot", gitDetails, step, response, webRequest);
+  }
+
+  /**
+   * Download the layout of the graph for a workflow as JSON, for drawing in the browser
+   *
+   * @param domain The domain of the hosting site, github.com or gitlab.com
+   * @param owner The owner of the repository
+   * @param repoName The name of the repository
+   * @param branch The branch of repository
+   * @param step The step running a nested workflow to graph instead, if any
+   */
+  @GetMapping(
+      value = {
+        "/graph/json/{domain}.com/{owner}/{repoName}/tree/{branch}/**",
+        "/graph/json/{domain}.com/{owner}/{repoName}/blob/{branch}/**"
+      },
+      produces = "application/json")
+  @ResponseBody
+  public GraphLayout downloadGraphJson(
+      @PathVariable("domain") String domain,
+      @PathVariable("owner") String owner,
+      @PathVariable("repoName") String repoName,
+      @PathVariable("branch") String branch,
+      @RequestParam(value = "step", required = false) String step,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      WebRequest webRequest)
+      throws IOException {
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    path = extractPath(path, 8);
+    GitDetails gitDetails = getGitDetails(domain, owner, repoName, branch, path);
+    return getGraphLayout(gitDetails, step, response, webRequest);
+  }
+
+  /**
+   * Download the layout of the graph for a workflow as JSON, for drawing in the browser
+   *
+   * @param branch The branch of repository
+   * @param step The step running a nested workflow to graph instead, if any
+   */
+  @GetMapping(value = "/graph/json/*/*/*.git/{branch}/**", produces = "application/json")
+  @ResponseBody
+  public GraphLayout downloadGraphJsonGeneric(
+      @PathVariable("branch") String branch,
+      @RequestParam(value = "step", required = false) String step,
+      HttpServletRequest request,
+      HttpServletResponse response,
+      WebRequest webRequest)
+      throws IOException {
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    GitDetails gitDetails = getGitDetails(12, path, branch);
+    return getGraphLayout(gitDetails, step, response, webRequest);
   }
 
   /**
@@ -451,8 +532,7 @@ public class WorkflowController {
       throw new WorkflowNotFoundException();
     }
     Path out =
-        graphVizService.getGraphPath(
-            queued.getId() + ".png", queued.getTempRepresentation().getVisualisationDot(), "png");
+        graphVizService.getGraphPath(queued.getTempRepresentation().getVisualisationDot(), "png");
     response.setHeader("Content-Disposition", "inline; filename=\"graph.png\"");
     return new PathResource(out);
   }
@@ -662,12 +742,89 @@ public class WorkflowController {
       }
       return new ModelAndView("loading", "queued", queued);
     } else {
+      // Large graphs are drawn in the browser from their layout rather than downloaded as images
+      boolean clientGraph =
+          workflowModel.getSteps() != null && workflowModel.getSteps().size() > CLIENT_GRAPH_STEPS;
       return new ModelAndView("workflow", "workflow", workflowModel)
+          .addObject("clientGraph", clientGraph)
           .addObject("lineSeparator", System.getProperty("line.separator"))
           .addObject("formats", WebConfig.Format.values());
     }
   }
 
+  /**
+   * Serve a generated graph for a workflow, answering conditional requests before rendering
+   *
+   * @param format The format of the graph
+   * @param gitDetails The Git details of the workflow
+   * @param step The step running a nested workflow to graph instead, or null
+   * @return The graph, or null if the client copy is still valid
+   */
+  private Resource getGraph(
+      String format,
+      GitDetails gitDetails,
+      String step,
+      HttpServletResponse response,
+      WebRequest webRequest)
+      throws IOException {
+    String dot = workflowService.getGraphDot(gitDetails, step);
+    boolean pinned = DownloadCacheControl.isCommitId(gitDetails.getBranch());
+    boolean fallback = workflowService.isGraphFallback(dot);
+    if (downloadCacheControl.checkGraphNotModified(
+        dot, format, pinned, fallback, response, webRequest)) {
+      return null;
+    }
+    PathResource stored = workflowService.getGraph(format, dot);
+    Path graph =
+        downloadCacheControl.selectGraphEncoding(stored.getFile().toPath(), response, webRequest);
+    // Checked again, as rendering may just have run over the time budget
+    if (workflowService.isGraphFallback(dot)) {
+      downloadCacheControl.setFallback(graph, response);
+    }
+    return new PathResource(graph);
+  }
+
+  /**
+   * Serve the layout of the graph for a workflow, answering conditional requests before laying it
+   * out
+   *
+   * @param gitDetails The Git details of the workflow
+   * @param step The step running a nested workflow to lay out instead, or null
+   * @return The layout, or null if the client copy is still valid
+   */
+  private GraphLayout getGraphLayout(
+      GitDetails gitDetails, String step, HttpServletResponse response, WebRequest webRequest)
+      throws IOException {
+    String dot = workflowService.getGraphDot(gitDetails, step);
+    boolean pinned = DownloadCacheControl.isCommitId(gitDetails.getBranch());
+    boolean fallback = workflowService.isGraphFallback(dot);
+    if (downloadCacheControl.checkLayoutNotModified(dot, pinned, fallback, response, webRequest)) {
+      return null;
+    }
+    Path plain = workflowService.getGraph("plain", dot).getFile().toPath();
+    // Checked again, as laying out may just have run over the time budget
+    if (workflowService.isGraphFallback(dot)) {
+      downloadCacheControl.setFallback(plain, response);
+    }
+    return GraphLayout.fromPlain(Files.readString(plain));
+  }
+
+  /**
+   * Serve the Research Object Bundle for a workflow, answering conditional requests
+   *
+   * @param gitDetails The Git details of the workflow
+   * @return The bundle, or null if the client copy is still valid
+   */
+  private Resource getBundle(
+      GitDetails gitDetails, HttpServletResponse response, WebRequest webRequest) {
+    File bundleDownload = workflowService.getROBundle(gitDetails);
+    if (downloadCacheControl.checkBundleNotModified(bundleDownload, response, webRequest)) {
+      return null;
+    }
+    response.setHeader("Content-Disposition", "attachment; filename=bundle.zip;");
+    return new FileSystemResource(bundleDownload);
+  }
+
   private Resource getGraphFromInputStream(InputStream in, String format)
       throws IOException, WorkflowNotFoundException, CWLValidationException {
     Workflow workflow =
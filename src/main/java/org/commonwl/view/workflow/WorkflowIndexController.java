@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import org.commonwl.view.workflow.WorkflowIndexEntry.Kind;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/** JSON API Controller to find the workflows using a docker image, tool, format or license */
+@RestController
+public class WorkflowIndexController {
+
+  private final WorkflowIndexService workflowIndexService;
+
+  @Autowired
+  public WorkflowIndexController(WorkflowIndexService workflowIndexService) {
+    this.workflowIndexService = workflowIndexService;
+  }
+
+  /**
+   * List the workflows pulling a docker image, paginated
+   *
+   * @param image The docker image as given in dockerPull, e.g. ubuntu:22.04
+   * @return The page of workflows
+   */
+  @GetMapping(value = "/workflows/uses/docker", produces = MediaType.APPLICATION_JSON_VALUE)
+  public Page<Workflow> workflowsUsingDocker(
+      @RequestParam(value = "image") String image,
+      @PageableDefault(size = 10) Pageable pageable) {
+    return workflowIndexService.findWorkflows(Kind.DOCKER, image, pageable);
+  }
+
+  /**
+   * List the workflows with a step running a file, paginated
+   *
+   * @param path The path of the file within its repository, e.g. tools/bwa-mem.cwl
+   * @return The page of workflows
+   */
+  @GetMapping(value = "/workflows/uses/run", produces = MediaType.APPLICATION_JSON_VALUE)
+  public Page<Workflow> workflowsUsingRun(
+      @RequestParam(value = "path") String path, @PageableDefault(size = 10) Pageable pageable) {
+    return workflowIndexService.findWorkflows(Kind.RUN, path, pageable);
+  }
+
+  /**
+   * List the workflows with an input or output of a format, paginated
+   *
+   * @param format The format IRI, e.g. http://edamontology.org/format_1929
+   * @return The page of workflows
+   */
+  @GetMapping(value = "/workflows/uses/format", produces = MediaType.APPLICATION_JSON_VALUE)
+  public Page<Workflow> workflowsUsingFormat(
+      @RequestParam(value = "format") String format,
+      @PageableDefault(size = 10) Pageable pageable) {
+    return workflowIndexService.findWorkflows(Kind.FORMAT, format, pageable);
+  }
+
+  /**
+   * List the workflows under a license, paginated
+   *
+   * @param license The license link, e.g. https://spdx.org/licenses/Apache-2.0
+   * @return The page of workflows
+   */
+  @GetMapping(value = "/workflows/uses/license", produces = MediaType.APPLICATION_JSON_VALUE)
+  public Page<Workflow> workflowsUsingLicense(
+      @RequestParam(value = "license") String license,
+      @PageableDefault(size = 10) Pageable pageable) {
+    return workflowIndexService.findWorkflows(Kind.LICENSE, license, pageable);
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A value used by a workflow, such as a docker image or a format, indexed to find all the
+ * workflows using it
+ */
+@Entity
+@Table(
+    name = "workflow_index",
+    indexes = {
+      @Index(columnList = "kind, value, workflowId"),
+      @Index(columnList = "workflowId")
+    })
+public class WorkflowIndexEntry implements Serializable {
+
+  /** What the indexed value is */
+  public enum Kind {
+    /** A docker image pulled by the workflow or one of its tools */
+    DOCKER,
+    /** The path within the repository of a file run by a step */
+    RUN,
+    /** The format IRI of an input or output */
+    FORMAT,
+    /** The license of the workflow */
+    LICENSE
+  }
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  @Column(length = 36, nullable = false)
+  private String workflowId;
+
+  @Enumerated(EnumType.STRING)
+  @Column(length = 16, nullable = false)
+  private Kind kind;
+
+  @Column(columnDefinition = "TEXT", nullable = false)
+  private String value;
+
+  public WorkflowIndexEntry(String workflowId, Kind kind, String value) {
+    this.workflowId = workflowId;
+    this.kind = kind;
+    this.value = value;
+  }
+
+  public WorkflowIndexEntry() {}
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getWorkflowId() {
+    return workflowId;
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public String getValue() {
+    return value;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    WorkflowIndexEntry that = (WorkflowIndexEntry) o;
+    return Objects.equals(workflowId, that.workflowId)
+        && kind == that.kind
+        && Objects.equals(value, that.value);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(workflowId, kind, value);
+  }
+}
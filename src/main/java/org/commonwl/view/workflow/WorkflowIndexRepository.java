@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import java.util.List;
+import org.commonwl.view.workflow.WorkflowIndexEntry.Kind;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/** Stores the values used by workflows, to find workflows across the whole catalogue */
+@Repository
+public interface WorkflowIndexRepository extends JpaRepository<WorkflowIndexEntry, Long> {
+
+  /**
+   * Paged request to get the workflows using a value, most recently retrieved first
+   *
+   * @param kind What the value is
+   * @param value The value
+   * @param pageable The details of the page to be retrieved
+   * @return The requested page of workflows
+   */
+  @Query(
+      value =
+          "SELECT w FROM Workflow w WHERE w.id IN "
+              + "(SELECT e.workflowId FROM WorkflowIndexEntry e "
+              + "WHERE e.kind = ?1 AND e.value = ?2) "
+              + "ORDER BY w.retrievedOn DESC",
+      countQuery =
+          "SELECT COUNT(DISTINCT e.workflowId) FROM WorkflowIndexEntry e "
+              + "WHERE e.kind = ?1 AND e.value = ?2")
+  Page<Workflow> findWorkflows(Kind kind, String value, Pageable pageable);
+
+  /**
+   * Finds the IDs of the workflows without any index entries, such as those parsed before the
+   * index was added
+   *
+   * @return The IDs of the workflows
+   */
+  @Query(
+      value =
+          "SELECT w.id FROM workflow w WHERE NOT EXISTS "
+              + "(SELECT 1 FROM workflow_index i WHERE i.workflow_id = w.id)",
+      nativeQuery = true)
+  List<String> findUnindexedWorkflowIds();
+
+  /**
+   * Deletes the index entries of a workflow
+   *
+   * @param workflowId The ID of the workflow
+   * @return The number of entries deleted
+   */
+  @Transactional
+  long deleteByWorkflowId(String workflowId);
+}
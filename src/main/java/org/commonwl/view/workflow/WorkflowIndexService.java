@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.jena.query.ResultSet;
+import org.commonwl.view.cwl.CWLElement;
+import org.commonwl.view.cwl.CWLStep;
+import org.commonwl.view.cwl.RDFService;
+import org.commonwl.view.workflow.WorkflowIndexEntry.Kind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Maintains the index of docker images, run targets, formats and licenses used by workflows, so
+ * workflows using one of them can be found without querying every graph in the RDF store
+ */
+@Service
+public class WorkflowIndexService {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+  private final WorkflowIndexRepository workflowIndexRepository;
+  private final WorkflowRepository workflowRepository;
+  private final RDFService rdfService;
+  private final TransactionTemplate transactionTemplate;
+
+  @Autowired
+  public WorkflowIndexService(
+      WorkflowIndexRepository workflowIndexRepository,
+      WorkflowRepository workflowRepository,
+      RDFService rdfService,
+      PlatformTransactionManager transactionManager) {
+    this.workflowIndexRepository = workflowIndexRepository;
+    this.workflowRepository = workflowRepository;
+    this.rdfService = rdfService;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+  }
+
+  /**
+   * Index the workflows which have no index entries once the application has started, so
+   * workflows parsed before the index was added can be found too
+   *
+   * <p>The docker images pulled by a workflow are not stored with it, so they are read from its
+   * graph in the RDF store. Each workflow is indexed in its own transaction, as {@link
+   * #index(Workflow)} is called here without going through the Spring proxy.
+   *
+   * <p>Workflows using nothing which is indexed are checked again on each start, which only costs
+   * loading them.
+   */
+  @Async
+  @EventListener(ApplicationReadyEvent.class)
+  public void indexUnindexed() {
+    List<String> workflowIds = workflowIndexRepository.findUnindexedWorkflowIds();
+    if (workflowIds.isEmpty()) {
+      return;
+    }
+    logger.info("Indexing " + workflowIds.size() + " workflows without index entries");
+    for (String workflowId : workflowIds) {
+      try {
+        workflowRepository
+            .findById(workflowId)
+            .ifPresent(
+                workflow -> {
+                  workflow.setDockerPulls(getDockerPulls(workflow));
+                  transactionTemplate.executeWithoutResult(status -> index(workflow));
+                });
+      } catch (RuntimeException ex) {
+        logger.warn("Could not index workflow " + workflowId, ex);
+      }
+    }
+  }
+
+  /**
+   * Replace the index entries of a workflow which has just been parsed and saved
+   *
+   * @param workflow The workflow
+   */
+  @Transactional
+  public void index(Workflow workflow) {
+    workflowIndexRepository.deleteByWorkflowId(workflow.getID());
+
+    Set<WorkflowIndexEntry> entries = new LinkedHashSet<>();
+    if (workflow.getDockerPulls() != null) {
+      for (String image : workflow.getDockerPulls()) {
+        entries.add(new WorkflowIndexEntry(workflow.getID(), Kind.DOCKER, image));
+      }
+    }
+    if (workflow.getSteps() != null) {
+      Path workflowDir = Paths.get(workflow.getRetrievedFrom().getPath()).getParent();
+      for (CWLStep step : workflow.getSteps().values()) {
+        if (step.getRun() instanceof String) {
+          String run = (String) step.getRun();
+          if (workflowDir != null) {
+            run = workflowDir.resolve(run).normalize().toString();
+          }
+          entries.add(new WorkflowIndexEntry(workflow.getID(), Kind.RUN, run));
+        }
+      }
+    }
+    addFormats(workflow, workflow.getInputs(), entries);
+    addFormats(workflow, workflow.getOutputs(), entries);
+    if (workflow.getLicenseLink() != null) {
+      entries.add(
+          new WorkflowIndexEntry(workflow.getID(), Kind.LICENSE, workflow.getLicenseLink()));
+    }
+    workflowIndexRepository.saveAll(entries);
+  }
+
+  /**
+   * Get the docker images pulled anywhere in a stored workflow from its graph in the RDF store
+   *
+   * @param workflow The workflow loaded from the database
+   * @return The docker images, empty if the workflow has no stored graph
+   */
+  private Set<String> getDockerPulls(Workflow workflow) {
+    Set<String> dockerPulls = new TreeSet<>();
+    String url = workflow.getIdentifier();
+    if (workflow.getLastCommit() == null || !rdfService.graphExists(url)) {
+      return dockerPulls;
+    }
+    ResultSet pullResult = rdfService.getDockerPulls(url);
+    while (pullResult.hasNext()) {
+      dockerPulls.add(pullResult.nextSolution().get("pull").toString());
+    }
+    return dockerPulls;
+  }
+
+  /**
+   * Get the workflows using a value, most recently retrieved first
+   *
+   * @param kind What the value is
+   * @param value The value
+   * @param pageable The details of the page to be retrieved
+   * @return The requested page of workflows
+   */
+  public Page<Workflow> findWorkflows(Kind kind, String value, Pageable pageable) {
+    return workflowIndexRepository.findWorkflows(kind, value, pageable);
+  }
+
+  private void addFormats(
+      Workflow workflow, Map<String, CWLElement> elements, Set<WorkflowIndexEntry> entries) {
+    if (elements == null) {
+      return;
+    }
+    for (CWLElement element : elements.values()) {
+      if (element.getFormat() != null) {
+        entries.add(new WorkflowIndexEntry(workflow.getID(), Kind.FORMAT, element.getFormat()));
+      }
+    }
+  }
+}
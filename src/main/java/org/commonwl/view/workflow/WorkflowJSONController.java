@@ -37,6 +37,7 @@ import org.springframework.ui.Model;
 import org.springframework.validation.BeanPropertyBindingResult;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /** JSON API Controller */
 @RestController
@@ -44,18 +45,23 @@ public class WorkflowJSONController {
 
   private final WorkflowFormValidator workflowFormValidator;
   private final WorkflowService workflowService;
+  private final QueueEventService queueEventService;
 
   /**
    * Autowired constructor to initialise objects used by the controller
    *
    * @param workflowFormValidator Validator to validate the workflow form
    * @param workflowService Builds new Workflow objects
+   * @param queueEventService Pushes the progress of queued workflows
    */
   @Autowired
   public WorkflowJSONController(
-      WorkflowFormValidator workflowFormValidator, WorkflowService workflowService) {
+      WorkflowFormValidator workflowFormValidator,
+      WorkflowService workflowService,
+      QueueEventService queueEventService) {
     this.workflowFormValidator = workflowFormValidator;
     this.workflowService = workflowService;
+    this.queueEventService = queueEventService;
   }
 
   /**
@@ -255,4 +261,20 @@ public class WorkflowJSONController {
     }
     return queuedWorkflow;
   }
+
+  /**
+   * Stream the progress of a queued workflow as server-sent events, starting with its current
+   * status
+   *
+   * @param queueID The queued workflow ID to follow
+   * @return The stream of "progress" events
+   */
+  @GetMapping(value = "/queue/{queueID}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter queueEvents(@PathVariable("queueID") String queueID) {
+    QueuedWorkflow queuedWorkflow = workflowService.getQueuedWorkflow(queueID);
+    if (queuedWorkflow == null) {
+      throw new WorkflowNotFoundException();
+    }
+    return queueEventService.subscribe(queuedWorkflow);
+  }
 }
@@ -23,16 +23,19 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Optional;
-import org.commonwl.view.cwl.RDFService;
+import org.commonwl.view.cwl.RDFRepresentationCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.PathResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.HandlerMapping;
 
 /**
@@ -45,12 +48,17 @@ import org.springframework.web.servlet.HandlerMapping;
 public class WorkflowPermalinkController {
 
   private final WorkflowService workflowService;
-  private final RDFService rdfService;
+  private final RDFRepresentationCache rdfRepresentationCache;
+  private final DownloadCacheControl downloadCacheControl;
 
   @Autowired
-  public WorkflowPermalinkController(WorkflowService workflowService, RDFService rdfService) {
+  public WorkflowPermalinkController(
+      WorkflowService workflowService,
+      RDFRepresentationCache rdfRepresentationCache,
+      DownloadCacheControl downloadCacheControl) {
     this.workflowService = workflowService;
-    this.rdfService = rdfService;
+    this.rdfRepresentationCache = rdfRepresentationCache;
+    this.downloadCacheControl = downloadCacheControl;
   }
 
   /** Generate a URI list of all representations available */
@@ -140,19 +148,15 @@ public class WorkflowPermalinkController {
    * @return The Turtle representation of the RDF for the workflow
    */
   @GetMapping(value = "/git/{commitid}/**", produces = "text/turtle")
-  public byte[] getRdfAsTurtle(
+  public Resource getRdfAsTurtle(
       @PathVariable("commitid") String commitId,
       @RequestParam(name = "part") Optional<String> part,
       HttpServletRequest request,
-      HttpServletResponse response) {
+      HttpServletResponse response,
+      WebRequest webRequest)
+      throws IOException {
     Workflow workflow = getWorkflow(commitId, request, part);
-    String rdfUrl = workflow.getIdentifier();
-    if (rdfService.graphExists(rdfUrl)) {
-      response.setHeader("Content-Disposition", "inline; filename=\"workflow.ttl\"");
-      return rdfService.getModel(rdfUrl, "TURTLE");
-    } else {
-      throw new WorkflowNotFoundException();
-    }
+    return getRdf(workflow, "TURTLE", "workflow.ttl", response, webRequest);
   }
 
   /**
@@ -162,19 +166,15 @@ public class WorkflowPermalinkController {
    * @return The JsonLD representation of the RDF for the workflow
    */
   @GetMapping(value = "/git/{commitid}/**", produces = "application/ld+json")
-  public byte[] getRdfAsJsonLd(
+  public Resource getRdfAsJsonLd(
       @PathVariable("commitid") String commitId,
       @RequestParam(name = "part") Optional<String> part,
       HttpServletRequest request,
-      HttpServletResponse response) {
+      HttpServletResponse response,
+      WebRequest webRequest)
+      throws IOException {
     Workflow workflow = getWorkflow(commitId, request, part);
-    String rdfUrl = workflow.getIdentifier();
-    if (rdfService.graphExists(rdfUrl)) {
-      response.setHeader("Content-Disposition", "inline; filename=\"workflow.jsonld\"");
-      return rdfService.getModel(rdfUrl, "JSON-LD");
-    } else {
-      throw new WorkflowNotFoundException();
-    }
+    return getRdf(workflow, "JSON-LD", "workflow.jsonld", response, webRequest);
   }
 
   /**
@@ -184,19 +184,15 @@ public class WorkflowPermalinkController {
    * @return The RDF/XML representation of the RDF for the workflow
    */
   @GetMapping(value = "/git/{commitid}/**", produces = "application/rdf+xml")
-  public byte[] getRdfAsRdfXml(
+  public Resource getRdfAsRdfXml(
       @PathVariable("commitid") String commitId,
       @RequestParam(name = "part") Optional<String> part,
       HttpServletRequest request,
-      HttpServletResponse response) {
+      HttpServletResponse response,
+      WebRequest webRequest)
+      throws IOException {
     Workflow workflow = getWorkflow(commitId, request, part);
-    String rdfUrl = workflow.getIdentifier();
-    if (rdfService.graphExists(rdfUrl)) {
-      response.setHeader("Content-Disposition", "inline; filename=\"workflow.rdf\"");
-      return rdfService.getModel(rdfUrl, "RDFXML");
-    } else {
-      throw new WorkflowNotFoundException();
-    }
+    return getRdf(workflow, "RDFXML", "workflow.rdf", response, webRequest);
   }
 
   /**
@@ -212,11 +208,12 @@ public class WorkflowPermalinkController {
       @PathVariable("commitid") String commitId,
       @RequestParam(name = "part") Optional<String> part,
       HttpServletRequest request,
-      HttpServletResponse response)
+      HttpServletResponse response,
+      WebRequest webRequest)
       throws WorkflowNotFoundException, IOException {
     Workflow workflow = getWorkflow(commitId, request, part);
     response.setHeader("Content-Disposition", "inline; filename=\"graph.svg\"");
-    return workflowService.getWorkflowGraph("svg", workflow.getRetrievedFrom());
+    return getGraph(workflow, "svg", response, webRequest);
   }
 
   /**
@@ -232,11 +229,12 @@ public class WorkflowPermalinkController {
       @PathVariable("commitid") String commitId,
       @RequestParam(name = "part") Optional<String> part,
       HttpServletRequest request,
-      HttpServletResponse response)
+      HttpServletResponse response,
+      WebRequest webRequest)
       throws WorkflowNotFoundException, IOException {
     Workflow workflow = getWorkflow(commitId, request, part);
     response.setHeader("Content-Disposition", "inline; filename=\"graph.png\"");
-    return workflowService.getWorkflowGraph("png", workflow.getRetrievedFrom());
+    return getGraph(workflow, "png", response, webRequest);
   }
 
   /**
@@ -252,11 +250,12 @@ public class WorkflowPermalinkController {
       @PathVariable("commitid") String commitId,
       @RequestParam(name = "part") Optional<String> part,
       HttpServletRequest request,
-      HttpServletResponse response)
+      HttpServletResponse response,
+      WebRequest webRequest)
       throws WorkflowNotFoundException, IOException {
     Workflow workflow = getWorkflow(commitId, request, part);
     response.setHeader("Content-Disposition", "inline; filename=\"graph.dot\"");
-    return workflowService.getWorkflowGraph("xdot", workflow.getRetrievedFrom());
+    return getGraph(workflow, "xdot", response, webRequest);
   }
 
   /**
@@ -272,13 +271,68 @@ public class WorkflowPermalinkController {
       @PathVariable("commitid") String commitId,
       @RequestParam(name = "part") Optional<String> part,
       HttpServletRequest request,
-      HttpServletResponse response) {
+      HttpServletResponse response,
+      WebRequest webRequest) {
     Workflow workflow = getWorkflow(commitId, request, part);
     File bundleDownload = workflowService.getROBundle(workflow.getRetrievedFrom());
+    if (downloadCacheControl.checkBundleNotModified(bundleDownload, response, webRequest)) {
+      return null;
+    }
     response.setHeader("Content-Disposition", "attachment; filename=bundle.zip;");
     return new FileSystemResource(bundleDownload);
   }
 
+  /**
+   * Serve the RDF of a workflow from the on-disk cache, answering conditional requests
+   *
+   * @param workflow The workflow
+   * @param format The name of the Jena writer for the RDF format
+   * @param fileName The file name suggested to the client
+   * @return The serialised RDF, or null if the client copy is still valid
+   * @throws WorkflowNotFoundException If the workflow has no RDF (404)
+   */
+  private Resource getRdf(
+      Workflow workflow,
+      String format,
+      String fileName,
+      HttpServletResponse response,
+      WebRequest webRequest)
+      throws IOException {
+    File rdf = rdfRepresentationCache.getRepresentation(workflow.getIdentifier(), format);
+    if (webRequest.checkNotModified(rdfRepresentationCache.getETag(rdf), rdf.lastModified())) {
+      return null;
+    }
+    response.setHeader("Content-Disposition", "inline; filename=\"" + fileName + "\"");
+    return new FileSystemResource(rdf);
+  }
+
+  /**
+   * Serve a generated graph of a workflow, cached as immutable since it is pinned to a commit
+   * unless drawn with a fallback, answering conditional requests before rendering
+   *
+   * @param workflow The workflow
+   * @param format The format of the graph
+   * @return The graph, or null if the client copy is still valid
+   */
+  private Resource getGraph(
+      Workflow workflow, String format, HttpServletResponse response, WebRequest webRequest)
+      throws IOException {
+    String dot = workflow.getVisualisationDot();
+    boolean fallback = workflowService.isGraphFallback(dot);
+    if (downloadCacheControl.checkGraphNotModified(
+        dot, format, true, fallback, response, webRequest)) {
+      return null;
+    }
+    PathResource stored = workflowService.getGraph(format, dot);
+    Path graph =
+        downloadCacheControl.selectGraphEncoding(stored.getFile().toPath(), response, webRequest);
+    // Checked again, as rendering may just have run over the time budget
+    if (workflowService.isGraphFallback(dot)) {
+      downloadCacheControl.setFallback(graph, response);
+    }
+    return new PathResource(graph);
+  }
+
   /**
    * Get a workflow based on commit ID and extracting path from request
    *
@@ -58,6 +58,21 @@ public interface WorkflowRepository
   @Query("SELECT w FROM Workflow w WHERE w.lastCommit = ?1")
   List<Workflow> findByCommit(String commitId);
 
+  /**
+   * Finds the identifiers of all workflows, as built by {@link Workflow#getIdentifier()}, without
+   * loading the workflows themselves
+   *
+   * @return The workflow identifiers
+   */
+  @Query(
+      value =
+          "SELECT 'https://w3id.org/cwl/view/git/' || w.last_commit || '/' "
+              + "|| (w.retrieved_from ->> 'path') "
+              + "|| COALESCE('#' || (w.retrieved_from ->> 'packedId'), '') "
+              + "FROM workflow w WHERE w.last_commit IS NOT NULL",
+      nativeQuery = true)
+  List<String> findAllIdentifiers();
+
   /**
    * Paged request to get workflows of a specific status
    *
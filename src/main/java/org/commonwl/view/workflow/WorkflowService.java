@@ -28,10 +28,11 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.commonwl.view.cwl.CWLService;
-import org.commonwl.view.cwl.CWLToolRunner;
 import org.commonwl.view.cwl.CWLToolStatus;
 import org.commonwl.view.cwl.CWLValidationException;
 import org.commonwl.view.git.GitDetails;
@@ -49,9 +50,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.PathResource;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 @Service
 public class WorkflowService {
@@ -64,7 +67,6 @@ public class WorkflowService {
   private final QueuedWorkflowRepository queuedWorkflowRepository;
   private final ROBundleFactory ROBundleFactory;
   private final GraphVizService graphVizService;
-  private final CWLToolRunner cwlToolRunner;
   private final GitSemaphore gitSemaphore;
   private final int cacheDays;
 
@@ -76,7 +78,6 @@ public class WorkflowService {
       QueuedWorkflowRepository queuedWorkflowRepository,
       ROBundleFactory ROBundleFactory,
       GraphVizService graphVizService,
-      CWLToolRunner cwlToolRunner,
       GitSemaphore gitSemaphore,
       @Value("${cacheDays}") int cacheDays) {
     this.gitService = gitService;
@@ -85,7 +86,6 @@ public class WorkflowService {
     this.queuedWorkflowRepository = queuedWorkflowRepository;
     this.ROBundleFactory = ROBundleFactory;
     this.graphVizService = graphVizService;
-    this.cwlToolRunner = cwlToolRunner;
     this.cacheDays = cacheDays;
     this.gitSemaphore = gitSemaphore;
   }
@@ -263,6 +263,10 @@ public class WorkflowService {
           }
         }
       }
+      // Another node may have changed the shared checkout if the lock was lost meanwhile
+      if (safeToAccess) {
+        gitSemaphore.checkHeld(gitInfo.getRepoUrl());
+      }
     } finally {
       gitSemaphore.release(gitInfo.getRepoUrl());
       FileUtils.deleteTemporaryGitRepository(repo);
@@ -302,6 +306,10 @@ public class WorkflowService {
   /**
    * Builds a new queued workflow from Git
    *
+   * <p>If the same commit of the workflow is already being parsed for another request, possibly
+   * through a different branch, tag or URL form, that queued workflow is returned instead. It keeps
+   * the Git details of the first request, so the finished workflow is found under its branch.
+   *
    * @param gitInfo Git information for the workflow
    * @return A queued workflow model
    * @throws GitAPIException Git errors
@@ -328,61 +336,9 @@ public class WorkflowService {
           }
         }
       }
-      Path localPath = repo.getRepository().getWorkTree().toPath();
-      String latestCommit = gitService.getCurrentCommitID(repo);
-
-      Path workflowFile = localPath.resolve(gitInfo.getPath()).normalize().toAbsolutePath();
-      // Prevent path traversal attacks
-      if (!workflowFile.startsWith(localPath.normalize().toAbsolutePath())) {
-        throw new WorkflowNotFoundException();
-      }
-
-      // Check workflow is readable
-      if (!Files.isReadable(workflowFile)) {
-        throw new WorkflowNotFoundException("Unable to read workflow file on disk.");
-      }
-
-      // Handling of packed workflows
-      String packedWorkflowId = gitInfo.getPackedId();
-      if (packedWorkflowId == null) {
-        if (cwlService.isPacked(workflowFile.toFile())) {
-          List<WorkflowOverview> overviews =
-              cwlService.getWorkflowOverviewsFromPacked(workflowFile.toFile());
-          if (overviews.size() == 0) {
-            throw new IOException(
-                "No workflow was found within the packed CWL file. " + gitInfo.toSummary());
-          } else {
-            // Dummy queued workflow object to return the list
-            QueuedWorkflow overviewList = new QueuedWorkflow();
-            overviewList.setWorkflowList(overviews);
-            return overviewList;
-          }
-        }
-      } else {
-        // Packed ID specified but was not found
-        if (!cwlService.isPacked(workflowFile.toFile())) {
-          throw new WorkflowNotFoundException();
-        }
-      }
-
-      Workflow basicModel = cwlService.parseWorkflowNative(workflowFile, packedWorkflowId);
-
-      // Set origin details
-      basicModel.setRetrievedOn(new Date());
-      basicModel.setRetrievedFrom(gitInfo);
-      basicModel.setLastCommit(latestCommit);
-
-      // Save the queued workflow to database
-      queuedWorkflow = new QueuedWorkflow();
-      queuedWorkflow.setTempRepresentation(basicModel);
-      queuedWorkflowRepository.save(queuedWorkflow);
-
-      // ASYNC OPERATIONS
-      // Parse with cwltool and update model
-      try {
-        cwlToolRunner.createWorkflowFromQueued(queuedWorkflow);
-      } catch (Exception e) {
-        logger.error("Could not update workflow with cwltool: " + gitInfo.toSummary(), e);
+      queuedWorkflow = queueFromCheckout(gitInfo, repo);
+      if (safeToAccess) {
+        gitSemaphore.checkHeld(gitInfo.getRepoUrl());
       }
 
     } catch (GitAPIException | RuntimeException | IOException e) {
@@ -402,6 +358,160 @@ public class WorkflowService {
     return queuedWorkflow;
   }
 
+  /**
+   * Builds new queued workflows for entries of a batch from the same repository, fetching the
+   * repository only once. The outcome is recorded on each entry.
+   *
+   * @param repoUrl The URL of the repository
+   * @param entries The entries of the batch from this repository
+   */
+  public void createQueuedWorkflows(String repoUrl, List<WorkflowBatchEntry> entries) {
+    Git repo = null;
+    try {
+      boolean safeToAccess = gitSemaphore.acquire(repoUrl);
+      repo = gitService.fetchRepository(repoUrl, safeToAccess);
+      for (WorkflowBatchEntry entry : entries) {
+        try {
+          GitDetails gitInfo = entry.getRetrievedFrom();
+          while (true) {
+            try {
+              gitService.checkout(repo, gitInfo);
+              break;
+            } catch (RefNotFoundException ex) {
+              // Attempt slashes in branch fix
+              GitDetails correctedForSlash = gitService.transferPathToBranch(gitInfo);
+              if (correctedForSlash == null) {
+                throw ex;
+              }
+              gitInfo = correctedForSlash;
+            }
+          }
+          QueuedWorkflow queued = queueFromCheckout(gitInfo, repo);
+          if (safeToAccess) {
+            gitSemaphore.checkHeld(repoUrl);
+          }
+          if (queued.getWorkflowList() != null) {
+            if (queued.getWorkflowList().size() != 1) {
+              entry.failed(
+                  "This workflow file is packed and contains multiple workflow descriptions,"
+                      + " a packedId is needed");
+              continue;
+            }
+            // Parse the packed workflow within automatically if there is only one
+            gitInfo.setPackedId(queued.getWorkflowList().get(0).getFileName());
+            queued = getQueuedWorkflow(gitInfo);
+            if (queued == null) {
+              queued = queueFromCheckout(gitInfo, repo);
+            }
+          }
+          entry.queued(queued);
+        } catch (WorkflowNotFoundException ex) {
+          entry.failed("Workflow could not be found within the repository");
+        } catch (Exception ex) {
+          logger.warn(
+              "Failed to create Queued Workflow for batch entry "
+                  + entry.getRetrievedFrom().toSummary(),
+              ex);
+          entry.failed("Workflow could not be created from the provided cwl file");
+        }
+      }
+    } catch (GitAPIException | RuntimeException | IOException e) {
+      logger.warn(
+          String.format(
+              "Failed to fetch %s for a batch: %s - Temporary files will be deleted.",
+              repoUrl, e.getMessage()),
+          e);
+      entries.forEach(entry -> entry.failed("Unable to retrieve the Git repository"));
+      FileUtils.deleteGitRepository(repo);
+    } finally {
+      gitSemaphore.release(repoUrl);
+      FileUtils.deleteTemporaryGitRepository(repo);
+    }
+  }
+
+  /**
+   * Builds a new queued workflow from a repository with the workflow commit checked out
+   *
+   * @param gitInfo Git information for the workflow
+   * @param repo The repository
+   * @return The saved queued workflow model, or a dummy one listing the workflows of a packed file
+   */
+  private QueuedWorkflow queueFromCheckout(GitDetails gitInfo, Git repo)
+      throws WorkflowNotFoundException, IOException, CWLValidationException {
+    Path localPath = repo.getRepository().getWorkTree().toPath();
+    String latestCommit = gitService.getCurrentCommitID(repo);
+
+    Path workflowFile = localPath.resolve(gitInfo.getPath()).normalize().toAbsolutePath();
+    // Prevent path traversal attacks
+    if (!workflowFile.startsWith(localPath.normalize().toAbsolutePath())) {
+      throw new WorkflowNotFoundException();
+    }
+
+    // Check workflow is readable
+    if (!Files.isReadable(workflowFile)) {
+      throw new WorkflowNotFoundException("Unable to read workflow file on disk.");
+    }
+
+    // Handling of packed workflows
+    String packedWorkflowId = gitInfo.getPackedId();
+    if (packedWorkflowId == null) {
+      if (cwlService.isPacked(workflowFile.toFile())) {
+        List<WorkflowOverview> overviews =
+            cwlService.getWorkflowOverviewsFromPacked(workflowFile.toFile());
+        if (overviews.size() == 0) {
+          throw new IOException(
+              "No workflow was found within the packed CWL file. " + gitInfo.toSummary());
+        } else {
+          // Dummy queued workflow object to return the list
+          QueuedWorkflow overviewList = new QueuedWorkflow();
+          overviewList.setWorkflowList(overviews);
+          return overviewList;
+        }
+      }
+    } else {
+      // Packed ID specified but was not found
+      if (!cwlService.isPacked(workflowFile.toFile())) {
+        throw new WorkflowNotFoundException();
+      }
+    }
+
+    // Attach to the same workflow being processed for another request
+    String canonicalKey =
+        canonicalKey(
+            gitInfo.getRepoUrl(),
+            latestCommit,
+            localPath.relativize(workflowFile).toString(),
+            packedWorkflowId);
+    QueuedWorkflow running = queuedWorkflowRepository.findRunningByCanonicalKey(canonicalKey);
+    if (running != null) {
+      return running;
+    }
+
+    Workflow basicModel = cwlService.parseWorkflowNative(workflowFile, packedWorkflowId);
+
+    // Set origin details
+    basicModel.setRetrievedOn(new Date());
+    basicModel.setRetrievedFrom(gitInfo);
+    basicModel.setLastCommit(latestCommit);
+
+    // Save the queued workflow to database, where it is picked up
+    // by a QueuedWorkflowWorker to be parsed with cwltool
+    QueuedWorkflow queuedWorkflow = new QueuedWorkflow();
+    queuedWorkflow.setTempRepresentation(basicModel);
+    queuedWorkflow.setCanonicalKey(canonicalKey);
+    try {
+      queuedWorkflowRepository.saveAndFlush(queuedWorkflow);
+    } catch (DataIntegrityViolationException ex) {
+      // Lost the race against a concurrent request for the same workflow
+      running = queuedWorkflowRepository.findRunningByCanonicalKey(canonicalKey);
+      if (running == null) {
+        throw ex;
+      }
+      return running;
+    }
+    return queuedWorkflow;
+  }
+
   /**
    * Retry the running of cwltool to create a new workflow
    *
@@ -410,14 +520,38 @@ public class WorkflowService {
   public void retryCwltool(QueuedWorkflow queuedWorkflow) {
     queuedWorkflow.setMessage(null);
     queuedWorkflow.setCwltoolStatus(CWLToolStatus.RUNNING);
-    queuedWorkflowRepository.save(queuedWorkflow);
+    queuedWorkflow.setAttempts(0);
+    queuedWorkflow.reschedule(new Date());
     try {
-      cwlToolRunner.createWorkflowFromQueued(queuedWorkflow);
-    } catch (Exception e) {
-      logger.error("Could not update workflow " + queuedWorkflow.getId() + " with cwltool.", e);
+      queuedWorkflowRepository.save(queuedWorkflow);
+    } catch (DataIntegrityViolationException ex) {
+      logger.info(
+          "Not retrying queued workflow "
+              + queuedWorkflow.getId()
+              + ", the same workflow was queued again since");
     }
   }
 
+  /**
+   * Builds the key identifying the same workflow across requests, whatever branch, tag or URL form
+   * was used to reach it
+   *
+   * @param repoUrl The URL of the repository
+   * @param commitId The resolved commit ID
+   * @param path The path to the workflow within the repository
+   * @param packedId The ID of the workflow within a packed file, if any
+   * @return The SHA-256 hash of the normalised details
+   */
+  static String canonicalKey(String repoUrl, String commitId, String path, String packedId) {
+    return DigestUtils.sha256Hex(
+        String.join(
+            "\n",
+            GitDetails.normaliseUrl(repoUrl),
+            commitId,
+            path.replace('\\', '/'),
+            Objects.toString(packedId, "")));
+  }
+
   /**
    * Find a workflow by commit ID and path
    *
@@ -478,32 +612,69 @@ public class WorkflowService {
    */
   public PathResource getWorkflowGraph(String format, GitDetails gitDetails)
       throws WorkflowNotFoundException, IOException {
-    // Determine file extension from format
-    String extension;
-    switch (format) {
-      case "svg":
-      case "png":
-        extension = format;
-        break;
-      case "xdot":
-        extension = "dot";
-        break;
-      default:
-        throw new WorkflowNotFoundException("Format " + format + " not recognized.");
-    }
+    return getGraph(format, getGraphDot(gitDetails, null));
+  }
 
-    // Get workflow
+  /**
+   * Get the DOT source of the graph of a workflow, or of one of its nested workflows, without
+   * rendering it
+   *
+   * @param gitDetails The Git details of the workflow
+   * @param stepPath The step running a nested workflow to graph instead, with steps of deeper
+   *     nested workflows separated by slashes, or null
+   * @return The DOT source
+   * @throws WorkflowNotFoundException Error getting the workflow or step
+   * @throws IOException Error generating the DOT source of a nested workflow
+   */
+  public String getGraphDot(GitDetails gitDetails, String stepPath)
+      throws WorkflowNotFoundException, IOException {
     Workflow workflow = getWorkflow(gitDetails);
     if (workflow == null) {
       throw new WorkflowNotFoundException(
           "Unable to retrieve workflow for " + gitDetails.toSummary());
     }
+    if (stepPath == null) {
+      return workflow.getVisualisationDot();
+    }
+    // Each nested workflow is stored under the hash of its own DOT, apart from its parent. Its
+    // links include the context path, which the DOT cannot add when it is drawn.
+    String graphUrl =
+        ServletUriComponentsBuilder.fromCurrentContextPath()
+            .path(workflow.getVisualisationSvg())
+            .build()
+            .getPath();
+    return cwlService.getSubworkflowDot(workflow, stepPath, graphUrl);
+  }
 
-    // Generate graph and serve the file
-    Path out =
-        graphVizService.getGraphPath(
-            workflow.getID() + "." + extension, workflow.getVisualisationDot(), format);
-    return new PathResource(out);
+  /**
+   * Get the graph of DOT source in a particular format, generating it in every format from one
+   * layout when first requested
+   *
+   * @param format The format for the graph file
+   * @param dot The DOT source
+   * @return A PathResource representing the graph
+   * @throws WorkflowNotFoundException Error getting the format
+   * @throws IOException Error generating the graph
+   */
+  public PathResource getGraph(String format, String dot)
+      throws WorkflowNotFoundException, IOException {
+    if (!GraphVizService.GRAPH_FORMATS.contains(format)) {
+      throw new WorkflowNotFoundException("Format " + format + " not recognized.");
+    }
+    Map<String, Path> graphs = graphVizService.getGraphPaths(dot, GraphVizService.GRAPH_FORMATS);
+    return new PathResource(graphs.get(format));
+  }
+
+  /**
+   * Whether the graph of DOT source is drawn with a fallback because it was too expensive to lay
+   * out, and will be drawn in full again later
+   *
+   * @param dot The DOT source
+   * @return True if the graph is simplified or a placeholder
+   * @throws IOException Error reading whether the graph is expensive
+   */
+  public boolean isGraphFallback(String dot) throws IOException {
+    return graphVizService.isFallback(dot);
   }
 
   /**
@@ -513,14 +684,23 @@ public class WorkflowService {
    */
   private void generateROBundle(Workflow workflow) {
     try {
-      ROBundleFactory.createWorkflowRO(workflow);
+      ROBundleFactory.createWorkflowRO(workflow)
+          .exceptionally(
+              ex -> {
+                logROBundleError(workflow, ex);
+                return null;
+              });
     } catch (Exception ex) {
-      logger.error(
-          "Error creating RO Bundle for workflow from " + workflow.getRetrievedFrom().toSummary(),
-          ex);
+      logROBundleError(workflow, ex);
     }
   }
 
+  private void logROBundleError(Workflow workflow, Throwable ex) {
+    logger.error(
+        "Error creating RO Bundle for workflow from " + workflow.getRetrievedFrom().toSummary(),
+        ex);
+  }
+
   /**
    * Removes a workflow and its research object bundle
    *
@@ -537,9 +717,6 @@ public class WorkflowService {
       }
     }
 
-    // Delete cached graphviz images if they exist
-    graphVizService.deleteCache(workflow.getID());
-
     // Remove the workflow from the database
     workflowRepository.delete(workflow);
 
@@ -575,6 +752,9 @@ public class WorkflowService {
           try {
             repo = gitService.getRepository(workflow.getRetrievedFrom(), safeToAccess);
             currentHead = gitService.getCurrentCommitID(repo);
+            if (safeToAccess) {
+              gitSemaphore.checkHeld(workflow.getRetrievedFrom().getRepoUrl());
+            }
           } finally {
             gitSemaphore.release(workflow.getRetrievedFrom().getRepoUrl());
             FileUtils.deleteTemporaryGitRepository(repo);
@@ -0,0 +1,14 @@
+--liquibase formatted sql
+
+--changeset cwlviewer:add-queued_workflow-lease-columns
+alter table queued_workflow
+    add column if not exists attempts         integer not null default 0,
+    add column if not exists available_at     timestamp,
+    add column if not exists lease_owner      text,
+    add column if not exists lease_expires_at timestamp;
+--rollback alter table queued_workflow drop column attempts, drop column available_at, drop column lease_owner, drop column lease_expires_at;
+
+--changeset cwlviewer:create-idx_queued_workflow_available_at-index
+create index if not exists idx_queued_workflow_available_at
+    on queued_workflow (available_at);
+--rollback drop index idx_queued_workflow_available_at;
@@ -0,0 +1,12 @@
+--liquibase formatted sql
+
+--changeset cwlviewer:create-workflow_batch-table
+create table if not exists workflow_batch
+(
+    id         varchar(36) not null
+        primary key,
+    created_on timestamp,
+    finished   boolean not null default false,
+    entries    jsonb
+);
+--rollback drop table workflow_batch;
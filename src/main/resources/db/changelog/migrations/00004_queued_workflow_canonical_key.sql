@@ -0,0 +1,12 @@
+--liquibase formatted sql
+
+--changeset cwlviewer:add-queued_workflow-canonical_key-column
+alter table queued_workflow
+    add column if not exists canonical_key text;
+--rollback alter table queued_workflow drop column canonical_key;
+
+--changeset cwlviewer:create-idx_queued_workflow_running_canonical_key-index
+create unique index if not exists idx_queued_workflow_running_canonical_key
+    on queued_workflow (canonical_key)
+    where cwltool_status #>> '{}' = 'RUNNING';
+--rollback drop index idx_queued_workflow_running_canonical_key;
@@ -0,0 +1,23 @@
+--liquibase formatted sql
+
+--changeset cwlviewer:create-workflow_index-table
+create table if not exists workflow_index
+(
+    id          bigserial not null
+        primary key,
+    workflow_id varchar(36) not null
+        references workflow (id) on delete cascade,
+    kind        varchar(16) not null,
+    value       text not null
+);
+--rollback drop table workflow_index;
+
+--changeset cwlviewer:create-idx_workflow_index_kind_value-index
+create index if not exists idx_workflow_index_kind_value
+    on workflow_index (kind, value, workflow_id);
+--rollback drop index idx_workflow_index_kind_value;
+
+--changeset cwlviewer:create-idx_workflow_index_workflow_id-index
+create index if not exists idx_workflow_index_workflow_id
+    on workflow_index (workflow_id);
+--rollback drop index idx_workflow_index_workflow_id;
@@ -0,0 +1,7 @@
+--liquibase formatted sql
+
+--changeset cwlviewer:add-workflow_batch-lease-columns
+alter table workflow_batch
+    add column if not exists lease_owner      text,
+    add column if not exists lease_expires_at timestamp;
+--rollback alter table workflow_batch drop column lease_owner, drop column lease_expires_at;
@@ -64,7 +64,8 @@ require(['jquery'],
                         setTimeout(function () {
                             checkForDone();
                         }, 3000);
-                    } else if (response.cwltoolStatus == "ERROR") {
+                    } else if (response.cwltoolStatus == "ERROR"
+                            || response.cwltoolStatus == "TIMEOUT") {
                         handleFail(response.message);
                     } else {
                         handleSuccess();
@@ -79,7 +80,39 @@ require(['jquery'],
             });
         }
 
-        checkForDone();
+        /**
+         * Follow progress pushed by the server, falling back to polling
+         * if server-sent events are not supported or the stream fails
+         */
+        function followProgress() {
+            if (!window.EventSource) {
+                checkForDone();
+                return;
+            }
+            var done = false;
+            var source = new EventSource('/queue/' + $('#workflowID').text() + '/events');
+            source.addEventListener('progress', function(event) {
+                var progress = JSON.parse(event.data);
+                if (progress.cwltoolStatus == "ERROR"
+                        || progress.cwltoolStatus == "TIMEOUT") {
+                    done = true;
+                    source.close();
+                    handleFail(progress.message);
+                } else if (progress.cwltoolStatus == "SUCCESS") {
+                    done = true;
+                    source.close();
+                    handleSuccess();
+                }
+            });
+            source.onerror = function() {
+                source.close();
+                if (!done) {
+                    checkForDone();
+                }
+            };
+        }
+
+        followProgress();
 
         // Click to show the complete error log
         $(document).on("click", "#cwllog", function() {
@@ -108,11 +108,130 @@ require(['jquery', 'bootstrap.modal', 'svg-pan-zoom', 'hammerjs', 'jquery.svg'],
             }
         };
 
-        // Loading from external URL needs to be done to enable events
-        $("#graph").svg({
-            loadURL: $("#graph").attr("data-svgurl"),
-            onLoad: enablePanZoom
-        });
+        var jsonURL = $("#graph").attr("data-jsonurl");
+        if (jsonURL) {
+            // Large graphs are drawn here from their layout instead of downloading the image
+            $.getJSON(jsonURL, function(layout) {
+                var svg = drawLayout(layout);
+                $("#graph").append(svg);
+
+                // Fullscreen view shares the drawing, without duplicating element IDs
+                var fullscreen = $(svg).clone();
+                fullscreen.find("[id]").removeAttr("id");
+                fullscreen.attr("id", "graphFullscreen");
+                $("#fullScreenGraphModal .modal-body").append(fullscreen);
+
+                enablePanZoom();
+            });
+        } else {
+            // Loading from external URL needs to be done to enable events
+            $("#graph").svg({
+                loadURL: $("#graph").attr("data-svgurl"),
+                onLoad: enablePanZoom
+            });
+        }
+
+        /**
+         * Create an SVG element with the given attributes
+         */
+        function svgElement(name, attributes) {
+            var element = document.createElementNS("http://www.w3.org/2000/svg", name);
+            for (var attribute in attributes) {
+                element.setAttribute(attribute, attributes[attribute]);
+            }
+            return element;
+        }
+
+        /**
+         * Create an SVG text element centred on a point
+         */
+        function svgText(text, x, y, fontSize) {
+            var element = svgElement("text", {
+                "text-anchor": "middle",
+                "x": x,
+                "y": y + fontSize * 0.35,
+                "font-family": "Helvetica,sans-Serif",
+                "font-size": fontSize
+            });
+            element.textContent = text;
+            return element;
+        }
+
+        /**
+         * Draw a graph layout from the JSON endpoint with the same structure
+         * as the SVG rendered by Graphviz, so selection works on either
+         * @param layout The graph layout
+         * @return The SVG element
+         */
+        function drawLayout(layout) {
+            var svg = svgElement("svg", {
+                "width": "100%",
+                "height": "100%",
+                "viewBox": "0 0 " + layout.width + " " + layout.height
+            });
+            var graph = svgElement("g", {"class": "graph"});
+            svg.appendChild(graph);
+
+            $.each(layout.nodes, function(i, node) {
+                var group = svgElement("g", {"id": "node" + (i + 1), "class": "node"});
+                var title = svgElement("title", {});
+                title.textContent = node.id;
+                group.appendChild(title);
+                var right = node.x + node.width;
+                var bottom = node.y + node.height;
+                group.appendChild(svgElement("polygon", {
+                    "fill": node.fillcolor,
+                    "stroke": "black",
+                    "points": node.x + "," + node.y + " " + right + "," + node.y + " " +
+                        right + "," + bottom + " " + node.x + "," + bottom
+                }));
+                group.appendChild(svgText(node.label, node.x + node.width / 2,
+                    node.y + node.height / 2, 10));
+                graph.appendChild(group);
+            });
+
+            $.each(layout.edges, function(i, edge) {
+                var group = svgElement("g", {"id": "edge" + (i + 1), "class": "edge"});
+                var title = svgElement("title", {});
+                title.textContent = edge.tail + "->" + edge.head;
+                group.appendChild(title);
+
+                // Points are the control points of a cubic B-spline
+                var p = edge.points;
+                var d = "M" + p[0] + "," + p[1] + "C";
+                for (var j = 2; j < p.length; j += 2) {
+                    d += p[j] + "," + p[j + 1] + " ";
+                }
+                group.appendChild(svgElement("path", {
+                    "fill": "none",
+                    "stroke": "black",
+                    "stroke-dasharray": edge.style === "dashed" ? "5,2" : "none",
+                    "d": d
+                }));
+
+                // Arrowhead continues from the end of the spline
+                var n = p.length;
+                var dx = p[n - 2] - p[n - 4];
+                var dy = p[n - 1] - p[n - 3];
+                var length = Math.sqrt(dx * dx + dy * dy) || 1;
+                var ux = dx / length, uy = dy / length;
+                var size = 7;
+                group.appendChild(svgElement("polygon", {
+                    "fill": "black",
+                    "stroke": "black",
+                    "points": (p[n - 2] + ux * size) + "," + (p[n - 1] + uy * size) + " " +
+                        (p[n - 2] - uy * size / 3) + "," + (p[n - 1] + ux * size / 3) + " " +
+                        (p[n - 2] + uy * size / 3) + "," + (p[n - 1] - ux * size / 3)
+                }));
+
+                if (edge.label) {
+                    group.appendChild(svgText(edge.label, edge.labelX, edge.labelY, 8));
+                }
+                graph.appendChild(group);
+            });
+
+            return svg;
+        }
 
         /**
          * Enable svg-pan-zoom on the graph
@@ -257,6 +376,19 @@ require(['jquery', 'bootstrap.modal', 'svg-pan-zoom', 'hammerjs', 'jquery.svg'],
             }
         }
 
+        /**
+         * Draw the graph of a nested workflow only when it is expanded
+         */
+        $("a.expand-subworkflow").click(function(event) {
+            event.preventDefault();
+            event.stopPropagation();
+            // Replace the object as not all browsers reload it when only its data changes
+            var subworkflowGraph = $('<object id="subworkflowGraph" type="image/svg+xml">')
+                .attr("data", $(this).attr("href"));
+            $("#subworkflowGraph").replaceWith(subworkflowGraph);
+            $("#subworkflowGraphModal").modal("show");
+        });
+
         /**
          * When a graph box is hovered over/clicked, highlight
          */
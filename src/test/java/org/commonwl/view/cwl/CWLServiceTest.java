@@ -23,10 +23,12 @@ import static org.apache.commons.io.FileUtils.readFileToString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
@@ -49,6 +51,7 @@ import org.apache.jena.rdf.model.RDFNode;
 import org.commonwl.view.git.GitConfig;
 import org.commonwl.view.git.GitDetails;
 import org.commonwl.view.workflow.Workflow;
+import org.commonwl.view.workflow.WorkflowNotFoundException;
 import org.commonwl.view.workflow.WorkflowOverview;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -60,6 +63,9 @@ import org.springframework.test.context.ContextConfiguration;
 @ContextConfiguration(classes = {GitConfig.class})
 public class CWLServiceTest {
 
+  private static final String GRAPH_URL =
+      "/cwlviewer/graph/svg/github.com/common-workflow-language/workflows/blob/master/nested.cwl";
+
   /** RDFService for testing */
   private RDFService rdfService;
 
@@ -106,6 +112,15 @@ public class CWLServiceTest {
     Mockito.doAnswer(queryRdf).when(rdfService).runQuery(any());
     Mockito.doAnswer(apacheLicense).when(rdfService).getLicense(any());
     Mockito.doReturn(true).when(rdfService).graphExists(any(String.class));
+    Mockito.doReturn(workflowModel).when(rdfService).getGraph(any(String.class));
+    Mockito.doAnswer(
+            invocation -> {
+              RDFService graph = Mockito.spy((RDFService) invocation.callRealMethod());
+              Mockito.doAnswer(apacheLicense).when(graph).getLicense(any());
+              return graph;
+            })
+        .when(rdfService)
+        .withGraph(any(String.class), any(Model.class));
 
     this.gitConfig = Mockito.spy(GitConfig.class);
   }
@@ -115,7 +130,9 @@ public class CWLServiceTest {
     CWLService cwlService =
         new CWLService(
             rdfService,
+            Mockito.mock(RDFBulkLoader.class),
             Mockito.mock(CWLTool.class),
+            Mockito.mock(OntologyLabelCache.class),
             Mockito.mock(GitConfig.class).licenseVocab(),
             5242880);
     Workflow dna =
@@ -133,7 +150,9 @@ public class CWLServiceTest {
     CWLService cwlService =
         new CWLService(
             rdfService,
+            Mockito.mock(RDFBulkLoader.class),
             Mockito.mock(CWLTool.class),
+            Mockito.mock(OntologyLabelCache.class),
             Mockito.mock(GitConfig.class).licenseVocab(),
             5242880);
     Workflow dna =
@@ -152,7 +171,9 @@ public class CWLServiceTest {
     CWLService cwlService =
         new CWLService(
             rdfService,
+            Mockito.mock(RDFBulkLoader.class),
             Mockito.mock(CWLTool.class),
+            Mockito.mock(OntologyLabelCache.class),
             Mockito.mock(GitConfig.class).licenseVocab(),
             5242880);
     Workflow lobSTRDraft3 =
@@ -166,7 +187,12 @@ public class CWLServiceTest {
   public void parseLobSTRv1WorkflowNative() throws Exception {
     CWLService cwlService =
         new CWLService(
-            rdfService, new CWLTool(), Mockito.mock(GitConfig.class).licenseVocab(), 5242880);
+            rdfService,
+            Mockito.mock(RDFBulkLoader.class),
+            new CWLTool(new SimpleMeterRegistry(), "cwltool", 600, 104857600, 0),
+            Mockito.mock(OntologyLabelCache.class),
+            Mockito.mock(GitConfig.class).licenseVocab(),
+            5242880);
     Workflow lobSTRv1 =
         cwlService.parseWorkflowNative(
             Paths.get("src/test/resources/cwl/lobstr-v1/lobSTR-workflow.cwl"), null);
@@ -178,7 +204,12 @@ public class CWLServiceTest {
   public void parseWorkflowInlineOptionalTypesNative() throws Exception {
     CWLService cwlService =
         new CWLService(
-            rdfService, new CWLTool(), Mockito.mock(GitConfig.class).licenseVocab(), 5242880);
+            rdfService,
+            Mockito.mock(RDFBulkLoader.class),
+            new CWLTool(new SimpleMeterRegistry(), "cwltool", 600, 104857600, 0),
+            Mockito.mock(OntologyLabelCache.class),
+            Mockito.mock(GitConfig.class).licenseVocab(),
+            5242880);
     Workflow workflow =
         cwlService.parseWorkflowNative(
             Paths.get("src/test/resources/cwl/oneline_optional_types.cwl"), null);
@@ -195,7 +226,12 @@ public class CWLServiceTest {
   public void parseWorkflowMultiInboundLins() throws Exception {
     CWLService cwlService =
         new CWLService(
-            rdfService, new CWLTool(), Mockito.mock(GitConfig.class).licenseVocab(), 5242880);
+            rdfService,
+            Mockito.mock(RDFBulkLoader.class),
+            new CWLTool(new SimpleMeterRegistry(), "cwltool", 600, 104857600, 0),
+            Mockito.mock(OntologyLabelCache.class),
+            Mockito.mock(GitConfig.class).licenseVocab(),
+            5242880);
     Workflow workflow =
         cwlService.parseWorkflowNative(
             Paths.get("src/test/resources/cwl/complex-workflow/complex-workflow-1.cwl"), null);
@@ -212,7 +248,12 @@ public class CWLServiceTest {
   public void parseWorkflowNestedArrayTypes() throws Exception {
     CWLService cwlService =
         new CWLService(
-            rdfService, new CWLTool(), Mockito.mock(GitConfig.class).licenseVocab(), 5242880);
+            rdfService,
+            Mockito.mock(RDFBulkLoader.class),
+            new CWLTool(new SimpleMeterRegistry(), "cwltool", 600, 104857600, 0),
+            Mockito.mock(OntologyLabelCache.class),
+            Mockito.mock(GitConfig.class).licenseVocab(),
+            5242880);
     Workflow workflow =
         cwlService.parseWorkflowNative(Paths.get("src/test/resources/cwl/nested_array.cwl"), null);
     assertEquals(workflow.getInputs().get("overlap_files").getType(), "File[][]");
@@ -225,7 +266,12 @@ public class CWLServiceTest {
   public void parseWorkflowDefaultNullTypes() throws Exception {
     CWLService cwlService =
         new CWLService(
-            rdfService, new CWLTool(), Mockito.mock(GitConfig.class).licenseVocab(), 5242880);
+            rdfService,
+            Mockito.mock(RDFBulkLoader.class),
+            new CWLTool(new SimpleMeterRegistry(), "cwltool", 600, 104857600, 0),
+            Mockito.mock(OntologyLabelCache.class),
+            Mockito.mock(GitConfig.class).licenseVocab(),
+            5242880);
     Workflow workflow =
         cwlService.parseWorkflowNative(Paths.get("src/test/resources/cwl/null_default.cwl"), null);
     assertNull(workflow.getInputs().get("overlap_files").getDefaultVal());
@@ -244,7 +290,13 @@ public class CWLServiceTest {
 
     // CWLService to test
     CWLService cwlService =
-        new CWLService(rdfService, mockCwlTool, gitConfig.licenseVocab(), 5242880);
+        new CWLService(
+            rdfService,
+            Mockito.mock(RDFBulkLoader.class),
+            mockCwlTool,
+            Mockito.mock(OntologyLabelCache.class),
+            gitConfig.licenseVocab(),
+            5242880);
 
     GitDetails gitInfo =
         new GitDetails(
@@ -275,6 +327,67 @@ public class CWLServiceTest {
     assertEquals("Apache License 2.0", workflow.getLicenseName());
   }
 
+  /** Graphs of nested workflows are generated from the stored RDF of the parent workflow */
+  @Test
+  public void getSubworkflowDot() throws Exception {
+    Model nestedModel = ModelFactory.createDefaultModel();
+    nestedModel.read(
+        new ByteArrayInputStream(
+            readFileToString(
+                    new File("src/test/resources/cwl/nested/nested.ttl"), StandardCharsets.UTF_8)
+                .getBytes()),
+        null,
+        "TURTLE");
+    Mockito.doReturn(nestedModel).when(rdfService).getGraph(any(String.class));
+
+    CWLService cwlService =
+        new CWLService(
+            rdfService,
+            Mockito.mock(RDFBulkLoader.class),
+            Mockito.mock(CWLTool.class),
+            Mockito.mock(OntologyLabelCache.class),
+            gitConfig.licenseVocab(),
+            5242880);
+
+    GitDetails gitInfo =
+        new GitDetails(
+            "https://github.com/common-workflow-language/workflows.git",
+            "933bf2a1a1cce32d88f88f136275535da9df0954",
+            "workflows/nested.cwl");
+    gitInfo.setPackedId("main");
+    Workflow workflow = new Workflow();
+    workflow.setRetrievedFrom(gitInfo);
+    workflow.setLastCommit("933bf2a1a1cce32d88f88f136275535da9df0954");
+
+    // Steps of the nested workflow, linking to the workflow nested within it
+    String dot = cwlService.getSubworkflowDot(workflow, "inner", GRAPH_URL);
+    assertTrue(dot.contains("  \"sort\" [label=\"sort\"];"));
+    assertTrue(
+        dot.contains(
+            "  \"deeper\" [label=\"deeper\", fillcolor=\"#F3CEA1\", URL=\""
+                + GRAPH_URL
+                + "?step=inner%2Fdeeper\"];"));
+    assertTrue(
+        cwlService.getSubworkflowDot(workflow, "inner/deeper", GRAPH_URL).contains("\"uniq\""));
+
+    // Generated once and then served from memory
+    assertEquals(dot, cwlService.getSubworkflowDot(workflow, "inner", GRAPH_URL));
+    Mockito.verify(rdfService, Mockito.times(2)).getGraph(any(String.class));
+
+    // Requested through another URL, such as the commit rather than the branch, links there
+    String commitUrl = GRAPH_URL.replace("/master/", "/933bf2a1a1cce32d88f88f136275535da9df0954/");
+    assertTrue(
+        cwlService.getSubworkflowDot(workflow, "inner", commitUrl).contains(commitUrl + "?step="));
+
+    // Only steps running workflows can be expanded
+    assertThrows(
+        WorkflowNotFoundException.class,
+        () -> cwlService.getSubworkflowDot(workflow, "count", GRAPH_URL));
+    assertThrows(
+        WorkflowNotFoundException.class,
+        () -> cwlService.getSubworkflowDot(workflow, "missing", GRAPH_URL));
+  }
+
   /** Test IOException is thrown when files are over limit */
   @Test
   public void workflowOverSingleFileSizeLimitThrowsIOException() {
@@ -287,7 +400,9 @@ public class CWLServiceTest {
               CWLService cwlService =
                   new CWLService(
                       rdfService,
+                      Mockito.mock(RDFBulkLoader.class),
                       Mockito.mock(CWLTool.class),
+                      Mockito.mock(OntologyLabelCache.class),
                       Mockito.mock(GitConfig.class).licenseVocab(),
                       0);
               cwlService.parseWorkflowNative(
@@ -306,7 +421,9 @@ public class CWLServiceTest {
     CWLService cwlService =
         new CWLService(
             Mockito.mock(RDFService.class),
+            Mockito.mock(RDFBulkLoader.class),
             Mockito.mock(CWLTool.class),
+            Mockito.mock(OntologyLabelCache.class),
             Mockito.mock(GitConfig.class).licenseVocab(),
             5242880);
 
@@ -329,7 +446,9 @@ public class CWLServiceTest {
     CWLService cwlService =
         new CWLService(
             Mockito.mock(RDFService.class),
+            Mockito.mock(RDFBulkLoader.class),
             Mockito.mock(CWLTool.class),
+            Mockito.mock(OntologyLabelCache.class),
             Mockito.mock(GitConfig.class).licenseVocab(),
             5242880);
 
@@ -355,7 +474,9 @@ public class CWLServiceTest {
               CWLService cwlService =
                   new CWLService(
                       Mockito.mock(RDFService.class),
+                      Mockito.mock(RDFBulkLoader.class),
                       Mockito.mock(CWLTool.class),
+                      Mockito.mock(OntologyLabelCache.class),
                       Mockito.mock(GitConfig.class).licenseVocab(),
                       0);
               cwlService.getWorkflowOverview(helloWorkflow);
@@ -376,7 +497,9 @@ public class CWLServiceTest {
     CWLService cwlService =
         new CWLService(
             Mockito.mock(RDFService.class),
+            Mockito.mock(RDFBulkLoader.class),
             Mockito.mock(CWLTool.class),
+            Mockito.mock(OntologyLabelCache.class),
             Mockito.mock(GitConfig.class).licenseVocab(),
             5242880);
     File packedFile = new File("src/test/resources/cwl/make_to_cwl/dna.cwl");
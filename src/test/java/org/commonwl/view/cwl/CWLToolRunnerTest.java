@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import org.commonwl.view.git.GitDetails;
+import org.commonwl.view.git.GitSemaphore;
+import org.commonwl.view.git.GitService;
+import org.commonwl.view.graphviz.GraphRenderer;
+import org.commonwl.view.researchobject.ROBundleFactory;
+import org.commonwl.view.workflow.QueueEventService;
+import org.commonwl.view.workflow.QueueEventService.Stage;
+import org.commonwl.view.workflow.QueuedWorkflow;
+import org.commonwl.view.workflow.QueuedWorkflowRepository;
+import org.commonwl.view.workflow.Workflow;
+import org.commonwl.view.workflow.WorkflowIndexService;
+import org.commonwl.view.workflow.WorkflowRepository;
+import org.eclipse.jgit.api.Git;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Answers;
+import org.mockito.Mockito;
+
+/** Test the outcomes recorded on the queue when parsing a workflow with cwltool */
+public class CWLToolRunnerTest {
+
+  private CWLService mockCwlService;
+  private QueueEventService mockQueueEventService;
+  private ROBundleFactory mockBundleFactory;
+  private GraphRenderer mockGraphRenderer;
+  private CWLToolRunner runner;
+  private QueuedWorkflow queuedWorkflow;
+
+  @TempDir public File workTree;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    mockCwlService = Mockito.mock(CWLService.class);
+    mockQueueEventService = Mockito.mock(QueueEventService.class);
+    mockBundleFactory = Mockito.mock(ROBundleFactory.class);
+    mockGraphRenderer = Mockito.mock(GraphRenderer.class);
+
+    Git repo = Mockito.mock(Git.class, Answers.RETURNS_DEEP_STUBS);
+    when(repo.getRepository().getWorkTree()).thenReturn(workTree);
+    when(repo.getRepository().getDirectory()).thenReturn(null);
+    GitService mockGitService = Mockito.mock(GitService.class);
+    when(mockGitService.getRepository(any(GitDetails.class), anyBoolean())).thenReturn(repo);
+
+    runner =
+        new CWLToolRunner(
+            Mockito.mock(WorkflowRepository.class),
+            Mockito.mock(QueuedWorkflowRepository.class),
+            mockCwlService,
+            Mockito.mock(CWLTool.class),
+            mockBundleFactory,
+            Mockito.mock(GitSemaphore.class),
+            mockGitService,
+            mockQueueEventService,
+            Mockito.mock(WorkflowIndexService.class),
+            mockGraphRenderer,
+            3,
+            30);
+
+    Workflow tempWorkflow = new Workflow();
+    tempWorkflow.setRetrievedFrom(
+        new GitDetails(
+            "https://github.com/common-workflow-language/workflows.git",
+            "master",
+            "workflows/make-to-cwl/dna.cwl"));
+    queuedWorkflow = new QueuedWorkflow();
+    queuedWorkflow.id = "queued-id";
+    queuedWorkflow.setTempRepresentation(tempWorkflow);
+    queuedWorkflow.setAttempts(1);
+  }
+
+  /** Workflows killed for running too long are marked as timed out */
+  @Test
+  public void timeoutMarksTimeout() throws Exception {
+    when(mockCwlService.parseWorkflowWithCwltool(any(), any(Path.class), any(Path.class)))
+        .thenThrow(
+            new CWLToolTimeoutException(
+                "cwltool did not finish within 600 seconds and was stopped"));
+
+    runner.createWorkflowFromQueued(queuedWorkflow).get();
+
+    assertEquals(CWLToolStatus.TIMEOUT, queuedWorkflow.getCwltoolStatus());
+    assertEquals(
+        "cwltool did not finish within 600 seconds and was stopped", queuedWorkflow.getMessage());
+    verify(mockQueueEventService)
+        .publish(
+            eq("queued-id"),
+            eq(Stage.FAILED),
+            eq(CWLToolStatus.TIMEOUT),
+            eq("cwltool did not finish within 600 seconds and was stopped"));
+  }
+
+  /** The research object bundle is only created once the graphs it includes are rendered */
+  @Test
+  public void bundleWaitsForGraphs() throws Exception {
+    Workflow parsed = new Workflow();
+    when(mockCwlService.parseWorkflowWithCwltool(any(), any(Path.class), any(Path.class)))
+        .thenReturn(parsed);
+    CompletableFuture<Void> graphs = new CompletableFuture<>();
+    when(mockGraphRenderer.renderGraphs(parsed)).thenReturn(graphs);
+    when(mockBundleFactory.createWorkflowRO(parsed))
+        .thenReturn(CompletableFuture.completedFuture(null));
+
+    runner.createWorkflowFromQueued(queuedWorkflow).get();
+    assertEquals(CWLToolStatus.SUCCESS, queuedWorkflow.getCwltoolStatus());
+    verify(mockBundleFactory, never()).createWorkflowRO(any());
+
+    graphs.complete(null);
+    verify(mockBundleFactory).createWorkflowRO(parsed);
+    verify(mockQueueEventService)
+        .publish(eq("queued-id"), eq(Stage.BUNDLE_READY), eq(CWLToolStatus.SUCCESS), eq(null));
+  }
+}
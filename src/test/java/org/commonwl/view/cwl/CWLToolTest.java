@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Runs the cwltool integration against stub executables */
+public class CWLToolTest {
+
+  private MeterRegistry meterRegistry;
+
+  @TempDir public File folder;
+
+  @BeforeEach
+  public void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  /** The standard output of a successful run is returned */
+  @Test
+  public void getRDF() throws Exception {
+    CWLTool cwlTool = new CWLTool(meterRegistry, writeExecutable("echo \"$@\"\n"), 60, 1000, 0);
+
+    String rdf = cwlTool.getRDF("workflow.cwl");
+    assertTrue(rdf.contains("--print-rdf workflow.cwl"));
+    assertEquals(
+        1,
+        meterRegistry.get("cwlviewer.cwltool.duration").tag("outcome", "success").timer().count());
+  }
+
+  /** Errors reported by cwltool are passed on */
+  @Test
+  public void validationError() throws Exception {
+    CWLTool cwlTool =
+        new CWLTool(
+            meterRegistry, writeExecutable("echo 'Invalid workflow' >&2\nexit 1\n"), 60, 1000, 0);
+
+    CWLValidationException ex =
+        assertThrows(CWLValidationException.class, () -> cwlTool.getRDF("workflow.cwl"));
+    assertFalse(ex instanceof CWLToolTimeoutException);
+    assertTrue(ex.getMessage().contains("Invalid workflow"));
+    assertEquals(
+        1, meterRegistry.get("cwlviewer.cwltool.duration").tag("outcome", "error").timer().count());
+  }
+
+  /** Runs over the time limit are killed */
+  @Test
+  public void timeout() throws Exception {
+    CWLTool cwlTool = new CWLTool(meterRegistry, writeExecutable("exec sleep 30\n"), 1, 1000, 0);
+
+    long start = System.currentTimeMillis();
+    assertThrows(CWLToolTimeoutException.class, () -> cwlTool.getRDF("workflow.cwl"));
+    assertTrue(System.currentTimeMillis() - start < 10000);
+    assertEquals(
+        1, meterRegistry.get("cwlviewer.cwltool.kills").tag("reason", "timeout").counter().count());
+    assertEquals(
+        1,
+        meterRegistry.get("cwlviewer.cwltool.duration").tag("outcome", "timeout").timer().count());
+  }
+
+  /** Runs producing more output than the limit are killed */
+  @Test
+  public void outputLimit() throws Exception {
+    CWLTool cwlTool = new CWLTool(meterRegistry, writeExecutable("exec yes\n"), 30, 1000, 0);
+
+    CWLValidationException ex =
+        assertThrows(CWLValidationException.class, () -> cwlTool.getPackedVersion("workflow.cwl"));
+    assertFalse(ex instanceof CWLToolTimeoutException);
+    assertEquals(
+        1,
+        meterRegistry
+            .get("cwlviewer.cwltool.kills")
+            .tag("reason", "output_limit")
+            .counter()
+            .count());
+    assertEquals(
+        1,
+        meterRegistry
+            .get("cwlviewer.cwltool.duration")
+            .tag("outcome", "output_limit")
+            .timer()
+            .count());
+  }
+
+  /** The memory limit is set for the process */
+  @Test
+  public void memoryLimit() throws Exception {
+    CWLTool cwlTool = new CWLTool(meterRegistry, writeExecutable("ulimit -v\n"), 60, 1000, 64);
+
+    assertEquals("65536", cwlTool.getRDF("workflow.cwl").trim());
+  }
+
+  private String writeExecutable(String script) throws IOException {
+    Path executable = new File(folder, "cwltool.sh").toPath();
+    Files.writeString(executable, "#!/bin/sh\n" + script);
+    executable.toFile().setExecutable(true);
+    return executable.toString();
+  }
+}
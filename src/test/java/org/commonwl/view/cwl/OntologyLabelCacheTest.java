@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class OntologyLabelCacheTest {
+
+  private static final String[] PRELOAD = {"src/test/resources/ontology/formats.ttl"};
+
+  /** Labels of preloaded ontologies are resolved without the triple store */
+  @Test
+  public void preloadedLabel() throws Exception {
+    RDFService rdfService = Mockito.mock(RDFService.class);
+    OntologyLabelCache cache = new OntologyLabelCache(rdfService, PRELOAD, false, 60);
+
+    assertEquals("FASTA", cache.getLabel("http://edamontology.org/format_1929"));
+    assertEquals("BAM", cache.getLabel("http://edamontology.org/format_2572"));
+    verify(rdfService, never()).ontPropertyExists(any());
+  }
+
+  /** The bundled extract of EDAM is loaded from the classpath */
+  @Test
+  public void preloadedFromClasspath() throws Exception {
+    RDFService rdfService = Mockito.mock(RDFService.class);
+    OntologyLabelCache cache =
+        new OntologyLabelCache(
+            rdfService, new String[] {"classpath:ontology/EDAM-formats.ttl"}, false, 60);
+
+    assertEquals("FASTQ", cache.getLabel("http://edamontology.org/format_1930"));
+    assertEquals("VCF", cache.getLabel("http://edamontology.org/format_3016"));
+    verify(rdfService, never()).ontPropertyExists(any());
+  }
+
+  /** Formats without a label are only looked up once */
+  @Test
+  public void missesAreCached() throws Exception {
+    RDFService rdfService = Mockito.mock(RDFService.class);
+    when(rdfService.ontPropertyExists(any())).thenReturn(false);
+    OntologyLabelCache cache = new OntologyLabelCache(rdfService, PRELOAD, false, 60);
+
+    assertNull(cache.getLabel("http://edamontology.org/format_9999"));
+    assertNull(cache.getLabel("http://edamontology.org/format_9999"));
+    verify(rdfService, times(1)).ontPropertyExists("http://edamontology.org/format_9999");
+  }
+
+  /** Labels found in the triple store are kept in memory */
+  @Test
+  public void storedLabel() throws Exception {
+    RDFService rdfService = Mockito.mock(RDFService.class);
+    when(rdfService.ontPropertyExists(any())).thenReturn(true);
+    when(rdfService.getOntLabel("http://edamontology.org/format_1930")).thenReturn("FASTQ");
+    OntologyLabelCache cache = new OntologyLabelCache(rdfService, new String[0], false, 60);
+
+    assertEquals("FASTQ", cache.getLabel("http://edamontology.org/format_1930"));
+    assertEquals("FASTQ", cache.getLabel("http://edamontology.org/format_1930"));
+    verify(rdfService, times(1)).getOntLabel("http://edamontology.org/format_1930");
+  }
+}
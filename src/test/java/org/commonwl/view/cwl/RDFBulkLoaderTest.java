@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class RDFBulkLoaderTest {
+
+  /** Models are stored straight away when bulk loading is off */
+  @Test
+  public void storeImmediately() throws Exception {
+    RDFService rdfService = Mockito.mock(RDFService.class);
+    RDFBulkLoader loader = new RDFBulkLoader(rdfService, false, 2, 60000, 4);
+    Model model = ModelFactory.createDefaultModel();
+
+    loader.store("https://example.com/a.cwl", model);
+
+    verify(rdfService, times(1)).storeModel("https://example.com/a.cwl", model);
+    verify(rdfService, never()).storeModels(anyMap());
+  }
+
+  /** Models are written together once a batch is full, and the rest on flush */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void storeInBatches() throws Exception {
+    RDFService rdfService = Mockito.mock(RDFService.class);
+    RDFBulkLoader loader = new RDFBulkLoader(rdfService, true, 2, 60000, 4);
+
+    // Storing waits until the batch of the model is written
+    CompletableFuture<Void> a =
+        CompletableFuture.runAsync(
+            () -> loader.store("https://example.com/a.cwl", ModelFactory.createDefaultModel()));
+    Thread.sleep(200);
+    assertFalse(a.isDone());
+    verify(rdfService, never()).storeModels(anyMap());
+
+    loader.store("https://example.com/b.cwl", ModelFactory.createDefaultModel());
+    a.get(10, TimeUnit.SECONDS);
+
+    CompletableFuture<Void> c =
+        CompletableFuture.runAsync(
+            () -> loader.store("https://example.com/c.cwl", ModelFactory.createDefaultModel()));
+    while (!c.isDone()) {
+      loader.flush();
+      Thread.sleep(50);
+    }
+    c.get();
+
+    ArgumentCaptor<Map<String, Model>> batches = ArgumentCaptor.forClass(Map.class);
+    verify(rdfService, times(2)).storeModels(batches.capture());
+    assertEquals(2, batches.getAllValues().get(0).size());
+    assertEquals(1, batches.getAllValues().get(1).size());
+    verify(rdfService, never()).storeModel(any(), any());
+  }
+
+  /** Batches larger than the number of concurrent runs could never fill, so are refused */
+  @Test
+  public void batchLargerThanConcurrency() {
+    RDFService rdfService = Mockito.mock(RDFService.class);
+    assertThrows(
+        IllegalArgumentException.class, () -> new RDFBulkLoader(rdfService, true, 50, 60000, 4));
+    new RDFBulkLoader(rdfService, false, 50, 60000, 4);
+  }
+
+  /** A graph which cannot be stored fails the workflow it belongs to */
+  @Test
+  public void storeFailure() throws Exception {
+    RDFService rdfService = Mockito.mock(RDFService.class);
+    doThrow(new IllegalStateException("batch")).when(rdfService).storeModels(anyMap());
+    doThrow(new IllegalStateException("graph"))
+        .when(rdfService)
+        .storeModel(eq("https://example.com/b.cwl"), any());
+    RDFBulkLoader loader = new RDFBulkLoader(rdfService, true, 2, 60000, 4);
+
+    CompletableFuture<Void> a =
+        CompletableFuture.runAsync(
+            () -> loader.store("https://example.com/a.cwl", ModelFactory.createDefaultModel()));
+    Thread.sleep(200);
+    assertThrows(
+        IllegalStateException.class,
+        () -> loader.store("https://example.com/b.cwl", ModelFactory.createDefaultModel()));
+    a.get(10, TimeUnit.SECONDS);
+    verify(rdfService).storeModel(eq("https://example.com/a.cwl"), any());
+  }
+}
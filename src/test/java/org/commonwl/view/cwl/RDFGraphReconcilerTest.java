@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.cwl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import org.commonwl.view.workflow.QueuedWorkflowRepository;
+import org.commonwl.view.workflow.WorkflowRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class RDFGraphReconcilerTest {
+
+  private static final String LIVE = "https://w3id.org/cwl/view/git/123/live.cwl";
+  private static final String QUEUED = "https://w3id.org/cwl/view/git/456/queued.cwl";
+  private static final String ORPHAN = "https://w3id.org/cwl/view/git/789/orphan.cwl";
+  private static final String ONTOLOGIES = "http://localhost:3030/cwlviewer/ontologies";
+
+  private RDFService rdfService;
+  private WorkflowRepository workflowRepository;
+  private QueuedWorkflowRepository queuedWorkflowRepository;
+
+  @BeforeEach
+  public void setUp() {
+    rdfService = Mockito.mock(RDFService.class);
+    when(rdfService.listGraphs()).thenReturn(List.of(LIVE, QUEUED, ORPHAN, ONTOLOGIES));
+    when(rdfService.countTriples(ORPHAN)).thenReturn(42L);
+
+    workflowRepository = Mockito.mock(WorkflowRepository.class);
+    when(workflowRepository.findAllIdentifiers()).thenReturn(List.of(LIVE));
+
+    queuedWorkflowRepository = Mockito.mock(QueuedWorkflowRepository.class);
+    when(queuedWorkflowRepository.findAllIdentifiers()).thenReturn(List.of(QUEUED));
+  }
+
+  /** Only the graphs of workflows neither saved nor queued are dropped */
+  @Test
+  public void dropOrphans() throws Exception {
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RDFGraphReconciler reconciler =
+        new RDFGraphReconciler(
+            rdfService, workflowRepository, queuedWorkflowRepository, meterRegistry, false, 10);
+
+    assertEquals(List.of(ORPHAN), reconciler.reconcile());
+    verify(rdfService).dropGraphs(List.of(ORPHAN));
+    assertEquals(1, meterRegistry.counter("cwlviewer.rdf.gc.graphs").count());
+    assertEquals(42, meterRegistry.counter("cwlviewer.rdf.gc.triples").count());
+  }
+
+  /** Nothing is dropped in dry-run mode */
+  @Test
+  public void dryRun() throws Exception {
+    MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    RDFGraphReconciler reconciler =
+        new RDFGraphReconciler(
+            rdfService, workflowRepository, queuedWorkflowRepository, meterRegistry, true, 10);
+
+    assertEquals(List.of(ORPHAN), reconciler.reconcile());
+    verify(rdfService, never()).dropGraphs(anyCollection());
+    assertEquals(1, meterRegistry.get("cwlviewer.rdf.gc.orphans").gauge().value());
+  }
+}
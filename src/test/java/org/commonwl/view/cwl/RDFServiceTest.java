@@ -20,7 +20,19 @@
 package org.commonwl.view.cwl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -74,4 +86,58 @@ public class RDFServiceTest {
         rdfService.labelFromName(
             "https://cdn.rawgit.com/common-workflow-language/workflows/549c973ccc01781595ce562dea4cedc6c9540fe0/workflows/make-to-cwl/dna.cwl#main/outfile"));
   }
+
+  /** Test storing and querying a graph in an embedded dataset */
+  @Test
+  public void embeddedStore() throws Exception {
+    RDFService embedded =
+        new RDFService(
+            "http://localhost:3030/cwlviewer/", Optional.of(DatasetFactory.createTxnMem()));
+    String workflowURI = "https://example.com/workflows/hello.cwl";
+    assertTrue(embedded.isEmbedded());
+    assertFalse(embedded.graphExists(workflowURI));
+
+    Model model = ModelFactory.createDefaultModel();
+    Resource workflow = model.createResource(workflowURI);
+    workflow.addProperty(RDF.type, model.createResource("https://w3id.org/cwl/cwl#Workflow"));
+    workflow.addProperty(RDFS.label, "Hello");
+    embedded.storeModel(workflowURI, model);
+
+    assertTrue(embedded.graphExists(workflowURI));
+    ResultSet labelAndDoc = embedded.getLabelAndDoc(workflowURI);
+    assertTrue(labelAndDoc.hasNext());
+    assertEquals("Hello", labelAndDoc.next().get("label").toString());
+    assertTrue(
+        new String(embedded.getModel(workflowURI, "TURTLE"), StandardCharsets.UTF_8)
+            .contains("Hello"));
+
+    ByteArrayOutputStream export = new ByteArrayOutputStream();
+    embedded.export(export);
+    assertTrue(export.toString(StandardCharsets.UTF_8).contains("<" + workflowURI + ">"));
+  }
+
+  /** Test looking up the authors of files in a graph */
+  @Test
+  public void authorIndex() throws Exception {
+    RDFService embedded =
+        new RDFService(
+            "http://localhost:3030/cwlviewer/", Optional.of(DatasetFactory.createTxnMem()));
+    String workflowURI = "https://w3id.org/cwl/view/git/123/workflows/Hello.cwl";
+    String schema = "http://schema.org/";
+
+    Model model = ModelFactory.createDefaultModel();
+    Resource author = model.createResource();
+    author.addProperty(RDF.type, model.createResource(schema + "Person"));
+    author.addProperty(model.createProperty(schema, "name"), "Jane Doe");
+    author.addProperty(
+        model.createProperty(schema, "id"),
+        model.createResource("https://orcid.org/0000-0002-1825-0097"));
+    model.createResource(workflowURI).addProperty(model.createProperty(schema, "author"), author);
+    embedded.storeModel(workflowURI, model);
+
+    AuthorIndex authors = embedded.getAuthorIndex(workflowURI);
+    assertEquals(1, authors.getAuthors("workflows/hello.cwl").size());
+    assertEquals("Jane Doe", authors.getAuthors("/Hello.cwl").get(0).get("name").toString());
+    assertTrue(authors.getAuthors("workflows/other.cwl").isEmpty());
+  }
 }
@@ -20,9 +20,17 @@
 package org.commonwl.view.git;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.util.Optional;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 
 public class GitSemaphoreTest {
 
@@ -44,4 +52,48 @@ public class GitSemaphoreTest {
     assertFalse(third);
     assertTrue(fourth);
   }
+
+  @Test
+  public void clusterLock() throws Exception {
+
+    GitLockProvider lockProvider = Mockito.mock(GitLockProvider.class);
+    when(lockProvider.tryLock(anyString())).thenReturn(true, false);
+    GitSemaphore sem = new GitSemaphore(Optional.of(lockProvider));
+
+    // Lock is only taken by the first local thread
+    boolean first = sem.acquire("https://github.com/common-workflow-language/cwlviewer.git");
+    boolean second = sem.acquire("https://github.com/common-workflow-language/cwlviewer.git");
+    sem.release("https://github.com/common-workflow-language/cwlviewer.git");
+    sem.release("https://github.com/common-workflow-language/cwlviewer.git");
+
+    // Lock held by another node
+    boolean third = sem.acquire("https://github.com/common-workflow-language/cwltool.git");
+    sem.release("https://github.com/common-workflow-language/cwltool.git");
+
+    assertTrue(first);
+    assertFalse(second);
+    assertFalse(third);
+    verify(lockProvider, times(2)).tryLock(anyString());
+    verify(lockProvider, times(1)).unlock(anyString());
+  }
+
+  @Test
+  public void lostClusterLock() throws Exception {
+
+    GitLockProvider lockProvider = Mockito.mock(GitLockProvider.class);
+    when(lockProvider.tryLock(anyString())).thenReturn(true);
+    when(lockProvider.isHeld(anyString())).thenReturn(true, false);
+    GitSemaphore sem = new GitSemaphore(Optional.of(lockProvider));
+
+    assertTrue(sem.acquire("https://github.com/common-workflow-language/cwlviewer.git"));
+    sem.checkHeld("https://github.com/common-workflow-language/cwlviewer.git");
+    assertThrows(
+        IOException.class,
+        () -> sem.checkHeld("https://github.com/common-workflow-language/cwlviewer.git"));
+    sem.release("https://github.com/common-workflow-language/cwlviewer.git");
+
+    // Repositories not locked against other nodes are not checked
+    sem.checkHeld("https://github.com/common-workflow-language/cwltool.git");
+    verify(lockProvider, times(2)).isHeld(anyString());
+  }
 }
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.git;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+public class PostgresGitLockProviderTest {
+
+  private static final String REPO_KEY = "0123456789abcdef0123456789abcdef01234567";
+
+  @Test
+  public void lostConnection() throws Exception {
+
+    ResultSet locked = Mockito.mock(ResultSet.class);
+    when(locked.next()).thenReturn(true);
+    when(locked.getBoolean(1)).thenReturn(true);
+    PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+    when(statement.executeQuery()).thenReturn(locked);
+    Connection dropped = Mockito.mock(Connection.class);
+    when(dropped.prepareStatement(anyString())).thenReturn(statement);
+    when(dropped.isValid(1)).thenReturn(true, false);
+    Connection reconnected = Mockito.mock(Connection.class);
+    when(reconnected.isValid(1)).thenReturn(true);
+    DataSource dataSource = Mockito.mock(DataSource.class);
+    when(dataSource.getConnection()).thenReturn(dropped, reconnected);
+
+    PostgresGitLockProvider lockProvider = new PostgresGitLockProvider(dataSource);
+    assertTrue(lockProvider.tryLock(REPO_KEY));
+    assertTrue(lockProvider.isHeld(REPO_KEY));
+
+    // Released by the database along with the connection
+    assertFalse(lockProvider.isHeld(REPO_KEY));
+    lockProvider.unlock(REPO_KEY);
+    verify(dropped).close();
+    verify(reconnected, never()).prepareStatement(anyString());
+  }
+}
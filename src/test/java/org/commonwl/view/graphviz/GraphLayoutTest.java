@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.graphviz;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.Test;
+
+public class GraphLayoutTest {
+
+  /** Read the layout of a graph from the plain output of dot */
+  @Test
+  public void fromPlain() throws Exception {
+    GraphLayout layout =
+        GraphLayout.fromPlain(
+            Files.readString(Paths.get("src/test/resources/graphviz/testWorkflow.plain")));
+
+    // Converted to points
+    assertEquals(228.0, layout.getWidth());
+    assertEquals(166.0, layout.getHeight());
+
+    // Nodes positioned by their top left corner
+    assertEquals(5, layout.getNodes().size());
+    GraphLayout.Node input1 = layout.getNodes().get(0);
+    assertEquals("input1", input1.getId());
+    assertEquals("First Input", input1.getLabel());
+    assertEquals(8.0, input1.getX());
+    assertEquals(9.0, input1.getY());
+    assertEquals(58.0, input1.getWidth());
+    assertEquals(18.0, input1.getHeight());
+    assertEquals("#94DDF4", input1.getFillcolor());
+
+    // Quotes and line breaks in strings
+    assertEquals("\"aligned.sorted.bam\"", layout.getNodes().get(3).getLabel());
+    assertEquals("Single Output", layout.getNodes().get(4).getLabel());
+
+    // Invisible edges are left out
+    assertEquals(2, layout.getEdges().size());
+    GraphLayout.Edge labelled = layout.getEdges().get(0);
+    assertEquals("input1", labelled.getTail());
+    assertEquals("step1", labelled.getHead());
+    assertEquals(8, labelled.getPoints().length);
+    assertEquals(37.0, labelled.getPoints()[0]);
+    assertEquals(27.0, labelled.getPoints()[1]);
+    assertEquals("toolinput", labelled.getLabel());
+    assertEquals(58.3, labelled.getLabelX());
+    assertEquals(54.4, labelled.getLabelY());
+    assertNull(labelled.getStyle());
+    assertNull(layout.getEdges().get(1).getLabel());
+  }
+
+  /** Output which is not a complete layout is rejected */
+  @Test
+  public void fromPlainMalformed() {
+    assertThrows(IOException.class, () -> GraphLayout.fromPlain("graph 1 2.0 2.0\n"));
+    assertThrows(IOException.class, () -> GraphLayout.fromPlain("graph 1 2.0\nstop\n"));
+    assertThrows(IOException.class, () -> GraphLayout.fromPlain("digraph G {}\n"));
+  }
+}
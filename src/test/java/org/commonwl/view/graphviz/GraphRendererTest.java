@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.graphviz;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.HashMap;
+import org.commonwl.view.workflow.Workflow;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+/** Test the separate async method rendering the graphs of a workflow */
+public class GraphRendererTest {
+
+  private Workflow workflow;
+
+  @BeforeEach
+  public void setUp() {
+    workflow = new Workflow("Workflow", "Doc", new HashMap<>(), new HashMap<>(), new HashMap<>());
+    workflow.id = "workflow-id";
+    workflow.setVisualisationDot("digraph workflow {}");
+  }
+
+  /** Graphs are rendered in every served format */
+  @Test
+  public void graphsRendered() throws Exception {
+    GraphVizService mockGraphVizService = Mockito.mock(GraphVizService.class);
+
+    assertTrue(new GraphRenderer(mockGraphVizService).renderGraphs(workflow).isDone());
+
+    verify(mockGraphVizService).getGraphPaths("digraph workflow {}", GraphVizService.GRAPH_FORMATS);
+  }
+
+  /** Graphs which failed to render are reported */
+  @Test
+  public void failedGraphsReported() throws Exception {
+    GraphVizService mockGraphVizService = Mockito.mock(GraphVizService.class);
+    when(mockGraphVizService.getGraphPaths(any(), eq(GraphVizService.GRAPH_FORMATS)))
+        .thenThrow(new IOException("dot exited with status 1"));
+
+    GraphRenderer renderer = new GraphRenderer(mockGraphVizService);
+
+    assertThrows(IOException.class, () -> renderer.renderGraphs(workflow));
+  }
+}
@@ -19,19 +19,30 @@
 
 package org.commonwl.view.graphviz;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
 import javax.imageio.ImageIO;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -39,7 +50,10 @@ import org.junit.jupiter.api.io.TempDir;
 
 public class GraphVizServiceTest {
 
+  private static final long QUOTA = 100 * 1024 * 1024;
+
   private GraphVizService graphVizService;
+  private MeterRegistry meterRegistry;
 
   /** Use a temporary directory for testing */
   @TempDir public File graphvizFolder;
@@ -47,7 +61,9 @@ public class GraphVizServiceTest {
   /** Generate a service for testing using the temporary folder */
   @BeforeEach
   public void setUp() throws Exception {
-    graphVizService = new GraphVizService(graphvizFolder.getAbsolutePath());
+    meterRegistry = new SimpleMeterRegistry();
+    graphVizService =
+        new GraphVizService(graphvizFolder.getAbsolutePath(), meterRegistry, "dot", 2, QUOTA, 60);
   }
 
   /** Check that a valid png file can be generated from DOT source */
@@ -56,7 +72,7 @@ public class GraphVizServiceTest {
 
     Path dotSource = Paths.get("src/test/resources/graphviz/testWorkflow.dot");
 
-    Path png = graphVizService.getGraphPath("workflowid.png", readFileToString(dotSource), "png");
+    Path png = graphVizService.getGraphPath(readFileToString(dotSource), "png");
     BufferedImage actualImg = ImageIO.read(png.toFile());
 
     // Check a valid image has been created
@@ -100,7 +116,7 @@ public class GraphVizServiceTest {
 
     Path dotSource = Paths.get("src/test/resources/graphviz/testWorkflow.dot");
 
-    Path svg = graphVizService.getGraphPath("workflowid.svg", readFileToString(dotSource), "svg");
+    Path svg = graphVizService.getGraphPath(readFileToString(dotSource), "svg");
     String svgString = readFileToString(svg);
     assertTrue(svgString.contains("Generated by graphviz"));
   }
@@ -121,11 +137,22 @@ public class GraphVizServiceTest {
   public void getGraphAsXDot() throws Exception {
 
     Path dotSource = Paths.get("src/test/resources/graphviz/testWorkflow.dot");
-    Path xdot = graphVizService.getGraphPath("workflowid.dot", readFileToString(dotSource), "xdot");
+    Path xdot = graphVizService.getGraphPath(readFileToString(dotSource), "xdot");
     String xdotString = readFileToString(xdot);
     assertTrue(xdotString.length() > 0);
   }
 
+  /** Check that the layout of a graph can be read from the plain output of dot */
+  @Test
+  public void getGraphLayout() throws Exception {
+    Path dotSource = Paths.get("src/test/resources/graphviz/testWorkflow.dot");
+    Path plain = graphVizService.getGraphPath(readFileToString(dotSource), "plain");
+    GraphLayout layout = GraphLayout.fromPlain(readFileToString(plain));
+    assertEquals(6, layout.getNodes().size());
+    assertEquals(6, layout.getEdges().size());
+    assertTrue(layout.getNodes().stream().anyMatch(node -> node.getLabel().equals("First Input")));
+  }
+
   /** Check that an xdot stream can be generated from DOT source */
   @Test
   public void getGraphAsXDotStream() throws Exception {
@@ -135,18 +162,267 @@ public class GraphVizServiceTest {
     assertTrue(xdotString.length() > 0);
   }
 
-  /** Check that files in the graphVizFolder can be deleted with deleteCache() */
+  /** Check that every format is generated from a single layout and stored together */
+  @Test
+  public void getGraphPathsFromOneLayout() throws Exception {
+    Path dotSource = Paths.get("src/test/resources/graphviz/testWorkflow.dot");
+
+    Map<String, Path> graphs =
+        graphVizService.getGraphPaths(readFileToString(dotSource), GraphVizService.GRAPH_FORMATS);
+
+    assertEquals(graphs.get("png").getParent(), graphs.get("xdot").getParent());
+    assertTrue(graphs.get("xdot").getFileName().toString().endsWith(".dot"));
+    BufferedImage actualImg = ImageIO.read(graphs.get("png").toFile());
+    assertTrue(actualImg.getWidth() > 0);
+    assertTrue(readFileToString(graphs.get("svg")).contains("Generated by graphviz"));
+    assertTrue(readFileToString(graphs.get("xdot")).contains("_draw_"));
+
+    // One layout followed by one drawing per format
+    assertEquals(
+        1, meterRegistry.get("cwlviewer.graphviz.render").tag("format", "dot").timer().count());
+    assertEquals(
+        1, meterRegistry.get("cwlviewer.graphviz.render").tag("format", "png").timer().count());
+
+    // Stored files are not rendered again
+    graphVizService.getGraphPaths(readFileToString(dotSource), GraphVizService.GRAPH_FORMATS);
+    assertEquals(4, meterRegistry.get("cwlviewer.graphviz.queue").timer().count());
+  }
+
+  /** Check that concurrent requests for the same graph share a single render */
+  @Test
+  public void concurrentRendersAreShared() throws Exception {
+    // Slow enough for both requests to overlap
+    Path dot = writeExecutable("sleep 1\nexec dot \"$@\"\n");
+    graphVizService =
+        new GraphVizService(
+            graphvizFolder.getAbsolutePath(), meterRegistry, dot.toString(), 2, QUOTA, 60);
+    String dotSource = readFileToString(Paths.get("src/test/resources/graphviz/testWorkflow.dot"));
+
+    CompletableFuture<Map<String, Path>> first =
+        CompletableFuture.supplyAsync(() -> getGraphPaths(dotSource));
+    CompletableFuture<Map<String, Path>> second =
+        CompletableFuture.supplyAsync(() -> getGraphPaths(dotSource));
+
+    assertEquals(first.get(), second.get());
+    assertEquals(
+        1, meterRegistry.get("cwlviewer.graphviz.render").tag("format", "dot").timer().count());
+  }
+
+  /** Check that renders are timed by format and outcome */
+  @Test
+  public void renderIsTimed() throws Exception {
+    Path dotSource = Paths.get("src/test/resources/graphviz/testWorkflow.dot");
+    graphVizService.getGraphStream(readFileToString(dotSource), "svg").close();
+
+    assertEquals(
+        1,
+        meterRegistry
+            .get("cwlviewer.graphviz.render")
+            .tag("format", "svg")
+            .tag("outcome", "success")
+            .timer()
+            .count());
+    assertEquals(1, meterRegistry.get("cwlviewer.graphviz.queue").timer().count());
+  }
+
+  /** Check that invalid DOT source is reported rather than rendered as an empty graph */
+  @Test
+  public void invalidDotFails() throws Exception {
+    assertThrows(IOException.class, () -> graphVizService.getGraphStream("digraph {", "png"));
+    assertEquals(
+        1,
+        meterRegistry
+            .get("cwlviewer.graphviz.render")
+            .tag("format", "png")
+            .tag("outcome", "error")
+            .timer()
+            .count());
+  }
+
+  /** Check that identical DOT sources share the stored graph */
+  @Test
+  public void graphsAreSharedByDot() throws Exception {
+    String dot = readFileToString(Paths.get("src/test/resources/graphviz/testWorkflow.dot"));
+
+    Path first = graphVizService.getGraphPath(dot, "png");
+    Path second = graphVizService.getGraphPath(dot, "png");
+    Path other = graphVizService.getGraphPath(dot.replace("#eeeeee", "#ffffff"), "png");
+
+    assertEquals(first, second);
+    assertNotEquals(first, other);
+    assertEquals(
+        1, meterRegistry.get("cwlviewer.graphviz.cache").tag("result", "hit").counter().count());
+  }
+
+  /** Check that text formats are also stored compressed, and images are not */
   @Test
-  public void deleteCache() throws Exception {
+  public void textGraphsAreStoredCompressed() throws Exception {
+    String dot = readFileToString(Paths.get("src/test/resources/graphviz/testWorkflow.dot"));
+    Map<String, Path> graphs = graphVizService.getGraphPaths(dot, List.of("svg", "png"));
 
-    File png = new File(graphvizFolder, "exampleid.png");
-    File svg = new File(graphvizFolder, "exampleid.svg");
-    File dot = new File(graphvizFolder, "exampleid.dot");
+    Path compressed = GraphVizService.getCompressedPath(graphs.get("svg"));
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(compressed))) {
+      assertArrayEquals(Files.readAllBytes(graphs.get("svg")), in.readAllBytes());
+    }
+    assertFalse(Files.exists(GraphVizService.getCompressedPath(graphs.get("png"))));
+
+    // Compressed copy is restored if missing when the graph is used
+    Files.delete(compressed);
+    graphVizService.getGraphPath(dot, "svg");
+    assertTrue(Files.exists(compressed));
+  }
+
+  /** Check that the least recently used graphs are deleted when over the quota */
+  @Test
+  public void leastRecentGraphsAreEvicted() throws Exception {
+    graphVizService =
+        new GraphVizService(graphvizFolder.getAbsolutePath(), meterRegistry, "dot", 2, 1, 60);
+    File old = new File(graphvizFolder, "graph-old.png");
+    Files.write(old.toPath(), new byte[] {1, 2, 3});
+    old.setLastModified(System.currentTimeMillis() - 3600 * 1000);
+    File unrelated = new File(graphvizFolder, "unrelated.png");
+    Files.write(unrelated.toPath(), new byte[] {1, 2, 3});
+    unrelated.setLastModified(System.currentTimeMillis() - 3600 * 1000);
+
+    String dot = readFileToString(Paths.get("src/test/resources/graphviz/testWorkflow.dot"));
+    Path png = graphVizService.getGraphPath(dot, "png");
+
+    // Recently rendered graphs are kept even over the quota
+    assertTrue(Files.exists(png));
+    assertFalse(old.exists());
+    assertTrue(unrelated.exists());
+    assertEquals(1, meterRegistry.get("cwlviewer.graphviz.cache.evictions").counter().count());
+  }
+
+  /** Check that graphs running over the time budget are remembered and simplified */
+  @Test
+  public void expensiveGraphsAreSimplified() throws Exception {
+    // Only the simplified layout finishes within the budget
+    Path dot =
+        writeExecutable("case \"$*\" in *nslimit*) exec dot \"$@\";; esac\nexec sleep 10\n");
+    graphVizService =
+        new GraphVizService(
+            graphvizFolder.getAbsolutePath(), meterRegistry, dot.toString(), 2, QUOTA, 1);
+    String dotSource = readFileToString(Paths.get("src/test/resources/graphviz/testWorkflow.dot"));
+
+    Path svg = graphVizService.getGraphPath(dotSource, "svg");
+    assertTrue(readFileToString(svg).contains("Generated by graphviz"));
+    assertEquals(
+        1,
+        meterRegistry.get("cwlviewer.graphviz.budget").tag("result", "exceeded").counter().count());
+    assertEquals(
+        1,
+        meterRegistry.get("cwlviewer.graphviz.render").tag("outcome", "timeout").timer().count());
+    assertTrue(graphVizService.isFallback(dotSource));
+
+    // Full layout is not tried again
+    graphVizService.getGraphStream(dotSource, "png");
+    assertEquals(
+        1,
+        meterRegistry.get("cwlviewer.graphviz.budget").tag("result", "skipped").counter().count());
+    assertEquals(
+        1,
+        meterRegistry.get("cwlviewer.graphviz.render").tag("outcome", "timeout").timer().count());
+  }
+
+  /** Check that graphs are laid out in full again once their expensive mark expires */
+  @Test
+  public void expensiveMarksExpire() throws Exception {
+    String dot = readFileToString(Paths.get("src/test/resources/graphviz/testWorkflow.dot"));
+    String svgName = GraphVizService.getFileName(dot, "svg");
+    Path fallback = new File(graphvizFolder, svgName).toPath();
+    Files.writeString(fallback, "simplified");
+    File expensive = new File(graphvizFolder, svgName.replace(".svg", ".expensive"));
+    Files.write(expensive.toPath(), new byte[0]);
+
+    // Recently marked graphs keep their fallback
+    assertTrue(graphVizService.isFallback(dot));
+    assertEquals("simplified", readFileToString(graphVizService.getGraphPath(dot, "svg")));
 
-    graphVizService.deleteCache("exampleid");
+    expensive.setLastModified(System.currentTimeMillis() - 2 * 24 * 3600 * 1000);
+    assertFalse(graphVizService.isFallback(dot));
+    Path svg = graphVizService.getGraphPath(dot, "svg");
+    assertTrue(readFileToString(svg).contains("Generated by graphviz"));
+    assertFalse(expensive.exists());
+  }
+
+  /** Check that the layout and the drawing of every format share one time budget */
+  @Test
+  public void renderSharesOneBudget() throws Exception {
+    // Each full layout dot process fits in the budget, but not all three of them
+    Path dot =
+        writeExecutable(
+            "case \"$*\" in *nslimit*) exec dot \"$@\";; esac\nsleep 0.6\nexec dot \"$@\"\n");
+    graphVizService =
+        new GraphVizService(
+            graphvizFolder.getAbsolutePath(), meterRegistry, dot.toString(), 2, QUOTA, 1);
+    String dotSource = readFileToString(Paths.get("src/test/resources/graphviz/testWorkflow.dot"));
+
+    graphVizService.getGraphPaths(dotSource, List.of("svg", "png"));
+    assertEquals(
+        1,
+        meterRegistry.get("cwlviewer.graphviz.budget").tag("result", "exceeded").counter().count());
+  }
+
+  /** Check that graphs rendered without being stored are not marked as expensive */
+  @Test
+  public void streamedGraphsAreNotRemembered() throws Exception {
+    // Only the simplified layout finishes within the budget
+    Path dot =
+        writeExecutable("case \"$*\" in *nslimit*) exec dot \"$@\";; esac\nexec sleep 10\n");
+    graphVizService =
+        new GraphVizService(
+            graphvizFolder.getAbsolutePath(), meterRegistry, dot.toString(), 2, QUOTA, 1);
+    String dotSource = readFileToString(Paths.get("src/test/resources/graphviz/testWorkflow.dot"));
+
+    String svg = readStreamToString(graphVizService.getGraphStream(dotSource, "svg"));
+    assertTrue(svg.contains("Generated by graphviz"));
+    assertEquals(
+        1,
+        meterRegistry.get("cwlviewer.graphviz.budget").tag("result", "exceeded").counter().count());
+    String[] markers = graphvizFolder.list((folder, name) -> name.endsWith(".expensive"));
+    assertEquals(0, markers.length);
+  }
+
+  /** Check that a placeholder is drawn if the simplified layout also runs over the budget */
+  @Test
+  public void placeholderForGraphsTooExpensiveToSimplify() throws Exception {
+    // Only the placeholder finishes within the budget
+    Path dot =
+        writeExecutable(
+            "input=$(cat)\n"
+                + "case \"$input\" in\n"
+                + "  *placeholder*) printf '%s' \"$input\" | exec dot \"$@\";;\n"
+                + "esac\n"
+                + "exec sleep 10\n");
+    graphVizService =
+        new GraphVizService(
+            graphvizFolder.getAbsolutePath(), meterRegistry, dot.toString(), 2, QUOTA, 1);
+    String dotSource = readFileToString(Paths.get("src/test/resources/graphviz/testWorkflow.dot"));
+
+    String svg = readStreamToString(graphVizService.getGraphStream(dotSource, "svg"));
+    assertTrue(svg.contains("too large to draw"));
+    assertEquals(
+        1,
+        meterRegistry
+            .get("cwlviewer.graphviz.budget")
+            .tag("result", "simplified_exceeded")
+            .counter()
+            .count());
+  }
+
+  private Map<String, Path> getGraphPaths(String dot) {
+    try {
+      return graphVizService.getGraphPaths(dot, List.of("svg", "png"));
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
 
-    assertFalse(png.exists());
-    assertFalse(svg.exists());
-    assertFalse(dot.exists());
+  private Path writeExecutable(String script) throws IOException {
+    Path executable = new File(graphvizFolder, "dot.sh").toPath();
+    Files.writeString(executable, "#!/bin/sh\n" + script);
+    executable.toFile().setExecutable(true);
+    return executable;
   }
 }
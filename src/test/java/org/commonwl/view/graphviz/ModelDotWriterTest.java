@@ -25,6 +25,7 @@ import java.io.File;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import org.apache.commons.io.FileUtils;
 import org.commonwl.view.cwl.CWLElement;
@@ -106,4 +107,31 @@ public class ModelDotWriterTest {
     assertEquals(
         FileUtils.readFileToString(expectedDot, StandardCharsets.UTF_8), dotSource.toString());
   }
+
+  /** Test that the DOT source does not depend on the order of the workflow maps */
+  @Test
+  public void writeGraphIsCanonical() throws Exception {
+    StringWriter expected = new StringWriter();
+    new ModelDotWriter(expected).writeGraph(testWorkflow);
+
+    // Same workflow with every map in reverse order
+    Map<String, CWLElement> inputs = new LinkedHashMap<>();
+    inputs.put("input2", testWorkflow.getInputs().get("input2"));
+    inputs.put("input1", testWorkflow.getInputs().get("input1"));
+    Map<String, CWLStep> steps = new LinkedHashMap<>();
+    steps.put("step2", testWorkflow.getSteps().get("step2"));
+    steps.put("step1", testWorkflow.getSteps().get("step1"));
+    steps.put("default1", testWorkflow.getSteps().get("default1"));
+    Workflow reordered =
+        new Workflow("Example Workflow", "Description", inputs, testWorkflow.getOutputs(), steps);
+
+    StringWriter actual = new StringWriter();
+    new ModelDotWriter(actual).writeGraph(reordered);
+
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(DotWriter.hash(expected.toString()), DotWriter.hash(actual.toString()));
+    assertEquals(
+        DotWriter.hash(expected.toString()),
+        DotWriter.hash(expected.toString().replace("\n", "\r\n")));
+  }
 }
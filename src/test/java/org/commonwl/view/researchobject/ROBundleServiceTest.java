@@ -32,6 +32,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.jena.query.ResultSet;
 import org.apache.taverna.robundle.Bundle;
@@ -39,6 +40,7 @@ import org.apache.taverna.robundle.Bundles;
 import org.apache.taverna.robundle.manifest.Manifest;
 import org.apache.taverna.robundle.manifest.PathAnnotation;
 import org.apache.taverna.robundle.manifest.PathMetadata;
+import org.commonwl.view.cwl.AuthorIndex;
 import org.commonwl.view.cwl.CWLTool;
 import org.commonwl.view.cwl.RDFService;
 import org.commonwl.view.git.GitDetails;
@@ -80,12 +82,11 @@ public class ROBundleServiceTest {
 
     // Mock Graphviz service
     GraphVizService mockGraphvizService = Mockito.mock(GraphVizService.class);
-    when(mockGraphvizService.getGraphPath(any(String.class), any(String.class), any(String.class)))
-        .thenReturn(Paths.get("src/test/resources/graphviz/testVis.png"))
-        .thenReturn(Paths.get("src/test/resources/graphviz/testVis.svg"));
-    when(mockGraphvizService.getGraphStream(any(), any(String.class)))
-        .thenReturn(getClass().getResourceAsStream("/graphviz/testVis.png"))
-        .thenReturn(getClass().getResourceAsStream("/graphviz/testVis.svg"));
+    when(mockGraphvizService.getGraphPaths(any(), any()))
+        .thenReturn(
+            Map.of(
+                "png", Paths.get("src/test/resources/graphviz/testVis.png"),
+                "svg", Paths.get("src/test/resources/graphviz/testVis.svg")));
 
     // Mock CWLTool
     CWLTool mockCwlTool = Mockito.mock(CWLTool.class);
@@ -95,7 +96,7 @@ public class ROBundleServiceTest {
     ResultSet emptyResult = Mockito.mock(ResultSet.class);
     when(emptyResult.hasNext()).thenReturn(false);
     RDFService mockRdfService = Mockito.mock(RDFService.class);
-    when(mockRdfService.getAuthors(any(String.class), any(String.class))).thenReturn(emptyResult);
+    when(mockRdfService.getAuthorIndex(any(String.class))).thenReturn(new AuthorIndex(emptyResult));
     when(mockRdfService.graphExists(any(String.class))).thenReturn(true);
     when(mockRdfService.getModel(any(String.class), any(String.class)))
         .thenReturn("@prefix cwl: <https://w3id.org/cwl/cwl#> .".getBytes());
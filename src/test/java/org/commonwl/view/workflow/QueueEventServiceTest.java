@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import java.util.List;
+import org.commonwl.view.cwl.CWLToolStatus;
+import org.commonwl.view.workflow.QueueEventService.Stage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/** Test the progress of queued workflows pushed through the server-sent events endpoint */
+public class QueueEventServiceTest {
+
+  private static final long TIMEOUT_MILLIS = 60000;
+
+  private QueuedWorkflowRepository mockRepository;
+  private WorkflowService mockWorkflowService;
+  private QueueEventService queueEventService;
+  private MockMvc mockMvc;
+  private QueuedWorkflow queuedWorkflow;
+
+  @BeforeEach
+  public void setUp() {
+    mockRepository = Mockito.mock(QueuedWorkflowRepository.class);
+    mockWorkflowService = Mockito.mock(WorkflowService.class);
+    queueEventService = new QueueEventService(mockRepository, TIMEOUT_MILLIS);
+    mockMvc =
+        MockMvcBuilders.standaloneSetup(
+                new WorkflowJSONController(
+                    Mockito.mock(WorkflowFormValidator.class),
+                    mockWorkflowService,
+                    queueEventService))
+            .build();
+
+    queuedWorkflow = new QueuedWorkflow();
+    queuedWorkflow.id = "123";
+    when(mockWorkflowService.getQueuedWorkflow("123")).thenReturn(queuedWorkflow);
+  }
+
+  /** Progress is pushed until the research object bundle is ready */
+  @Test
+  public void publishUntilBundleReady() throws Exception {
+    MvcResult result =
+        mockMvc.perform(get("/queue/123/events")).andExpect(request().asyncStarted()).andReturn();
+
+    queueEventService.publish("123", Stage.GIT_FETCHED, CWLToolStatus.RUNNING, null);
+    queueEventService.publish("123", Stage.SAVED, CWLToolStatus.SUCCESS, null);
+    queueEventService.publish("123", Stage.BUNDLE_READY, CWLToolStatus.SUCCESS, null);
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("\"stage\":\"QUEUED\"")))
+        .andExpect(content().string(containsString("\"stage\":\"GIT_FETCHED\"")))
+        .andExpect(content().string(containsString("\"stage\":\"SAVED\"")))
+        .andExpect(content().string(containsString("\"stage\":\"BUNDLE_READY\"")));
+  }
+
+  /** Workflows which already finished are sent once and the stream is closed */
+  @Test
+  public void finishedWorkflow() throws Exception {
+    queuedWorkflow.setCwltoolStatus(CWLToolStatus.ERROR);
+    queuedWorkflow.setMessage("cwltool error message");
+
+    MvcResult result = mockMvc.perform(get("/queue/123/events")).andReturn();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(content().string(containsString("\"stage\":\"FAILED\"")))
+        .andExpect(content().string(containsString("\"message\":\"cwltool error message\"")));
+
+    // Not followed any further
+    queueEventService.checkStatuses();
+    verify(mockRepository, never()).findCwltoolStatusByIdIn(any());
+  }
+
+  /** Unknown queued workflows cannot be followed */
+  @Test
+  public void unknownWorkflow() throws Exception {
+    mockMvc.perform(get("/queue/456/events")).andExpect(status().isNotFound());
+  }
+
+  /** Clients are disconnected after the configured timeout */
+  @Test
+  public void timeout() throws Exception {
+    MvcResult result =
+        mockMvc.perform(get("/queue/123/events")).andExpect(request().asyncStarted()).andReturn();
+    MockAsyncContext asyncContext = (MockAsyncContext) result.getRequest().getAsyncContext();
+    assertEquals(TIMEOUT_MILLIS, asyncContext.getTimeout());
+
+    for (AsyncListener listener : asyncContext.getListeners()) {
+      listener.onTimeout(new AsyncEvent(asyncContext));
+    }
+
+    // The timed out client is no longer followed
+    queueEventService.checkStatuses();
+    verify(mockRepository, never()).findCwltoolStatusByIdIn(any());
+  }
+
+  /** Workflows processed by other nodes are checked in the database */
+  @Test
+  public void checkStatusesFromOtherNodes() throws Exception {
+    MvcResult result =
+        mockMvc.perform(get("/queue/123/events")).andExpect(request().asyncStarted()).andReturn();
+
+    // Still running
+    when(mockRepository.findCwltoolStatusByIdIn(any()))
+        .thenReturn(List.<Object[]>of(new Object[] {"123", "RUNNING", null}))
+        .thenReturn(
+            List.<Object[]>of(new Object[] {"123", "TIMEOUT", "cwltool did not finish in time"}));
+    queueEventService.checkStatuses();
+
+    // Failed on another node, with the message stored on the queue
+    queueEventService.checkStatuses();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(content().string(not(containsString("\"stage\":\"SAVED\""))))
+        .andExpect(content().string(containsString("\"stage\":\"FAILED\"")))
+        .andExpect(content().string(containsString("\"cwltoolStatus\":\"TIMEOUT\"")))
+        .andExpect(
+            content().string(containsString("\"message\":\"cwltool did not finish in time\"")));
+  }
+
+  /** Workflows removed from the queue stop being followed */
+  @Test
+  public void checkStatusesRemovedWorkflow() throws Exception {
+    MvcResult result =
+        mockMvc.perform(get("/queue/123/events")).andExpect(request().asyncStarted()).andReturn();
+
+    when(mockRepository.findCwltoolStatusByIdIn(any())).thenReturn(List.of());
+    queueEventService.checkStatuses();
+
+    mockMvc
+        .perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("\"stage\":\"QUEUED\"")));
+  }
+}
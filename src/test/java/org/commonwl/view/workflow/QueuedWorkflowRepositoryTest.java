@@ -3,13 +3,18 @@ package org.commonwl.view.workflow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Date;
 import java.util.List;
+import org.commonwl.view.cwl.CWLToolStatus;
 import org.commonwl.view.git.GitDetails;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.transaction.annotation.Propagation;
@@ -80,4 +85,88 @@ public class QueuedWorkflowRepositoryTest {
 
     assertNotNull(workflow);
   }
+
+  @Test
+  public void claimAvailableQueuedWorkflowTest() {
+    GitDetails gitDetails = new GitDetails("claim_repo_url", "claim_branch", "claim_path");
+    Workflow workflow = new Workflow();
+    workflow.setRetrievedFrom(gitDetails);
+
+    QueuedWorkflow queuedWorkflow = new QueuedWorkflow();
+    queuedWorkflow.setTempRepresentation(workflow);
+    repository.saveAndFlush(queuedWorkflow);
+
+    Date now = new Date();
+    Date leaseExpiresAt = new Date(now.getTime() + 60000);
+
+    // first node gets the lease
+    List<QueuedWorkflow> claimed = repository.claimAvailable("node1", now, leaseExpiresAt, 10);
+    assertEquals(1, claimed.size());
+    assertEquals(queuedWorkflow.getId(), claimed.get(0).getId());
+    assertEquals("node1", claimed.get(0).getLeaseOwner());
+    assertEquals(1, claimed.get(0).getAttempts());
+
+    // second node cannot claim it while the lease is valid
+    assertTrue(repository.claimAvailable("node2", now, leaseExpiresAt, 10).isEmpty());
+    assertEquals(1, repository.renewLeases("node1", List.of(queuedWorkflow.getId()), now));
+
+    // but can once the lease has expired
+    Date later = new Date(now.getTime() + 1000);
+    claimed = repository.claimAvailable("node2", later, leaseExpiresAt, 10);
+    assertEquals(1, claimed.size());
+    assertEquals("node2", claimed.get(0).getLeaseOwner());
+    assertEquals(2, claimed.get(0).getAttempts());
+
+    repository.deleteAll();
+  }
+
+  @Test
+  public void runningCanonicalKeyIsUniqueTest() {
+    QueuedWorkflow first = queuedWorkflow("canonical_branch", "canonical_key");
+    repository.saveAndFlush(first);
+
+    // A second running entry for the same workflow is rejected by the partial unique index
+    QueuedWorkflow second = queuedWorkflow("other_branch", "canonical_key");
+    assertThrows(DataIntegrityViolationException.class, () -> repository.saveAndFlush(second));
+
+    QueuedWorkflow running = repository.findRunningByCanonicalKey("canonical_key");
+    assertNotNull(running);
+    assertEquals(first.getId(), running.getId());
+
+    // Finished entries no longer block the key
+    first.setCwltoolStatus(CWLToolStatus.SUCCESS);
+    repository.saveAndFlush(first);
+    assertNull(repository.findRunningByCanonicalKey("canonical_key"));
+    QueuedWorkflow third = queuedWorkflow("third_branch", "canonical_key");
+    repository.saveAndFlush(third);
+    assertEquals(third.getId(), repository.findRunningByCanonicalKey("canonical_key").getId());
+
+    repository.deleteAll();
+  }
+
+  @Test
+  public void findAllIdentifiersTest() {
+    Workflow workflow = new Workflow();
+    workflow.setRetrievedFrom(new GitDetails("identifier_repo_url", "main", "path/packed.cwl"));
+    workflow.getRetrievedFrom().setPackedId("main");
+    workflow.setLastCommit("identifier_commit");
+    QueuedWorkflow queuedWorkflow = new QueuedWorkflow();
+    queuedWorkflow.setTempRepresentation(workflow);
+    repository.saveAndFlush(queuedWorkflow);
+
+    // Same identifier as the temporary representation, without loading the queued workflow
+    assertEquals(List.of(workflow.getIdentifier()), repository.findAllIdentifiers());
+
+    repository.deleteAll();
+  }
+
+  private static QueuedWorkflow queuedWorkflow(String branch, String canonicalKey) {
+    Workflow workflow = new Workflow();
+    workflow.setRetrievedFrom(new GitDetails("canonical_repo_url", branch, "canonical_path"));
+
+    QueuedWorkflow queuedWorkflow = new QueuedWorkflow();
+    queuedWorkflow.setTempRepresentation(workflow);
+    queuedWorkflow.setCanonicalKey(canonicalKey);
+    return queuedWorkflow;
+  }
 }
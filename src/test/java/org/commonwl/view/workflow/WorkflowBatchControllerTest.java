@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import static org.hamcrest.Matchers.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Optional;
+import org.commonwl.view.git.GitDetails;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+/** Batch API testing */
+public class WorkflowBatchControllerTest {
+
+  @Test
+  public void newWorkflowBatchJson() throws Exception {
+
+    // First entry is invalid, second is valid
+    WorkflowFormValidator mockValidator = Mockito.mock(WorkflowFormValidator.class);
+    when(mockValidator.validateAndParse(any(), any()))
+        .thenReturn(null)
+        .thenReturn(
+            new GitDetails("https://github.com/owner/repoName.git", "branch", "path/workflow.cwl"));
+
+    WorkflowBatchRepository mockRepository = Mockito.mock(WorkflowBatchRepository.class);
+    when(mockRepository.save(any()))
+        .thenAnswer(
+            invocation -> {
+              WorkflowBatch batch = invocation.getArgument(0);
+              batch.id = "456";
+              return batch;
+            });
+    WorkflowBatchProcessor mockProcessor = Mockito.mock(WorkflowBatchProcessor.class);
+
+    WorkflowBatchController controller =
+        new WorkflowBatchController(mockValidator, mockRepository, mockProcessor, 2);
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+    // Too many workflows
+    mockMvc
+        .perform(
+            post("/workflows/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"url\": \"a\"}, {\"url\": \"b\"}, {\"url\": \"c\"}]")
+                .accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isBadRequest());
+    verify(mockProcessor, never()).process(any());
+
+    // Accepted, with the invalid entry reported straight away
+    mockMvc
+        .perform(
+            post("/workflows/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(
+                    "[{\"url\": \"invalidurl\"},"
+                        + " {\"url\": \"https://github.com/owner/repoName/tree/branch/path/workflow.cwl\"}]")
+                .accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isAccepted())
+        .andExpect(header().string("Location", is("/batch/456")))
+        .andExpect(jsonPath("$.finished", is(false)))
+        .andExpect(jsonPath("$.entries[0].status", is("ERROR")))
+        .andExpect(
+            jsonPath(
+                "$.entries[0].message", is("Error: Could not parse workflow details from URL")))
+        .andExpect(jsonPath("$.entries[1].status", is("PENDING")));
+    verify(mockProcessor).process("456");
+
+    // Status of the batch
+    WorkflowBatch batch = new WorkflowBatch();
+    batch.setFinished(true);
+    when(mockRepository.findById("456")).thenReturn(Optional.of(batch));
+    mockMvc
+        .perform(get("/batch/456").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.finished", is(true)));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+import org.commonwl.view.git.GitDetails;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+/** Test the processing of batches of workflows */
+public class WorkflowBatchProcessorTest {
+
+  private WorkflowService mockWorkflowService;
+  private WorkflowBatchRepository mockBatchRepository;
+  private WorkflowBatchProcessor processor;
+  private WorkflowBatch batch;
+
+  @BeforeEach
+  public void setUp() {
+    mockWorkflowService = Mockito.mock(WorkflowService.class);
+    mockBatchRepository = Mockito.mock(WorkflowBatchRepository.class);
+    processor = new WorkflowBatchProcessor(mockWorkflowService, mockBatchRepository, 120);
+
+    batch = new WorkflowBatch();
+    batch.id = "batch-id";
+    batch.setEntries(
+        List.of(
+            entry("https://github.com/common-workflow-language/workflows", "dna.cwl"),
+            entry("https://github.com/common-workflow-language/workflows.git", "hello.cwl"),
+            entry("http://www.github.com/common-workflow-language/workflows/", "lobstr.cwl")));
+    when(mockBatchRepository.findById("batch-id")).thenReturn(Optional.of(batch));
+    when(mockBatchRepository.claim(eq("batch-id"), anyString(), any(), any())).thenReturn(1);
+  }
+
+  /** Different URLs of the same repository are fetched once */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void groupByNormalisedUrl() {
+    processor.process("batch-id");
+
+    ArgumentCaptor<List<WorkflowBatchEntry>> entries = ArgumentCaptor.forClass(List.class);
+    verify(mockWorkflowService)
+        .createQueuedWorkflows(
+            eq("https://github.com/common-workflow-language/workflows"), entries.capture());
+    assertEquals(3, entries.getValue().size());
+    assertTrue(batch.isFinished());
+  }
+
+  /** Batches left unfinished by a stopped node are processed at startup */
+  @Test
+  public void resumeUnfinished() {
+    when(mockBatchRepository.claimExpired(anyString(), any(), any()))
+        .thenReturn(List.of("batch-id"));
+
+    processor.resumeUnfinished();
+
+    verify(mockWorkflowService, times(1)).createQueuedWorkflows(any(), any());
+    assertTrue(batch.isFinished());
+  }
+
+  /** Batches leased by another node are left to it */
+  @Test
+  public void skipLeasedElsewhere() {
+    when(mockBatchRepository.claim(eq("batch-id"), anyString(), any(), any())).thenReturn(0);
+
+    processor.process("batch-id");
+
+    verify(mockWorkflowService, never()).createQueuedWorkflows(any(), any());
+    verify(mockBatchRepository, never()).save(any());
+    assertFalse(batch.isFinished());
+  }
+
+  private static WorkflowBatchEntry entry(String url, String path) {
+    WorkflowBatchEntry entry = new WorkflowBatchEntry();
+    entry.setUrl(url);
+    entry.setRetrievedFrom(new GitDetails(url, "master", path));
+    return entry;
+  }
+}
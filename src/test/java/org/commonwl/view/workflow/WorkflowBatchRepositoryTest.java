@@ -0,0 +1,54 @@
+package org.commonwl.view.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@TestPropertySource(locations = "classpath:it-application.properties")
+@DataJpaTest(showSql = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(initializers = PostgreSQLContextInitializer.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class WorkflowBatchRepositoryTest {
+
+  @Autowired WorkflowBatchRepository repository;
+
+  @Test
+  public void claimBatchTest() {
+    WorkflowBatch batch = repository.saveAndFlush(new WorkflowBatch());
+
+    Date now = new Date();
+    Date leaseExpiresAt = new Date(now.getTime() + 60000);
+
+    // first node gets the lease, and can take it again
+    assertEquals(1, repository.claim(batch.getId(), "node1", now, leaseExpiresAt));
+    assertEquals(1, repository.claim(batch.getId(), "node1", now, leaseExpiresAt));
+    assertEquals(1, repository.renewLeases("node1", List.of(batch.getId()), leaseExpiresAt));
+
+    // second node cannot claim it while the lease is valid
+    assertEquals(0, repository.claim(batch.getId(), "node2", now, leaseExpiresAt));
+    assertTrue(repository.claimExpired("node2", now, leaseExpiresAt).isEmpty());
+
+    // but can once the lease has expired
+    Date later = new Date(leaseExpiresAt.getTime() + 1000);
+    assertEquals(List.of(batch.getId()), repository.claimExpired("node2", later, later));
+
+    // finished batches are not claimed again
+    batch.setFinished(true);
+    repository.saveAndFlush(batch);
+    assertEquals(0, repository.claim(batch.getId(), "node2", later, later));
+    assertTrue(repository.claimExpired("node1", later, later).isEmpty());
+
+    repository.deleteAll();
+  }
+}
@@ -19,17 +19,21 @@
 
 package org.commonwl.view.workflow;
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.model;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -60,6 +64,7 @@ import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import org.springframework.core.io.PathResource;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
@@ -69,6 +74,9 @@ import org.springframework.web.servlet.view.InternalResourceViewResolver;
 /** Tests the controller for workflow related functionality */
 public class WorkflowControllerTest {
 
+  /** DOT source of the graphs served by the mocked workflow service */
+  private static final String DOT = "digraph workflow {}";
+
   /** Use a temporary directory for testing */
   @TempDir public Path roBundleFolder;
 
@@ -82,7 +90,8 @@ public class WorkflowControllerTest {
             Mockito.mock(WorkflowFormValidator.class),
             Mockito.mock(WorkflowService.class),
             Mockito.mock(GraphVizService.class),
-            Mockito.mock(CWLService.class));
+            Mockito.mock(CWLService.class),
+            new DownloadCacheControl(31536000, 300));
 
     // Lots of hassle to make Spring Data Pageable work
     PageableHandlerMethodArgumentResolver pageableArgumentResolver =
@@ -139,7 +148,8 @@ public class WorkflowControllerTest {
             mockValidator,
             mockWorkflowService,
             Mockito.mock(GraphVizService.class),
-            Mockito.mock(CWLService.class));
+            Mockito.mock(CWLService.class),
+            new DownloadCacheControl(31536000, 300));
     MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowController).build();
 
     // Error in validation, go to index to show error
@@ -263,7 +273,8 @@ public class WorkflowControllerTest {
             Mockito.mock(WorkflowFormValidator.class),
             mockWorkflowService,
             Mockito.mock(GraphVizService.class),
-            Mockito.mock(CWLService.class));
+            Mockito.mock(CWLService.class),
+            new DownloadCacheControl(31536000, 300));
     MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowController).build();
 
     // Workflow already exists in the database
@@ -344,7 +355,8 @@ public class WorkflowControllerTest {
             Mockito.mock(WorkflowFormValidator.class),
             mockWorkflowService,
             Mockito.mock(GraphVizService.class),
-            Mockito.mock(CWLService.class));
+            Mockito.mock(CWLService.class),
+            new DownloadCacheControl(31536000, 300));
     MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowController).build();
 
     // Bundle exists and can be downloaded
@@ -371,14 +383,16 @@ public class WorkflowControllerTest {
 
     // Mock service to return mock workflow
     WorkflowService mockWorkflowService = Mockito.mock(WorkflowService.class);
-    when(mockWorkflowService.getWorkflowGraph(any(String.class), Mockito.any(GitDetails.class)))
+    when(mockWorkflowService.getGraphDot(Mockito.any(GitDetails.class), isNull()))
+        .thenReturn(DOT, DOT, DOT, DOT, DOT, DOT)
+        .thenThrow(new WorkflowNotFoundException());
+    when(mockWorkflowService.getGraph(any(String.class), eq(DOT)))
         .thenReturn(new PathResource(Paths.get("src/test/resources/graphviz/testVis.svg")))
         .thenReturn(new PathResource(Paths.get("src/test/resources/graphviz/testVis.png")))
         .thenReturn(new PathResource(Paths.get("src/test/resources/graphviz/testWorkflow.dot")))
         .thenReturn(new PathResource(Paths.get("src/test/resources/graphviz/testVis.svg")))
         .thenReturn(new PathResource(Paths.get("src/test/resources/graphviz/testVis.png")))
-        .thenReturn(new PathResource(Paths.get("src/test/resources/graphviz/testWorkflow.dot")))
-        .thenThrow(new WorkflowNotFoundException());
+        .thenReturn(new PathResource(Paths.get("src/test/resources/graphviz/testWorkflow.dot")));
 
     // Mock controller/MVC
     WorkflowController workflowController =
@@ -386,14 +400,17 @@ public class WorkflowControllerTest {
             Mockito.mock(WorkflowFormValidator.class),
             mockWorkflowService,
             Mockito.mock(GraphVizService.class),
-            Mockito.mock(CWLService.class));
+            Mockito.mock(CWLService.class),
+            new DownloadCacheControl(31536000, 300));
     MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowController).build();
 
-    // Images exist and can be downloaded
+    // Images exist and can be downloaded, cached shortly as the branch may move
     mockMvc
         .perform(get("/graph/svg/github.com/owner/repo/blob/branch/path/to/workflow.cwl"))
         .andExpect(status().isOk())
-        .andExpect(content().contentType("image/svg+xml"));
+        .andExpect(content().contentType("image/svg+xml"))
+        .andExpect(header().string("Cache-Control", containsString("max-age=300")))
+        .andExpect(header().string("ETag", "\"" + GraphVizService.getFileName(DOT, "svg") + "\""));
     mockMvc
         .perform(get("/graph/png/github.com/owner/repo/blob/branch/path/to/workflow.cwl"))
         .andExpect(status().isOk())
@@ -429,6 +446,164 @@ public class WorkflowControllerTest {
         .andExpect(status().isNotFound());
   }
 
+  /** Graphs stored with a compressed copy are sent compressed to clients accepting gzip */
+  @Test
+  public void downloadCompressedGraph() throws Exception {
+    Path svg = roBundleFolder.resolve("graph-test.svg");
+    Files.copy(Paths.get("src/test/resources/graphviz/testVis.svg"), svg);
+    Files.write(GraphVizService.getCompressedPath(svg), new byte[] {31, -117, 8, 0});
+
+    WorkflowService mockWorkflowService = Mockito.mock(WorkflowService.class);
+    when(mockWorkflowService.getGraphDot(Mockito.any(GitDetails.class), isNull())).thenReturn(DOT);
+    when(mockWorkflowService.getGraph(eq("svg"), eq(DOT))).thenReturn(new PathResource(svg));
+
+    WorkflowController workflowController =
+        new WorkflowController(
+            Mockito.mock(WorkflowFormValidator.class),
+            mockWorkflowService,
+            Mockito.mock(GraphVizService.class),
+            Mockito.mock(CWLService.class),
+            new DownloadCacheControl(31536000, 300));
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowController).build();
+
+    mockMvc
+        .perform(
+            get("/graph/svg/github.com/owner/repo/blob/branch/path/to/workflow.cwl")
+                .header("Accept-Encoding", "gzip, deflate, br"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("image/svg+xml"))
+        .andExpect(header().string("Content-Encoding", "gzip"))
+        .andExpect(header().string("Vary", "Accept-Encoding"))
+        .andExpect(
+            header().string("ETag", "\"" + GraphVizService.getFileName(DOT, "svg") + ".gz\""))
+        .andExpect(content().bytes(new byte[] {31, -117, 8, 0}));
+
+    // Sent as stored to clients which do not accept gzip
+    mockMvc
+        .perform(
+            get("/graph/svg/github.com/owner/repo/blob/branch/path/to/workflow.cwl")
+                .header("Accept-Encoding", "gzip;q=0, identity"))
+        .andExpect(status().isOk())
+        .andExpect(header().doesNotExist("Content-Encoding"))
+        .andExpect(header().string("Vary", "Accept-Encoding"))
+        .andExpect(header().string("ETag", "\"" + GraphVizService.getFileName(DOT, "svg") + "\""));
+  }
+
+  /** Conditional requests for graphs are answered without rendering the graph */
+  @Test
+  public void downloadGraphNotModified() throws Exception {
+    WorkflowService mockWorkflowService = Mockito.mock(WorkflowService.class);
+    when(mockWorkflowService.getGraphDot(Mockito.any(GitDetails.class), isNull())).thenReturn(DOT);
+
+    WorkflowController workflowController =
+        new WorkflowController(
+            Mockito.mock(WorkflowFormValidator.class),
+            mockWorkflowService,
+            Mockito.mock(GraphVizService.class),
+            Mockito.mock(CWLService.class),
+            new DownloadCacheControl(31536000, 300));
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowController).build();
+
+    mockMvc
+        .perform(
+            get("/graph/png/github.com/owner/repo/blob/branch/path/to/workflow.cwl")
+                .header("If-None-Match", "\"" + GraphVizService.getFileName(DOT, "png") + "\""))
+        .andExpect(status().isNotModified());
+    mockMvc
+        .perform(
+            get("/graph/json/github.com/owner/repo/blob/branch/path/to/workflow.cwl")
+                .header("If-None-Match", "\"" + GraphVizService.getFileName(DOT, "plain") + "\""))
+        .andExpect(status().isNotModified());
+    Mockito.verify(mockWorkflowService, Mockito.never())
+        .getGraph(any(String.class), any(String.class));
+  }
+
+  /** Endpoints for downloading the layout of a graph as JSON */
+  @Test
+  public void downloadGraphJson() throws Exception {
+
+    // Mock service to return the plain layout of a graph
+    WorkflowService mockWorkflowService = Mockito.mock(WorkflowService.class);
+    when(mockWorkflowService.getGraphDot(Mockito.any(GitDetails.class), isNull()))
+        .thenReturn(DOT, DOT)
+        .thenThrow(new WorkflowNotFoundException());
+    when(mockWorkflowService.getGraph(eq("plain"), eq(DOT)))
+        .thenReturn(new PathResource(Paths.get("src/test/resources/graphviz/testWorkflow.plain")));
+
+    // Mock controller/MVC
+    WorkflowController workflowController =
+        new WorkflowController(
+            Mockito.mock(WorkflowFormValidator.class),
+            mockWorkflowService,
+            Mockito.mock(GraphVizService.class),
+            Mockito.mock(CWLService.class),
+            new DownloadCacheControl(31536000, 300));
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowController).build();
+
+    // Layout is converted to JSON and cached like the images
+    mockMvc
+        .perform(get("/graph/json/github.com/owner/repo/blob/branch/path/to/workflow.cwl"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(
+            header().string("ETag", "\"" + GraphVizService.getFileName(DOT, "plain") + "\""))
+        .andExpect(jsonPath("$.width", is(228.0)))
+        .andExpect(jsonPath("$.nodes[0].id", is("input1")))
+        .andExpect(jsonPath("$.nodes[0].label", is("First Input")))
+        .andExpect(jsonPath("$.edges[0].label", is("toolinput")));
+
+    // Layout exists at generic git URLs
+    mockMvc
+        .perform(get("/graph/json/bitbucket.org/owner/repo.git/branch/path/to/workflow.cwl"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.edges.length()", is(2)));
+
+    // Graph does not exist, 404 error
+    mockMvc
+        .perform(get("/graph/json/github.com/owner/repo/blob/branch/path/to/workflow.cwl"))
+        .andExpect(status().isNotFound());
+  }
+
+  /** Graphs of nested workflows are requested by the step running them */
+  @Test
+  public void downloadSubworkflowGraph() throws Exception {
+
+    // Mock service to return a graph only for the nested workflow
+    WorkflowService mockWorkflowService = Mockito.mock(WorkflowService.class);
+    when(mockWorkflowService.getGraphDot(Mockito.any(GitDetails.class), eq("inner/deeper")))
+        .thenReturn("digraph deeper {}");
+    when(mockWorkflowService.getGraphDot(Mockito.any(GitDetails.class), eq("missing")))
+        .thenThrow(new WorkflowNotFoundException());
+    when(mockWorkflowService.getGraph(eq("svg"), eq("digraph deeper {}")))
+        .thenReturn(new PathResource(Paths.get("src/test/resources/graphviz/testVis.svg")));
+
+    // Mock controller/MVC
+    WorkflowController workflowController =
+        new WorkflowController(
+            Mockito.mock(WorkflowFormValidator.class),
+            mockWorkflowService,
+            Mockito.mock(GraphVizService.class),
+            Mockito.mock(CWLService.class),
+            new DownloadCacheControl(31536000, 300));
+    MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowController).build();
+
+    mockMvc
+        .perform(
+            get("/graph/svg/github.com/owner/repo/blob/branch/path/to/workflow.cwl")
+                .param("step", "inner/deeper"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType("image/svg+xml"));
+    Mockito.verify(mockWorkflowService, Mockito.never())
+        .getGraphDot(Mockito.any(GitDetails.class), isNull());
+
+    // Step does not run a workflow, 404 error
+    mockMvc
+        .perform(
+            get("/graph/svg/bitbucket.org/owner/repo.git/branch/path/to/workflow.cwl")
+                .param("step", "missing"))
+        .andExpect(status().isNotFound());
+  }
+
   @Test
   public void downloadGraphSvgFromFile() throws Exception {
 
@@ -451,7 +626,8 @@ public class WorkflowControllerTest {
             Mockito.mock(WorkflowFormValidator.class),
             mockWorkflowService,
             graphVizService,
-            mockCWLService);
+            mockCWLService,
+            new DownloadCacheControl(31536000, 300));
     MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowController).build();
 
     mockMvc
@@ -482,7 +658,8 @@ public class WorkflowControllerTest {
             Mockito.mock(WorkflowFormValidator.class),
             mockWorkflowService,
             graphVizService,
-            mockCWLService);
+            mockCWLService,
+            new DownloadCacheControl(31536000, 300));
     MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowController).build();
 
     mockMvc
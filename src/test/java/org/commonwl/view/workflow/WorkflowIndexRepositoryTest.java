@@ -0,0 +1,98 @@
+package org.commonwl.view.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import org.commonwl.view.git.GitDetails;
+import org.commonwl.view.workflow.WorkflowIndexEntry.Kind;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@TestPropertySource(locations = "classpath:it-application.properties")
+@DataJpaTest(showSql = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(initializers = PostgreSQLContextInitializer.class)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class WorkflowIndexRepositoryTest {
+
+  @Autowired WorkflowRepository workflowRepository;
+
+  @Autowired WorkflowIndexRepository repository;
+
+  @Test
+  public void findWorkflowsTest() {
+    Workflow older = saveWorkflow("older.cwl", new Date(1000));
+    Workflow newer = saveWorkflow("newer.cwl", new Date(2000));
+
+    repository.saveAllAndFlush(
+        List.of(
+            new WorkflowIndexEntry(older.getID(), Kind.DOCKER, "ubuntu:22.04"),
+            new WorkflowIndexEntry(
+                older.getID(), Kind.FORMAT, "http://edamontology.org/format_1929"),
+            new WorkflowIndexEntry(newer.getID(), Kind.DOCKER, "ubuntu:22.04"),
+            new WorkflowIndexEntry(newer.getID(), Kind.RUN, "tools/bwa-mem.cwl")));
+
+    Page<Workflow> docker =
+        repository.findWorkflows(Kind.DOCKER, "ubuntu:22.04", PageRequest.of(0, 10));
+    assertEquals(2, docker.getTotalElements());
+    assertEquals(newer.getID(), docker.getContent().get(0).getID());
+    assertEquals(older.getID(), docker.getContent().get(1).getID());
+
+    Page<Workflow> firstPage =
+        repository.findWorkflows(Kind.DOCKER, "ubuntu:22.04", PageRequest.of(0, 1));
+    assertEquals(2, firstPage.getTotalPages());
+    assertEquals(1, firstPage.getContent().size());
+
+    // The same value under another kind does not match
+    assertEquals(
+        0,
+        repository
+            .findWorkflows(Kind.RUN, "ubuntu:22.04", PageRequest.of(0, 10))
+            .getTotalElements());
+
+    assertEquals(2, repository.deleteByWorkflowId(newer.getID()));
+    assertEquals(
+        1,
+        repository
+            .findWorkflows(Kind.DOCKER, "ubuntu:22.04", PageRequest.of(0, 10))
+            .getTotalElements());
+
+    // clean up, the database is shared with the other repository tests
+    repository.deleteAll();
+    workflowRepository.deleteAll(List.of(older, newer));
+  }
+
+  @Test
+  public void findUnindexedWorkflowIdsTest() {
+    Workflow indexed = saveWorkflow("indexed.cwl", new Date(1000));
+    Workflow unindexed = saveWorkflow("unindexed.cwl", new Date(2000));
+    repository.saveAndFlush(new WorkflowIndexEntry(indexed.getID(), Kind.DOCKER, "ubuntu:22.04"));
+
+    List<String> workflowIds = repository.findUnindexedWorkflowIds();
+    assertTrue(workflowIds.contains(unindexed.getID()));
+    assertFalse(workflowIds.contains(indexed.getID()));
+
+    // clean up, the database is shared with the other repository tests
+    repository.deleteAll();
+    workflowRepository.deleteAll(List.of(indexed, unindexed));
+  }
+
+  private Workflow saveWorkflow(String path, Date retrievedOn) {
+    Workflow workflow = new Workflow();
+    workflow.setRetrievedFrom(
+        new GitDetails("https://github.com/common-workflow-language/cwlviewer/", "main", path));
+    workflow.setRetrievedOn(retrievedOn);
+    return workflowRepository.saveAndFlush(workflow);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.commonwl.view.workflow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.commonwl.view.cwl.RDFService;
+import org.commonwl.view.git.GitDetails;
+import org.commonwl.view.workflow.WorkflowIndexEntry.Kind;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/** Test the indexing of workflows parsed before the index was added */
+public class WorkflowIndexServiceTest {
+
+  /** Docker images of workflows loaded from the database are read from their stored graph */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void indexUnindexedFromStoredGraph() {
+    Workflow workflow = new Workflow();
+    workflow.id = "workflow-id";
+    workflow.setRetrievedFrom(
+        new GitDetails(
+            "https://github.com/common-workflow-language/workflows.git",
+            "master",
+            "workflows/make-to-cwl/dna.cwl"));
+    workflow.setLastCommit("549c973ccc01781595ce562dea4cedc6c9540fe0");
+
+    WorkflowIndexRepository mockIndexRepository = Mockito.mock(WorkflowIndexRepository.class);
+    when(mockIndexRepository.findUnindexedWorkflowIds()).thenReturn(List.of("workflow-id"));
+    WorkflowRepository mockWorkflowRepository = Mockito.mock(WorkflowRepository.class);
+    when(mockWorkflowRepository.findById("workflow-id")).thenReturn(Optional.of(workflow));
+
+    QuerySolution pull = Mockito.mock(QuerySolution.class);
+    when(pull.get("pull")).thenReturn(ResourceFactory.createPlainLiteral("ubuntu:22.04"));
+    ResultSet pulls = Mockito.mock(ResultSet.class);
+    when(pulls.hasNext()).thenReturn(true, false);
+    when(pulls.nextSolution()).thenReturn(pull);
+    RDFService mockRdfService = Mockito.mock(RDFService.class);
+    when(mockRdfService.graphExists(workflow.getIdentifier())).thenReturn(true);
+    when(mockRdfService.getDockerPulls(workflow.getIdentifier())).thenReturn(pulls);
+
+    new WorkflowIndexService(
+            mockIndexRepository,
+            mockWorkflowRepository,
+            mockRdfService,
+            Mockito.mock(PlatformTransactionManager.class))
+        .indexUnindexed();
+
+    ArgumentCaptor<Iterable<WorkflowIndexEntry>> entries = ArgumentCaptor.forClass(Iterable.class);
+    verify(mockIndexRepository).deleteByWorkflowId("workflow-id");
+    verify(mockIndexRepository).saveAll(entries.capture());
+    assertEquals(
+        Set.of(new WorkflowIndexEntry("workflow-id", Kind.DOCKER, "ubuntu:22.04")),
+        entries.getValue());
+  }
+}
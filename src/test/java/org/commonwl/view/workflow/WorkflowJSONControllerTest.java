@@ -85,7 +85,8 @@ public class WorkflowJSONControllerTest {
 
     // Mock controller/MVC
     WorkflowJSONController workflowJSONController =
-        new WorkflowJSONController(mockValidator, mockWorkflowService);
+        new WorkflowJSONController(
+            mockValidator, mockWorkflowService, Mockito.mock(QueueEventService.class));
 
     MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowJSONController).build();
 
@@ -164,7 +165,10 @@ public class WorkflowJSONControllerTest {
     when(mockWorkflowService.getWorkflow(any(GitDetails.class))).thenReturn(workflow1);
 
     WorkflowJSONController workflowJSONController =
-        new WorkflowJSONController(Mockito.mock(WorkflowFormValidator.class), mockWorkflowService);
+        new WorkflowJSONController(
+            Mockito.mock(WorkflowFormValidator.class),
+            mockWorkflowService,
+            Mockito.mock(QueueEventService.class));
 
     MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowJSONController).build();
 
@@ -217,7 +221,10 @@ public class WorkflowJSONControllerTest {
         .thenReturn(qwfSuccess);
 
     WorkflowJSONController workflowJSONController =
-        new WorkflowJSONController(Mockito.mock(WorkflowFormValidator.class), mockWorkflowService);
+        new WorkflowJSONController(
+            Mockito.mock(WorkflowFormValidator.class),
+            mockWorkflowService,
+            Mockito.mock(QueueEventService.class));
 
     MockMvc mockMvc = MockMvcBuilders.standaloneSetup(workflowJSONController).build();
 
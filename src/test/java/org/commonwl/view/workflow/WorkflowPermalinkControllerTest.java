@@ -19,21 +19,28 @@
 
 package org.commonwl.view.workflow;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
 import org.apache.commons.io.IOUtils;
+import org.commonwl.view.cwl.RDFRepresentationCache;
 import org.commonwl.view.cwl.RDFService;
 import org.commonwl.view.git.GitDetails;
 import org.junit.jupiter.api.BeforeEach;
@@ -50,6 +57,8 @@ public class WorkflowPermalinkControllerTest {
   @TempDir private Path tempDir;
   private MockMvc mockMvc;
   private byte[] rdfResponse;
+  private RDFService mockRdfService;
+  private WorkflowService mockWorkflowService;
   private final PathResource png =
       new PathResource(Paths.get("src/test/resources/graphviz/testVis.png"));
   private final PathResource svg =
@@ -61,12 +70,15 @@ public class WorkflowPermalinkControllerTest {
   public void setUp() throws Exception {
 
     Workflow mockWorkflow = Mockito.mock(Workflow.class);
+    when(mockWorkflow.getIdentifier())
+        .thenReturn("https://w3id.org/cwl/view/git/commitidhere/path/to/workflow.cwl");
     when(mockWorkflow.getRetrievedFrom())
         .thenReturn(
             new GitDetails(
                 "https://github.com/MarkRobbo/workflows.git", "master", "path/to/workflow.cwl"));
+    when(mockWorkflow.getVisualisationDot()).thenReturn("digraph workflow {}");
 
-    WorkflowService mockWorkflowService = Mockito.mock(WorkflowService.class);
+    mockWorkflowService = Mockito.mock(WorkflowService.class);
     when(mockWorkflowService.findByCommitAndPath(
             any(String.class), any(String.class), any(Optional.class)))
         .thenReturn(mockWorkflow);
@@ -75,25 +87,34 @@ public class WorkflowPermalinkControllerTest {
         .thenReturn(
             Optional.of("https://raw.githubusercontent.com/MarkRobbo/workflows/commitidhere/"));
 
-    when(mockWorkflowService.getWorkflowGraph(eq("svg"), any(GitDetails.class))).thenReturn(svg);
-    when(mockWorkflowService.getWorkflowGraph(eq("png"), any(GitDetails.class))).thenReturn(png);
-    when(mockWorkflowService.getWorkflowGraph(eq("xdot"), any(GitDetails.class))).thenReturn(dot);
+    when(mockWorkflowService.getGraph(eq("svg"), any(String.class))).thenReturn(svg);
+    when(mockWorkflowService.getGraph(eq("png"), any(String.class))).thenReturn(png);
+    when(mockWorkflowService.getGraph(eq("xdot"), any(String.class))).thenReturn(dot);
     Path path = Files.createFile(tempDir.resolve("nonsense.zip"));
     when(mockWorkflowService.getROBundle(any()))
         .thenReturn(new File(path.toAbsolutePath().toString()));
 
-    RDFService mockRdfService = Mockito.mock(RDFService.class);
+    mockRdfService = Mockito.mock(RDFService.class);
     when(mockRdfService.graphExists(any())).thenReturn(true);
 
     File turtleFile = new File("src/test/resources/cwl/make_to_cwl/dna.ttl");
     try (FileInputStream fileInputStream = new FileInputStream(turtleFile)) {
       rdfResponse = IOUtils.toByteArray(fileInputStream);
     }
-    when(mockRdfService.getModel(any(), any(String.class))).thenReturn(rdfResponse);
+    Mockito.doAnswer(
+            invocation -> {
+              invocation.getArgument(2, OutputStream.class).write(rdfResponse);
+              return null;
+            })
+        .when(mockRdfService)
+        .writeModel(any(), any(String.class), any(OutputStream.class));
 
     // Mock controller/MVC
     WorkflowPermalinkController underTest =
-        new WorkflowPermalinkController(mockWorkflowService, mockRdfService);
+        new WorkflowPermalinkController(
+            mockWorkflowService,
+            new RDFRepresentationCache(mockRdfService, tempDir.resolve("rdf").toString()),
+            new DownloadCacheControl(31536000, 300));
 
     mockMvc = MockMvcBuilders.standaloneSetup(underTest).build();
   }
@@ -148,6 +169,24 @@ public class WorkflowPermalinkControllerTest {
         .andExpect(content().bytes(rdfResponse));
   }
 
+  @Test
+  public void getRdfNotModified() throws Exception {
+    String eTag =
+        mockMvc
+            .perform(get("/git/commitidhere/path/to/workflow.cwl").header("accept", "text/turtle"))
+            .andExpect(status().isOk())
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+    mockMvc
+        .perform(
+            get("/git/commitidhere/path/to/workflow.cwl")
+                .header("accept", "text/turtle")
+                .header("If-None-Match", eTag))
+        .andExpect(status().isNotModified());
+    verify(mockRdfService, times(1)).writeModel(any(), any(String.class), any(OutputStream.class));
+  }
+
   @Test
   public void getPng() throws Exception {
     mockMvc
@@ -157,6 +196,61 @@ public class WorkflowPermalinkControllerTest {
         .andExpect(content().bytes(IOUtils.toByteArray(png.getInputStream())));
   }
 
+  @Test
+  public void getPngNotModified() throws Exception {
+    String eTag =
+        mockMvc
+            .perform(get("/git/commitidhere/path/to/workflow.cwl").header("accept", "image/png"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Cache-Control", containsString("max-age=31536000")))
+            .andExpect(header().string("Cache-Control", containsString("immutable")))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+    mockMvc
+        .perform(
+            get("/git/commitidhere/path/to/workflow.cwl")
+                .header("accept", "image/png")
+                .header("If-None-Match", eTag))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("Cache-Control", containsString("immutable")));
+
+    // Revalidated from the DOT source without rendering the graph again
+    verify(mockWorkflowService, times(1)).getGraph(eq("png"), any(String.class));
+  }
+
+  @Test
+  public void getFallbackPngNotImmutable() throws Exception {
+    // Runs over the render time budget when first rendered
+    when(mockWorkflowService.isGraphFallback(any(String.class))).thenReturn(false, true);
+    String eTag =
+        mockMvc
+            .perform(get("/git/commitidhere/path/to/workflow.cwl").header("accept", "image/png"))
+            .andExpect(status().isOk())
+            .andExpect(header().string("Cache-Control", containsString("max-age=300")))
+            .andExpect(header().string("Cache-Control", not(containsString("immutable"))))
+            .andReturn()
+            .getResponse()
+            .getHeader("ETag");
+    mockMvc
+        .perform(
+            get("/git/commitidhere/path/to/workflow.cwl")
+                .header("accept", "image/png")
+                .header("If-None-Match", eTag))
+        .andExpect(status().isNotModified())
+        .andExpect(header().string("Cache-Control", not(containsString("immutable"))));
+
+    // The full graph drawn later does not match the fallback
+    when(mockWorkflowService.isGraphFallback(any(String.class))).thenReturn(false);
+    mockMvc
+        .perform(
+            get("/git/commitidhere/path/to/workflow.cwl")
+                .header("accept", "image/png")
+                .header("If-None-Match", eTag))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Cache-Control", containsString("immutable")));
+  }
+
   @Test
   public void getSvg() throws Exception {
     mockMvc
@@ -183,6 +277,8 @@ public class WorkflowPermalinkControllerTest {
             get("/git/commitidhere/path/to/workflow.cwl")
                 .header("accept", "application/vnd.wf4ever.robundle+zip"))
         .andExpect(status().isOk())
-        .andExpect(content().contentType("application/vnd.wf4ever.robundle+zip"));
+        .andExpect(content().contentType("application/vnd.wf4ever.robundle+zip"))
+        .andExpect(header().string("Cache-Control", containsString("max-age=300")))
+        .andExpect(header().string("Cache-Control", not(containsString("immutable"))));
   }
 }
@@ -75,4 +75,22 @@ public class WorkflowRepositoryTest {
         repository.findByRetrievedFrom(workflow.getRetrievedFrom());
     assertNull(retrievedWorkflowAfterDelete);
   }
+
+  @Test
+  public void findAllIdentifiersTest() {
+    GitDetails gitDetails =
+        new GitDetails(
+            "https://github.com/common-workflow-language/workflows/", "master", "dna.cwl");
+    gitDetails.setPackedId("main");
+
+    Workflow workflow = new Workflow();
+    workflow.setRetrievedFrom(gitDetails);
+    workflow.setLastCommit("549c973ccc01781595ce562dea4cedc6c9540fe0");
+    repository.saveAndFlush(workflow);
+
+    List<String> identifiers = repository.findAllIdentifiers();
+    assertEquals(List.of(workflow.getIdentifier()), identifiers);
+
+    repository.delete(workflow);
+  }
 }
@@ -20,8 +20,11 @@
 package org.commonwl.view.workflow;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
@@ -31,7 +34,6 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import org.commonwl.view.cwl.CWLService;
-import org.commonwl.view.cwl.CWLToolRunner;
 import org.commonwl.view.git.GitDetails;
 import org.commonwl.view.git.GitSemaphore;
 import org.commonwl.view.git.GitService;
@@ -42,6 +44,7 @@ import org.eclipse.jgit.lib.Repository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
+import org.springframework.dao.DataIntegrityViolationException;
 
 public class WorkflowServiceTest {
 
@@ -52,6 +55,77 @@ public class WorkflowServiceTest {
   @Test
   public void retryCwltoolGeneration() throws Exception {}
 
+  /** Same workflow reached through different URL forms */
+  @Test
+  public void canonicalKey() throws Exception {
+    String commit = "9f8c6d7e8a5b4c3d2e1f0a9b8c7d6e5f4a3b2c1d";
+    String key =
+        WorkflowService.canonicalKey(
+            "https://github.com/common-workflow-language/workflows.git",
+            commit,
+            "workflows/lobSTR/lobSTR-workflow.cwl",
+            null);
+    assertEquals(
+        key,
+        WorkflowService.canonicalKey(
+            "http://www.github.com/common-workflow-language/workflows.git",
+            commit,
+            "workflows/lobSTR/lobSTR-workflow.cwl",
+            null));
+    assertNotEquals(
+        key,
+        WorkflowService.canonicalKey(
+            "https://github.com/common-workflow-language/workflows.git",
+            commit,
+            "workflows/lobSTR/lobSTR-workflow.cwl",
+            "main"));
+  }
+
+  /** Losing the race to queue the same workflow attaches to the entry which won it */
+  @Test
+  public void createQueuedWorkflowAttachesToConcurrentEntry() throws Exception {
+    GitDetails gitInfo =
+        new GitDetails(
+            "https://github.com/common-workflow-language/workflows.git", "develop", "dna.cwl");
+
+    CWLService mockCWLService = Mockito.mock(CWLService.class);
+    when(mockCWLService.parseWorkflowNative(any(), any())).thenReturn(new Workflow());
+
+    Repository mockRepo = Mockito.mock(Repository.class);
+    when(mockRepo.getWorkTree()).thenReturn(new File("src/test/resources/cwl/make_to_cwl"));
+    Git mockGitRepo = Mockito.mock(Git.class);
+    when(mockGitRepo.getRepository()).thenReturn(mockRepo);
+
+    GitService mockGitService = Mockito.mock(GitService.class);
+    when(mockGitService.getRepository(any(GitDetails.class), any(Boolean.class)))
+        .thenReturn(mockGitRepo);
+    when(mockGitService.getCurrentCommitID(any()))
+        .thenReturn("d46ce365f1a10c4c4d6b0caed51c6f64b84c2f63");
+
+    // Another request queued the same commit from the master branch in the meantime
+    QueuedWorkflow concurrent = new QueuedWorkflow();
+    concurrent.id = "concurrent-id";
+    QueuedWorkflowRepository mockQueuedRepo = Mockito.mock(QueuedWorkflowRepository.class);
+    when(mockQueuedRepo.findRunningByCanonicalKey(any())).thenReturn(null).thenReturn(concurrent);
+    when(mockQueuedRepo.saveAndFlush(any()))
+        .thenThrow(
+            new DataIntegrityViolationException("idx_queued_workflow_running_canonical_key"));
+
+    WorkflowService testWorkflowService =
+        new WorkflowService(
+            mockGitService,
+            mockCWLService,
+            Mockito.mock(WorkflowRepository.class),
+            mockQueuedRepo,
+            Mockito.mock(ROBundleFactory.class),
+            Mockito.mock(GraphVizService.class),
+            Mockito.mock(GitSemaphore.class),
+            1);
+
+    assertSame(concurrent, testWorkflowService.createQueuedWorkflow(gitInfo));
+    verify(mockQueuedRepo).saveAndFlush(any());
+  }
+
   /** Getting a list of workflow overviews from a directory */
   @Test
   public void getWorkflowsFromDirectory() throws Exception {
@@ -82,7 +156,6 @@ public class WorkflowServiceTest {
             Mockito.mock(QueuedWorkflowRepository.class),
             Mockito.mock(ROBundleFactory.class),
             Mockito.mock(GraphVizService.class),
-            Mockito.mock(CWLToolRunner.class),
             Mockito.mock(GitSemaphore.class),
             1);
 
@@ -158,7 +231,6 @@ public class WorkflowServiceTest {
             Mockito.mock(QueuedWorkflowRepository.class),
             Mockito.mock(ROBundleFactory.class),
             Mockito.mock(GraphVizService.class),
-            Mockito.mock(CWLToolRunner.class),
             Mockito.mock(GitSemaphore.class),
             -1);
 
@@ -201,7 +273,6 @@ public class WorkflowServiceTest {
             Mockito.mock(QueuedWorkflowRepository.class),
             Mockito.mock(ROBundleFactory.class),
             Mockito.mock(GraphVizService.class),
-            Mockito.mock(CWLToolRunner.class),
             Mockito.mock(GitSemaphore.class),
             -1);
 